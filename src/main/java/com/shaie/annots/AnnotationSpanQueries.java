@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots;
+
+import static com.google.common.base.Preconditions.*;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.spans.FieldMaskingSpanQuery;
+import org.apache.lucene.search.spans.SpanContainingQuery;
+import org.apache.lucene.search.spans.SpanNearQuery;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanWithinQuery;
+
+import com.shaie.annots.filter.PreAnnotatedTokenFilter;
+
+/**
+ * Creates span queries which match annotations of one field (indexed by {@link PreAnnotatedTokenFilter}) against the
+ * text of another field, e.g. "any color immediately before fox":
+ *
+ * <pre>
+ * final AnnotationSpanQueries colors = new AnnotationSpanQueries(&quot;color&quot;, &quot;text&quot;);
+ * final SpanQuery coloredFox = colors.before(new SpanTermQuery(new Term(&quot;text&quot;, &quot;fox&quot;)), 0);
+ * </pre>
+ *
+ * The annotations are matched by a {@link MultiPositionSpanTermQuery} on the
+ * {@link PreAnnotatedTokenFilter#ANY_ANNOTATION_TERM} term, masked as the text field. All the queries combine it with
+ * the text query through a conjunction ({@link SpanNearQuery}, {@link SpanWithinQuery} or {@link SpanContainingQuery}),
+ * which first iterates over the documents that contain both terms, and only then over the positions of these
+ * documents. The annotation lengths are decoded lazily, only for the positions whose end is compared.
+ */
+public class AnnotationSpanQueries {
+
+    private final String annotationField;
+    private final String textField;
+    private final String spanTableField;
+    private final TermContextCache termContextCache;
+
+    /** Creates queries for annotations whose lengths are indexed in payloads. */
+    public AnnotationSpanQueries(String annotationField, String textField) {
+        this(annotationField, textField, null, null);
+    }
+
+    /**
+     * Creates queries for annotations whose lengths are indexed in the given span table field, or in payloads if it is
+     * {@code null}. The {@link TermContextCache} is optional too.
+     */
+    public AnnotationSpanQueries(String annotationField, String textField, String spanTableField,
+            TermContextCache termContextCache) {
+        this.annotationField = checkNotNull(annotationField, "annotationField cannot be null");
+        this.textField = checkNotNull(textField, "textField cannot be null");
+        this.spanTableField = spanTableField;
+        this.termContextCache = termContextCache;
+    }
+
+    /** Returns a query which matches any annotation, masked as the text field. */
+    public SpanQuery anyAnnotation() {
+        final Term anyTerm = new Term(annotationField, PreAnnotatedTokenFilter.ANY_ANNOTATION_TERM);
+        return new FieldMaskingSpanQuery(new MultiPositionSpanTermQuery(anyTerm, spanTableField, termContextCache),
+                textField);
+    }
+
+    /** Returns a query which matches annotations and text within {@code slop} positions of each other. */
+    public SpanQuery near(SpanQuery textQuery, int slop, boolean inOrder) {
+        checkTextQuery(textQuery);
+        return new SpanNearQuery(new SpanQuery[] { anyAnnotation(), textQuery }, slop, inOrder);
+    }
+
+    /** Returns a query which matches annotations which are followed by the text within {@code slop} positions. */
+    public SpanQuery before(SpanQuery textQuery, int slop) {
+        return near(textQuery, slop, true);
+    }
+
+    /** Returns a query which matches annotations which follow the text within {@code slop} positions. */
+    public SpanQuery after(SpanQuery textQuery, int slop) {
+        checkTextQuery(textQuery);
+        return new SpanNearQuery(new SpanQuery[] { textQuery, anyAnnotation() }, slop, true);
+    }
+
+    /** Returns a query which matches the text spans that are within an annotation. */
+    public SpanQuery within(SpanQuery textQuery) {
+        checkTextQuery(textQuery);
+        return new SpanWithinQuery(anyAnnotation(), textQuery);
+    }
+
+    /** Returns a query which matches the annotations that contain the text. */
+    public SpanQuery containing(SpanQuery textQuery) {
+        checkTextQuery(textQuery);
+        return new SpanContainingQuery(anyAnnotation(), textQuery);
+    }
+
+    private void checkTextQuery(SpanQuery textQuery) {
+        checkNotNull(textQuery, "textQuery cannot be null");
+        checkArgument(textField.equals(textQuery.getField()), "textQuery must be on field [%s], got [%s]", textField,
+                textQuery.getField());
+    }
+
+}
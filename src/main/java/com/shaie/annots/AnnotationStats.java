@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.util.ArrayUtil;
+
+import com.shaie.annots.filter.AnnotationSpanTable;
+import com.shaie.annots.filter.PreAnnotatedTokenFilter;
+
+/**
+ * Statistics of the annotations of one field, which were indexed by {@link PreAnnotatedTokenFilter}: the number of
+ * annotations, the number of documents with annotations, a histogram of the annotation lengths and the number of
+ * annotations in every document.
+ * <p>
+ * Statistics are computed per segment (see {@link AnnotationStatsCache}) and summed for a top-level reader. Like
+ * {@link org.apache.lucene.index.TermsEnum#docFreq()}, they include deleted documents until they are merged away.
+ */
+public final class AnnotationStats {
+
+    private final long count;
+    private final int numDocs;
+    private final long[] lengthCounts; // lengthCounts[len] is the number of annotations with that length
+    private final int[][] docCounts; // the number of annotations per document, per segment
+    private final int[] docStarts;
+
+    private AnnotationStats(long count, int numDocs, long[] lengthCounts, int[][] docCounts, int[] docStarts) {
+        this.count = count;
+        this.numDocs = numDocs;
+        this.lengthCounts = lengthCounts;
+        this.docCounts = docCounts;
+        this.docStarts = docStarts;
+    }
+
+    /**
+     * Computes the statistics of the annotations of the given field in a segment. The lengths are read from the
+     * payloads, or from the given {@link AnnotationSpanTable} field if it is not {@code null}.
+     */
+    static AnnotationStats compute(LeafReader reader, String annotationField, String spanTableField)
+            throws IOException {
+        final Term anyTerm = new Term(annotationField, PreAnnotatedTokenFilter.ANY_ANNOTATION_TERM);
+        final StatsCollector collector = new StatsCollector(reader.maxDoc());
+        AnnotationsUtils.visitAnnotations(reader, anyTerm, spanTableField, collector);
+        return new AnnotationStats(collector.count, collector.numDocs, trimHistogram(collector.lengthCounts),
+                new int[][] { collector.docCounts }, new int[] { 0, reader.maxDoc() });
+    }
+
+    /** Sums the statistics of the segments of a top-level reader, given in order along with their doc bases. */
+    static AnnotationStats sum(List<AnnotationStats> leafStats, int[] docBases, int maxDoc) {
+        checkArgument(leafStats.size() == docBases.length, "expected a doc base per segment");
+        long count = 0;
+        int numDocs = 0;
+        long[] lengthCounts = new long[1];
+        final int[][] docCounts = new int[leafStats.size()][];
+        final int[] docStarts = new int[leafStats.size() + 1];
+        for (int i = 0; i < leafStats.size(); i++) {
+            final AnnotationStats stats = leafStats.get(i);
+            checkArgument(stats.docCounts.length == 1, "expected segment statistics");
+            count += stats.count;
+            numDocs += stats.numDocs;
+            if (stats.lengthCounts.length > lengthCounts.length) {
+                lengthCounts = Arrays.copyOf(lengthCounts, stats.lengthCounts.length);
+            }
+            for (int len = 0; len < stats.lengthCounts.length; len++) {
+                lengthCounts[len] += stats.lengthCounts[len];
+            }
+            docCounts[i] = stats.docCounts[0];
+            docStarts[i] = docBases[i];
+        }
+        docStarts[leafStats.size()] = maxDoc;
+        return new AnnotationStats(count, numDocs, lengthCounts, docCounts, docStarts);
+    }
+
+    private static long[] trimHistogram(long[] lengthCounts) {
+        int maxLength = lengthCounts.length - 1;
+        while (maxLength > 0 && lengthCounts[maxLength] == 0) {
+            --maxLength;
+        }
+        return Arrays.copyOf(lengthCounts, maxLength + 1);
+    }
+
+    /** Returns the total number of annotations. */
+    public long count() {
+        return count;
+    }
+
+    /** Returns the number of annotations whose length is at least {@code minLength}. */
+    public long count(int minLength) {
+        return count(minLength, Integer.MAX_VALUE);
+    }
+
+    /** Returns the number of annotations whose length is between {@code minLength} and {@code maxLength}, inclusive. */
+    public long count(int minLength, int maxLength) {
+        long result = 0;
+        for (int len = Math.max(minLength, 0), end = Math.min(maxLength, maxLength()); len <= end; len++) {
+            result += lengthCounts[len];
+        }
+        return result;
+    }
+
+    /** Returns the number of documents with at least one annotation. */
+    public int numDocs() {
+        return numDocs;
+    }
+
+    /** Returns the length of the longest annotation, or 0 if there are no annotations. */
+    public int maxLength() {
+        return lengthCounts.length - 1;
+    }
+
+    /** Returns a histogram of the annotation lengths, where element {@code i} counts the annotations of length i. */
+    public long[] lengthHistogram() {
+        return lengthCounts.clone();
+    }
+
+    /** Returns the number of annotations in the given document. */
+    public int docCount(int docID) {
+        checkElementIndex(docID, docStarts[docStarts.length - 1], "docID");
+        final int segment = docCounts.length == 1 ? 0 : ReaderUtil.subIndex(docID, docStarts);
+        return docCounts[segment][docID - docStarts[segment]];
+    }
+
+    /** Accumulates the statistics of the annotations of a segment. */
+    private static final class StatsCollector implements AnnotationsUtils.AnnotationVisitor {
+
+        final int[] docCounts;
+        long[] lengthCounts = new long[8];
+        long count;
+        int numDocs;
+
+        StatsCollector(int maxDoc) {
+            docCounts = new int[maxDoc];
+        }
+
+        @Override
+        public void visit(int docID, int start, int length) {
+            if (docCounts[docID]++ == 0) {
+                ++numDocs;
+            }
+            if (length >= lengthCounts.length) {
+                lengthCounts = ArrayUtil.grow(lengthCounts, length + 1);
+            }
+            ++lengthCounts[length];
+            ++count;
+        }
+
+    }
+
+    @Override
+    public String toString() {
+        return "AnnotationStats(count=" + count + ", numDocs=" + numDocs + ", lengths="
+                + Arrays.toString(lengthCounts) + ")";
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.shaie.annots.filter.AnnotationSpanTable;
+import com.shaie.annots.filter.PreAnnotatedTokenFilter.LengthEncoding;
+
+/**
+ * Computes {@link AnnotationStats} once per segment and annotation field, and caches them with the segment's core,
+ * so that they are not computed again for a reopened reader which shares the segment. The statistics of a segment are
+ * dropped when its core is closed.
+ * <p>
+ * The cache is safe to share between threads.
+ */
+public final class AnnotationStatsCache {
+
+    private final Map<Object, Map<String, AnnotationStats>> coreStats = Maps.newHashMap();
+    private final LengthEncoding lengthEncoding;
+
+    private final LeafReader.CoreClosedListener closedListener = new LeafReader.CoreClosedListener() {
+        @Override
+        public void onClose(Object ownerCoreCacheKey) {
+            synchronized (coreStats) {
+                coreStats.remove(ownerCoreCacheKey);
+            }
+        }
+    };
+
+    /** Creates a cache for annotations whose lengths are encoded with the given {@link LengthEncoding}. */
+    public AnnotationStatsCache(LengthEncoding lengthEncoding) {
+        if (lengthEncoding == null) {
+            throw new IllegalArgumentException("lengthEncoding cannot be null");
+        }
+        this.lengthEncoding = lengthEncoding;
+    }
+
+    /** Returns the statistics of the annotations of the given field in all the segments of the reader. */
+    public AnnotationStats getStats(IndexReader reader, String annotationField) throws IOException {
+        final List<LeafReaderContext> leaves = reader.leaves();
+        final List<AnnotationStats> leafStats = Lists.newArrayListWithCapacity(leaves.size());
+        final int[] docBases = new int[leaves.size()];
+        for (int i = 0; i < leaves.size(); i++) {
+            final LeafReaderContext leaf = leaves.get(i);
+            leafStats.add(getStats(leaf.reader(), annotationField));
+            docBases[i] = leaf.docBase;
+        }
+        return AnnotationStats.sum(leafStats, docBases, reader.maxDoc());
+    }
+
+    /** Returns the statistics of the annotations of the given field in the segment. */
+    public AnnotationStats getStats(LeafReader reader, String annotationField) throws IOException {
+        final Map<String, AnnotationStats> fieldStats = getFieldStats(reader);
+        AnnotationStats stats = fieldStats.get(annotationField);
+        if (stats == null) {
+            // Concurrent threads may compute the same statistics, but they don't block each other
+            final String spanTableField = lengthEncoding == LengthEncoding.SPAN_TABLE
+                    ? AnnotationSpanTable.fieldName(annotationField) : null;
+            stats = AnnotationStats.compute(reader, annotationField, spanTableField);
+            fieldStats.put(annotationField, stats);
+        }
+        return stats;
+    }
+
+    /** Returns the number of segments with cached statistics. */
+    public int size() {
+        synchronized (coreStats) {
+            return coreStats.size();
+        }
+    }
+
+    private Map<String, AnnotationStats> getFieldStats(LeafReader reader) {
+        final Object coreKey = reader.getCoreCacheKey();
+        synchronized (coreStats) {
+            Map<String, AnnotationStats> fieldStats = coreStats.get(coreKey);
+            if (fieldStats == null) {
+                fieldStats = new ConcurrentHashMap<>();
+                coreStats.put(coreKey, fieldStats);
+                reader.addCoreClosedListener(closedListener);
+            }
+            return fieldStats;
+        }
+    }
+
+}
@@ -16,35 +16,288 @@
  */
 package com.shaie.annots;
 
+import static com.google.common.base.Preconditions.*;
+import static com.shaie.utils.Utils.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.InputStreamDataInput;
+import org.apache.lucene.store.OutputStreamDataOutput;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
 
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.shaie.annots.filter.AnnotationSpanTable;
+
+/**
+ * Utilities for reading the annotations that were indexed by
+ * {@link com.shaie.annots.filter.PreAnnotatedTokenFilter}, as (doc, start, length) triples of an annotation term.
+ * <p>
+ * Annotations are streamed to an {@link AnnotationVisitor}, either for a single segment or for all the segments of a
+ * reader in parallel, and can be exported to a compact binary file with
+ * {@link #exportAnnotations(IndexReader, Term, ExecutorService, Path)} and read back with
+ * {@link #readAnnotations(Path, AnnotationVisitor)}.
+ */
 public abstract class AnnotationsUtils {
 
+    private static final int EXPORT_MAGIC = 0x414E4E53; // "ANNS"
+    private static final int EXPORT_VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Receives annotations. */
+    public static interface AnnotationVisitor {
+
+        /** Called for every annotation, in increasing order of documents and start positions. */
+        public void visit(int docID, int start, int length) throws IOException;
+
+    }
+
+    /** Creates an {@link AnnotationVisitor} per segment, for visiting the segments in parallel. */
+    public static interface AnnotationVisitorFactory {
+
+        /**
+         * Returns the visitor of the given segment. The visitor receives segment document IDs, and is called by a
+         * single thread.
+         */
+        public AnnotationVisitor newVisitor(LeafReaderContext context) throws IOException;
+
+    }
+
     private AnnotationsUtils() {
         // No instances should be created.
     }
 
     public static void printAnnotations(LeafReader reader, Term term) throws IOException {
         System.out.println("Annotations for " + term);
+        visitAnnotations(reader, term, new AnnotationVisitor() {
+            @Override
+            public void visit(int docID, int start, int length) {
+                System.out.println("  doc=" + docID + ", start=" + start + ", length=" + length);
+            }
+        });
+    }
+
+    /** Visits the annotations of the term in the segment, whose lengths are read from the payloads. */
+    public static void visitAnnotations(LeafReader reader, Term term, AnnotationVisitor visitor) throws IOException {
+        visitAnnotations(reader, term, null, visitor);
+    }
+
+    /**
+     * Visits the annotations of the term in the segment. The lengths are read from the given
+     * {@link AnnotationSpanTable} field, or from the payloads if it is {@code null}. Positions are read into reused
+     * buffers, so visiting does not allocate per annotation.
+     */
+    public static void visitAnnotations(LeafReader reader, Term term, String spanTableField,
+            AnnotationVisitor visitor) throws IOException {
+        final int flags = spanTableField == null ? PostingsEnum.PAYLOADS : PostingsEnum.POSITIONS;
+        final PostingsEnum postings = reader.postings(term, flags);
+        if (postings == null) {
+            return;
+        }
+        final BinaryDocValues spanTables = spanTableField == null ? null : DocValues.getBinary(reader, spanTableField);
+        final AnnotationSpanTable.Reader tableReader = new AnnotationSpanTable.Reader();
         final ByteArrayDataInput in = new ByteArrayDataInput();
-        final PostingsEnum postings = reader.postings(term, PostingsEnum.PAYLOADS);
         for (int docID = postings.nextDoc(); docID != DocIdSetIterator.NO_MORE_DOCS; docID = postings.nextDoc()) {
+            if (spanTables != null) {
+                tableReader.reset(spanTables.get(docID));
+            }
             final int freq = postings.freq();
-            System.out.println("  doc=" + docID + ", freq=" + freq);
             for (int i = 0; i < freq; i++) {
-                postings.nextPosition();
-                final BytesRef payload = postings.getPayload();
-                in.reset(payload.bytes, payload.offset, payload.length);
-                System.out.println("    start=" + in.readVInt() + ", length=" + in.readVInt());
+                final int start = postings.nextPosition();
+                int length;
+                if (spanTables != null) {
+                    length = tableReader.length(start);
+                } else {
+                    final BytesRef payload = postings.getPayload();
+                    if (payload == null) {
+                        length = 1;
+                    } else {
+                        in.reset(payload.bytes, payload.offset, payload.length);
+                        length = in.readVInt();
+                    }
+                }
+                visitor.visit(docID, start, Math.max(length, 1));
             }
         }
     }
 
+    /**
+     * Visits the annotations of the term in all the segments of the reader in parallel, one task per segment. Returns
+     * when all segments were visited, and rethrows the first failure of any of the tasks.
+     */
+    public static void visitAnnotations(IndexReader reader, final Term term, final String spanTableField,
+            ExecutorService executor, final AnnotationVisitorFactory visitorFactory) throws IOException {
+        final List<Future<Void>> futures = Lists.newArrayList();
+        for (final LeafReaderContext context : reader.leaves()) {
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    visitAnnotations(context.reader(), term, spanTableField, visitorFactory.newVisitor(context));
+                    return null;
+                }
+            }));
+        }
+        awaitAll(futures);
+    }
+
+    /**
+     * Exports the annotations of the term (with lengths in payloads) to a binary file. The segments are encoded in
+     * parallel, each streamed into a temporary file next to the output file, which are then concatenated in order.
+     * <p>
+     * The file starts with a header (magic, version and number of segments), followed by a block per segment: the
+     * segment's doc base and number of annotated documents, and then for every document the delta from the previous
+     * document, its number of annotations and a pair of start position delta and length per annotation. All numbers
+     * except the header's are written as {@code VInt}s.
+     */
+    public static void exportAnnotations(IndexReader reader, final Term term, ExecutorService executor, Path file)
+            throws IOException {
+        final List<LeafReaderContext> leaves = reader.leaves();
+        final List<Path> blockFiles = Lists.newArrayListWithCapacity(leaves.size());
+        try {
+            final List<Future<Integer>> futures = Lists.newArrayList();
+            for (final LeafReaderContext context : leaves) {
+                final Path blockFile = Files.createTempFile(file.toAbsolutePath().getParent(), "annotations", ".tmp");
+                blockFiles.add(blockFile);
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return writeBlock(context, term, blockFile);
+                    }
+                }));
+            }
+            awaitAll(futures);
+
+            try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE)) {
+                final DataOutput out = new OutputStreamDataOutput(os);
+                out.writeInt(EXPORT_MAGIC);
+                out.writeInt(EXPORT_VERSION);
+                out.writeInt(leaves.size());
+                for (int i = 0; i < leaves.size(); i++) {
+                    // The block's header is only known once the segment was encoded, so it precedes the block's copy
+                    out.writeVInt(leaves.get(i).docBase);
+                    out.writeVInt(Futures.getUnchecked(futures.get(i)));
+                    os.flush();
+                    Files.copy(blockFiles.get(i), os);
+                }
+            }
+        } finally {
+            for (final Path blockFile : blockFiles) {
+                Files.deleteIfExists(blockFile);
+            }
+        }
+    }
+
+    /** Reads the annotations of a file written by {@link #exportAnnotations}, with top-level document IDs. */
+    public static void readAnnotations(Path file, AnnotationVisitor visitor) throws IOException {
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+            final DataInput in = new InputStreamDataInput(is);
+            checkState(in.readInt() == EXPORT_MAGIC, "not an annotations file: %s", file);
+            final int version = in.readInt();
+            checkState(version == EXPORT_VERSION, "unsupported annotations file version: %s", version);
+            final int numBlocks = in.readInt();
+            for (int block = 0; block < numBlocks; block++) {
+                int docID = in.readVInt();
+                final int numDocs = in.readVInt();
+                for (int i = 0; i < numDocs; i++) {
+                    docID += in.readVInt();
+                    final int numAnnotations = in.readVInt();
+                    int start = 0;
+                    for (int j = 0; j < numAnnotations; j++) {
+                        start += in.readVInt();
+                        visitor.visit(docID, start, in.readVInt());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Streams the annotations of a segment into a block file, without the block's header, and returns the number of
+     * annotated documents.
+     */
+    private static int writeBlock(LeafReaderContext context, Term term, Path blockFile) throws IOException {
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(blockFile), BUFFER_SIZE)) {
+            final BlockWriter blockWriter = new BlockWriter(new OutputStreamDataOutput(os));
+            visitAnnotations(context.reader(), term, blockWriter);
+            blockWriter.finishDoc();
+            return blockWriter.numDocs;
+        }
+    }
+
+    /**
+     * Encodes the annotations of a segment, grouped by document, to an output. Only the annotations of the current
+     * document are held in memory.
+     */
+    private static final class BlockWriter implements AnnotationVisitor {
+
+        private final DataOutput out;
+        int numDocs;
+
+        private int[] starts = new int[16];
+        private int[] lengths = new int[16];
+        private int numAnnotations;
+        private int curDoc = -1;
+        private int lastDoc = -1;
+
+        BlockWriter(DataOutput out) {
+            this.out = out;
+        }
+
+        @Override
+        public void visit(int docID, int start, int length) throws IOException {
+            if (docID != curDoc) {
+                finishDoc();
+                curDoc = docID;
+            }
+            if (numAnnotations == starts.length) {
+                starts = ArrayUtil.grow(starts, numAnnotations + 1);
+                lengths = ArrayUtil.grow(lengths, starts.length);
+            }
+            starts[numAnnotations] = start;
+            lengths[numAnnotations] = length;
+            ++numAnnotations;
+        }
+
+        void finishDoc() throws IOException {
+            if (numAnnotations == 0) {
+                return;
+            }
+            // The first document is encoded relative to the segment's doc base
+            out.writeVInt(lastDoc == -1 ? curDoc : curDoc - lastDoc);
+            out.writeVInt(numAnnotations);
+            int lastStart = 0;
+            for (int i = 0; i < numAnnotations; i++) {
+                out.writeVInt(starts[i] - lastStart);
+                out.writeVInt(lengths[i]);
+                lastStart = starts[i];
+            }
+            lastDoc = curDoc;
+            numAnnotations = 0;
+            ++numDocs;
+        }
+
+    }
+
 }
@@ -18,115 +18,102 @@ package com.shaie.annots;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.Objects;
 
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexReaderContext;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermContext;
-import org.apache.lucene.payloads.PayloadSpanCollector;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.spans.SpanCollector;
 import org.apache.lucene.search.spans.SpanTermQuery;
 import org.apache.lucene.search.spans.SpanWeight;
 import org.apache.lucene.search.spans.Spans;
-import org.apache.lucene.store.ByteArrayDataInput;
+
+import com.shaie.annots.filter.AnnotationSpanTable;
+import com.shaie.annots.filter.PreAnnotatedTokenFilter.LengthEncoding;
 
 /**
  * A {@link SpanTermQuery} which returns a {@link Spans} whose {@link Spans#endPosition()} is read from a payload. This
- * allows to index one term which spans multiple positions.
+ * allows to index one term which spans multiple positions. A term without a payload spans a single position.
+ * <p>
+ * The payload is decoded directly from the {@link PostingsEnum} of the term, without copying it, so iterating over the
+ * positions does not allocate.
+ * <p>
+ * When the annotations are indexed with {@link LengthEncoding#SPAN_TABLE}, use
+ * {@link #MultiPositionSpanTermQuery(Term, String)} to read the lengths from the {@link AnnotationSpanTable} doc values
+ * field instead. In that case the term's payloads are not read at all.
+ * <p>
+ * If the query is searched repeatedly against the same reader, pass a shared {@link TermContextCache} so that the
+ * term is not looked up in all segments on every search.
  */
 public class MultiPositionSpanTermQuery extends SpanTermQuery {
 
-    private final PayloadSpanCollector payloadCollector = new PayloadSpanCollector();
+    private final String spanTableField;
+    private final TermContextCache termContextCache;
 
     public MultiPositionSpanTermQuery(Term term) {
+        this(term, null);
+    }
+
+    /**
+     * Creates a query which reads the annotation lengths from the given {@link AnnotationSpanTable} doc values field
+     * (usually {@link AnnotationSpanTable#fieldName(String)}), or from the payloads if it is {@code null}.
+     */
+    public MultiPositionSpanTermQuery(Term term, String spanTableField) {
+        this(term, spanTableField, null);
+    }
+
+    /**
+     * Same as {@link #MultiPositionSpanTermQuery(Term, String)}, only the term's {@link TermContext} is obtained from
+     * the given cache, if it is not {@code null}.
+     */
+    public MultiPositionSpanTermQuery(Term term, String spanTableField, TermContextCache termContextCache) {
         super(term);
+        this.spanTableField = spanTableField;
+        this.termContextCache = termContextCache;
     }
 
     @Override
     public SpanWeight createWeight(IndexSearcher searcher, boolean needsScores) throws IOException {
         final TermContext context;
         final IndexReaderContext topContext = searcher.getTopReaderContext();
-        if (termContext == null || termContext.wasBuiltFor(topContext) == false) {
-            context = TermContext.build(topContext, term);
-        } else {
+        if (termContext != null && termContext.wasBuiltFor(topContext)) {
             context = termContext;
+        } else if (termContextCache != null) {
+            context = termContextCache.get(topContext, term);
+        } else {
+            context = TermContext.build(topContext, term);
         }
         return new SpanTermWeight(context, searcher, needsScores ? Collections.singletonMap(term, context) : null) {
             @Override
             public Spans getSpans(LeafReaderContext context, Postings requiredPostings) throws IOException {
-                final Spans spans = super.getSpans(context, requiredPostings.atLeast(Postings.PAYLOADS));
+                final Postings postings = spanTableField == null
+                        ? requiredPostings.atLeast(Postings.PAYLOADS) : requiredPostings;
+                final Spans spans = super.getSpans(context, postings);
                 if (spans == null) { // term is not present in that reader
                     assert context.reader().docFreq(term) == 0 : "no term exists in reader term=" + term;
                     return null;
                 }
-                return new Spans() {
-
-                    private int end = -1;
-                    private final ByteArrayDataInput in = new ByteArrayDataInput();
-
-                    @Override
-                    public int advance(int target) throws IOException {
-                        return spans.advance(target);
-                    }
-
-                    @Override
-                    public void collect(SpanCollector collector) throws IOException {
-                        spans.collect(collector);
-                    }
-
-                    @Override
-                    public long cost() {
-                        return spans.cost();
-                    }
-
-                    @Override
-                    public int docID() {
-                        return spans.docID();
-                    }
-
-                    @Override
-                    public int endPosition() {
-                        return end;
-                    }
-
-                    @Override
-                    public int nextDoc() throws IOException {
-                        end = -1;
-                        return spans.nextDoc();
-                    }
-
-                    @Override
-                    public int nextStartPosition() throws IOException {
-                        final int pos = spans.nextStartPosition();
-                        if (pos == NO_MORE_POSITIONS) {
-                            return NO_MORE_POSITIONS;
-                        }
-                        payloadCollector.reset();
-                        collect(payloadCollector);
-                        final byte[] payload = payloadCollector.getPayloads().iterator().next();
-                        in.reset(payload);
-                        end = in.readVInt() + pos;
-                        return pos;
-                    }
-
-                    @Override
-                    public float positionsCost() {
-                        return spans.positionsCost();
-                    }
-
-                    @Override
-                    public int startPosition() {
-                        return spans.startPosition();
-                    }
-
-                    @Override
-                    public int width() {
-                        return spans.width();
-                    }
-                };
+                if (spanTableField == null) {
+                    return new MultiPositionSpans.PayloadLengthSpans(spans);
+                }
+                return new MultiPositionSpans.SpanTableLengthSpans(spans,
+                        DocValues.getBinary(context.reader(), spanTableField));
             }
         };
     }
 
+    @Override
+    public boolean equals(Object other) {
+        return super.equals(other)
+                && Objects.equals(spanTableField, ((MultiPositionSpanTermQuery) other).spanTableField);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + Objects.hashCode(spanTableField);
+    }
+
 }
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.payloads.PayloadSpanCollector;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.spans.SpanCollector;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.search.spans.TermSpans;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.util.BytesRef;
+
+import com.shaie.annots.filter.AnnotationSpanTable;
+
+/**
+ * A {@link Spans} which wraps the {@link Spans} of a single term, and whose {@link #endPosition()} is computed from the
+ * length of the annotation that starts at the current position. Sub-classes define where the length is read from. A
+ * position without a length spans a single position.
+ * <p>
+ * The length is decoded lazily, on the first call to {@link #endPosition()} for the current position, so positions
+ * whose end is never asked for (e.g. when a containing span query rejects them by their start) are not decoded.
+ */
+abstract class MultiPositionSpans extends Spans {
+
+    protected final Spans in;
+
+    private int end = -1;
+    private boolean endDecoded = true;
+
+    protected MultiPositionSpans(Spans in) {
+        this.in = in;
+    }
+
+    /**
+     * Returns the length of the annotation which starts at the current position, or 0 if it is unknown. Called at most
+     * once per position, before the next call to {@link #nextStartPosition()}.
+     */
+    protected abstract int readLength(int startPosition) throws IOException;
+
+    @Override
+    public int advance(int target) throws IOException {
+        end = -1;
+        endDecoded = true;
+        return in.advance(target);
+    }
+
+    @Override
+    public void collect(SpanCollector collector) throws IOException {
+        in.collect(collector);
+    }
+
+    @Override
+    public long cost() {
+        return in.cost();
+    }
+
+    @Override
+    public int docID() {
+        return in.docID();
+    }
+
+    @Override
+    public int endPosition() {
+        if (!endDecoded) {
+            final int start = in.startPosition();
+            try {
+                final int length = readLength(start);
+                end = start + (length > 0 ? length : 1);
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+            endDecoded = true;
+        }
+        return end;
+    }
+
+    @Override
+    public int nextDoc() throws IOException {
+        end = -1;
+        endDecoded = true;
+        return in.nextDoc();
+    }
+
+    @Override
+    public int nextStartPosition() throws IOException {
+        final int pos = in.nextStartPosition();
+        if (pos == NO_MORE_POSITIONS) {
+            end = NO_MORE_POSITIONS;
+            endDecoded = true;
+            return NO_MORE_POSITIONS;
+        }
+        endDecoded = false;
+        return pos;
+    }
+
+    @Override
+    public TwoPhaseIterator asTwoPhaseIterator() {
+        // The approximation is the term's, lengths are only decoded for positions of matching documents
+        return in.asTwoPhaseIterator();
+    }
+
+    @Override
+    public float positionsCost() {
+        return in.positionsCost();
+    }
+
+    @Override
+    public int startPosition() {
+        return in.startPosition();
+    }
+
+    @Override
+    public int width() {
+        return in.width();
+    }
+
+    /** Reads the annotation lengths from the payloads of the term. */
+    static final class PayloadLengthSpans extends MultiPositionSpans {
+
+        private final ByteArrayDataInput payloadIn = new ByteArrayDataInput();
+        private final PostingsEnum postings;
+        private final PayloadSpanCollector payloadCollector;
+
+        PayloadLengthSpans(Spans in) {
+            super(in);
+            // TermSpans exposes its postings, so the payload can be read without copying it
+            this.postings = in instanceof TermSpans ? ((TermSpans) in).getPostings() : null;
+            this.payloadCollector = postings == null ? new PayloadSpanCollector() : null;
+        }
+
+        @Override
+        protected int readLength(int startPosition) throws IOException {
+            if (postings != null) {
+                final BytesRef payload = postings.getPayload();
+                if (payload == null) {
+                    return 0;
+                }
+                payloadIn.reset(payload.bytes, payload.offset, payload.length);
+            } else {
+                payloadCollector.reset();
+                in.collect(payloadCollector);
+                if (payloadCollector.getPayloads().isEmpty()) {
+                    return 0;
+                }
+                payloadIn.reset(payloadCollector.getPayloads().iterator().next());
+            }
+            return payloadIn.readVInt();
+        }
+
+    }
+
+    /** Reads the annotation lengths from the {@link AnnotationSpanTable} of the document. */
+    static final class SpanTableLengthSpans extends MultiPositionSpans {
+
+        private final AnnotationSpanTable.Reader tableReader = new AnnotationSpanTable.Reader();
+        private final BinaryDocValues spanTables;
+
+        private int tableDoc = -1;
+
+        SpanTableLengthSpans(Spans in, BinaryDocValues spanTables) {
+            super(in);
+            this.spanTables = spanTables;
+        }
+
+        @Override
+        protected int readLength(int startPosition) throws IOException {
+            final int doc = docID();
+            if (doc != tableDoc) {
+                // Load the table lazily, only for documents whose positions are visited
+                tableReader.reset(spanTables.get(doc));
+                tableDoc = doc;
+            }
+            return tableReader.length(startPosition);
+        }
+
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots;
+
+import java.io.Reader;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.util.CloseableThreadLocal;
+
+import com.google.common.collect.Maps;
+import com.shaie.annots.filter.AnnotationSpanTable;
+import com.shaie.annots.filter.PreAnnotatedTokenFilter;
+import com.shaie.annots.filter.PreAnnotatedTokenFilter.LengthEncoding;
+
+/**
+ * An {@link Analyzer} which chains {@link WhitespaceTokenizer} and {@link PreAnnotatedTokenFilter}, and reuses them
+ * across documents. Since annotation markers differ per document, they are passed through
+ * {@link #setMarkers(String, int...)} before the document is indexed, by the same thread which indexes it:
+ *
+ * <pre>
+ * analyzer.setMarkers(&quot;color&quot;, 1, 2, 6, 3);
+ * writer.addDocument(doc);
+ * </pre>
+ *
+ * The markers of a field are consumed by the next token stream which the thread creates for that field, and so must be
+ * set for every document. A field without markers is not annotated, i.e. no tokens are indexed for it, so a document
+ * never gets the annotations of a previous one.
+ * <p>
+ * With {@link LengthEncoding#SPAN_TABLE}, the annotation lengths are not indexed as payloads, and the document is
+ * expected to also hold an {@link AnnotationSpanTable#newField(String, int...) AnnotationSpanTable field} with the same
+ * markers.
+ */
+public final class PreAnnotatedAnalyzer extends Analyzer {
+
+    private static final int[] NO_MARKERS = new int[0];
+
+    private final CloseableThreadLocal<Map<String, int[]>> fieldMarkers = new CloseableThreadLocal<>();
+    private final LengthEncoding lengthEncoding;
+
+    public PreAnnotatedAnalyzer() {
+        this(LengthEncoding.PAYLOAD);
+    }
+
+    public PreAnnotatedAnalyzer(LengthEncoding lengthEncoding) {
+        super(PER_FIELD_REUSE_STRATEGY);
+        if (lengthEncoding == null) {
+            throw new IllegalArgumentException("lengthEncoding cannot be null");
+        }
+        this.lengthEncoding = lengthEncoding;
+    }
+
+    /** Sets the annotation markers of the given field, for the next document indexed by the calling thread. */
+    public void setMarkers(String fieldName, int... markers) {
+        if (markers == null) {
+            throw new IllegalArgumentException("annotation markers cannot be null");
+        }
+        getFieldMarkers().put(fieldName, markers);
+    }
+
+    @Override
+    protected TokenStreamComponents createComponents(final String fieldName) {
+        final Tokenizer tokenizer = new WhitespaceTokenizer();
+        final PreAnnotatedTokenFilter stream = PreAnnotatedTokenFilter.withoutMarkers(tokenizer)
+                .setLengthEncoding(lengthEncoding);
+        return new TokenStreamComponents(tokenizer, stream) {
+            @Override
+            protected void setReader(Reader reader) {
+                // Markers are per document, so they are not kept for the next one
+                final int[] markers = getFieldMarkers().remove(fieldName);
+                stream.setMarkers(markers == null ? NO_MARKERS : markers);
+                super.setReader(reader);
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        fieldMarkers.close();
+        super.close();
+    }
+
+    private Map<String, int[]> getFieldMarkers() {
+        Map<String, int[]> markers = fieldMarkers.get();
+        if (markers == null) {
+            markers = Maps.newHashMap();
+            fieldMarkers.set(markers);
+        }
+        return markers;
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+
+/**
+ * A cache of {@link TermContext}s per top-level {@link IndexReader}, which saves the terms dictionary lookups across
+ * all segments when the same term (e.g. {@link com.shaie.annots.filter.PreAnnotatedTokenFilter#ANY_ANNOTATION_TERM})
+ * is searched repeatedly against the same reader. Since a reopened reader is a new instance, its terms are looked up
+ * again. The entries of a reader are dropped when it is closed, or when it is garbage collected.
+ * <p>
+ * The cache is safe to share between threads and queries.
+ */
+public final class TermContextCache {
+
+    private final Map<IndexReader, Map<Term, TermContext>> readerContexts = new WeakHashMap<>();
+
+    private final IndexReader.ReaderClosedListener closedListener = new IndexReader.ReaderClosedListener() {
+        @Override
+        public void onClose(IndexReader reader) {
+            synchronized (readerContexts) {
+                readerContexts.remove(reader);
+            }
+        }
+    };
+
+    /** Returns the {@link TermContext} of the term in the given top-level context, building it if needed. */
+    public TermContext get(IndexReaderContext topContext, Term term) throws IOException {
+        final Map<Term, TermContext> termContexts = getTermContexts(topContext.reader());
+        TermContext context = termContexts.get(term);
+        if (context == null) {
+            // Concurrent threads may build the same context, but it is cheaper than blocking them on each other
+            context = TermContext.build(topContext, term);
+            termContexts.put(term, context);
+        }
+        return context;
+    }
+
+    /** Returns the number of readers which have cached terms. */
+    public int size() {
+        synchronized (readerContexts) {
+            return readerContexts.size();
+        }
+    }
+
+    private Map<Term, TermContext> getTermContexts(IndexReader reader) {
+        synchronized (readerContexts) {
+            Map<Term, TermContext> termContexts = readerContexts.get(reader);
+            if (termContexts == null) {
+                termContexts = new ConcurrentHashMap<>();
+                readerContexts.put(reader, termContexts);
+                reader.addReaderClosedListener(closedListener);
+            }
+            return termContexts;
+        }
+    }
+
+}
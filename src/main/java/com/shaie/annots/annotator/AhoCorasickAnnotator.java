@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots.annotator;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.IntsRefBuilder;
+
+import com.google.common.collect.Maps;
+
+/**
+ * An {@link Annotator} which finds typed entries (e.g. "color" or "company") in raw text using the Aho-Corasick
+ * algorithm. All the entries of all types are compiled into a single automaton, so the text is scanned once regardless
+ * of the number of types. Since matching is done on characters, entries may contain punctuation and whitespace, and do
+ * not depend on how the text is tokenized.
+ * <p>
+ * {@link #annotate(Analyzer, String, String)} maps the matches back to token positions, and returns per type the
+ * annotation markers which can be given to {@link com.shaie.annots.filter.PreAnnotatedTokenFilter} (or
+ * {@link com.shaie.annots.PreAnnotatedAnalyzer}). As an {@link Annotator}, it accepts text which is exactly one of
+ * the entries.
+ */
+public class AhoCorasickAnnotator implements Annotator {
+
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    private final boolean ignoreCase;
+
+    // The transitions of state s are at [transitionsStart[s], transitionsStart[s+1]), sorted by label
+    private final int[] transitionsStart;
+    private final char[] labels;
+    private final int[] targets;
+    private final int[] failure;
+    // The nearest state on the failure chain (including s itself) which ends an entry, or NONE
+    private final int[] output;
+    // The first entry which ends at state s, or NONE. Entries with the same text are chained through nextEntry.
+    private final int[] stateEntry;
+
+    private final int[] nextEntry;
+    private final int[] entryLength;
+    private final String[] entryType;
+
+    /** Receives the matches found by {@link AhoCorasickAnnotator#match(CharSequence, MatchHandler)}. */
+    public static interface MatchHandler {
+
+        /** Called for every match of an entry of the given type, which spans the text {@code [start, end)}. */
+        public void onMatch(int start, int end, String type);
+
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private AhoCorasickAnnotator(Builder builder) {
+        this.ignoreCase = builder.ignoreCase;
+        final int numStates = builder.children.size();
+        final int numEntries = builder.entryType.size();
+
+        // Compact the trie into sorted transition arrays
+        transitionsStart = new int[numStates + 1];
+        int numTransitions = 0;
+        for (int s = 0; s < numStates; s++) {
+            transitionsStart[s] = numTransitions;
+            numTransitions += builder.children.get(s).size();
+        }
+        transitionsStart[numStates] = numTransitions;
+        labels = new char[numTransitions];
+        targets = new int[numTransitions];
+        for (int s = 0; s < numStates; s++) {
+            int t = transitionsStart[s];
+            for (final Entry<Character, Integer> child : builder.children.get(s).entrySet()) {
+                labels[t] = child.getKey();
+                targets[t] = child.getValue();
+                ++t;
+            }
+        }
+
+        stateEntry = new int[numStates];
+        Arrays.fill(stateEntry, NONE);
+        nextEntry = new int[numEntries];
+        entryLength = new int[numEntries];
+        entryType = new String[numEntries];
+        for (int e = 0; e < numEntries; e++) {
+            final int state = builder.entryState.get(e);
+            entryType[e] = builder.entryType.get(e);
+            entryLength[e] = builder.entryLength.get(e);
+            nextEntry[e] = stateEntry[state];
+            stateEntry[state] = e;
+        }
+
+        // Compute the failure and output links in BFS order, so that shorter suffixes are computed first
+        failure = new int[numStates];
+        output = new int[numStates];
+        output[ROOT] = NONE;
+        final Deque<Integer> queue = new ArrayDeque<>();
+        for (int t = transitionsStart[ROOT]; t < transitionsStart[ROOT + 1]; t++) {
+            failure[targets[t]] = ROOT;
+            queue.add(targets[t]);
+        }
+        while (!queue.isEmpty()) {
+            final int s = queue.poll();
+            output[s] = stateEntry[s] != NONE ? s : output[failure[s]];
+            for (int t = transitionsStart[s]; t < transitionsStart[s + 1]; t++) {
+                final int child = targets[t];
+                failure[child] = next(failure[s], labels[t]);
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Finds all the entries in the given text, including overlapping ones, and reports them to the handler in the
+     * order of their end offsets.
+     */
+    public void match(CharSequence text, MatchHandler handler) {
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            state = next(state, normalize(text.charAt(i)));
+            for (int s = output[state]; s != NONE; s = output[failure[s]]) {
+                for (int e = stateEntry[s]; e != NONE; e = nextEntry[e]) {
+                    handler.onMatch(i + 1 - entryLength[e], i + 1, entryType[e]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the entries in the given text and maps them to the positions of the tokens that the analyzer produces for
+     * the given field. A match is kept only if it starts at the start offset of a token and ends at the end offset of
+     * a token, i.e. it does not split a token. Returns per type the annotation markers of the matches, as pairs of
+     * start position and length, in the format expected by {@link com.shaie.annots.filter.PreAnnotatedTokenFilter}.
+     */
+    public Map<String, int[]> annotate(Analyzer analyzer, String fieldName, String text) {
+        final TokenOffsets tokens = new TokenOffsets();
+        try (TokenStream ts = analyzer.tokenStream(fieldName, text)) {
+            tokens.read(ts);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        final Map<String, IntsRefBuilder> typeMarkers = Maps.newHashMap();
+        match(text, new MatchHandler() {
+            @Override
+            public void onMatch(int start, int end, String type) {
+                final int first = Arrays.binarySearch(tokens.startOffsets, 0, tokens.size, start);
+                final int last = Arrays.binarySearch(tokens.endOffsets, 0, tokens.size, end);
+                if (first < 0 || last < 0 || last < first) {
+                    return;
+                }
+                IntsRefBuilder markers = typeMarkers.get(type);
+                if (markers == null) {
+                    markers = new IntsRefBuilder();
+                    typeMarkers.put(type, markers);
+                }
+                markers.append(tokens.positions[first]);
+                markers.append(tokens.positions[last] - tokens.positions[first] + 1);
+            }
+        });
+
+        final Map<String, int[]> result = Maps.newHashMap();
+        for (final Entry<String, IntsRefBuilder> entry : typeMarkers.entrySet()) {
+            final IntsRefBuilder markers = entry.getValue();
+            result.put(entry.getKey(), Arrays.copyOf(markers.ints(), markers.length()));
+        }
+        return result;
+    }
+
+    @Override
+    public final boolean accept(String text) {
+        if (text == null) {
+            return false;
+        }
+        int state = ROOT;
+        for (int i = 0; i < text.length() && state != NONE; i++) {
+            state = transition(state, normalize(text.charAt(i)));
+        }
+        return state != NONE && stateEntry[state] != NONE;
+    }
+
+    @Override
+    public final boolean accept(char[] text, int offset, int len) {
+        if (text == null) {
+            return false;
+        }
+        int state = ROOT;
+        for (int i = offset, end = offset + len; i < end && state != NONE; i++) {
+            state = transition(state, normalize(text[i]));
+        }
+        return state != NONE && stateEntry[state] != NONE;
+    }
+
+    private char normalize(char c) {
+        return ignoreCase ? Character.toLowerCase(c) : c;
+    }
+
+    /** Follows the transitions and failure links from the given state, until the label can be consumed. */
+    private int next(int state, char label) {
+        while (true) {
+            final int target = transition(state, label);
+            if (target != NONE) {
+                return target;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = failure[state];
+        }
+    }
+
+    /** Returns the target of the state's transition with the given label, or {@link #NONE} if there isn't one. */
+    private int transition(int state, char label) {
+        int lo = transitionsStart[state];
+        int hi = transitionsStart[state + 1] - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final char midLabel = labels[mid];
+            if (midLabel < label) {
+                lo = mid + 1;
+            } else if (midLabel > label) {
+                hi = mid - 1;
+            } else {
+                return targets[mid];
+            }
+        }
+        return NONE;
+    }
+
+    /** The offsets and positions of the tokens of a {@link TokenStream}. */
+    private static final class TokenOffsets {
+        int[] startOffsets = new int[16];
+        int[] endOffsets = new int[16];
+        int[] positions = new int[16];
+        int size;
+
+        void read(TokenStream ts) throws IOException {
+            final OffsetAttribute offsetAtt = ts.addAttribute(OffsetAttribute.class);
+            final PositionIncrementAttribute posIncrAtt = ts.addAttribute(PositionIncrementAttribute.class);
+            ts.reset();
+            int position = -1;
+            while (ts.incrementToken()) {
+                position += posIncrAtt.getPositionIncrement();
+                // Offsets must be non-decreasing for the binary search, ignore stacked tokens
+                if (size > 0 && offsetAtt.startOffset() <= startOffsets[size - 1]) {
+                    continue;
+                }
+                if (size == positions.length) {
+                    startOffsets = ArrayUtil.grow(startOffsets);
+                    endOffsets = ArrayUtil.grow(endOffsets, startOffsets.length);
+                    positions = ArrayUtil.grow(positions, startOffsets.length);
+                }
+                startOffsets[size] = offsetAtt.startOffset();
+                endOffsets[size] = offsetAtt.endOffset();
+                positions[size] = position;
+                ++size;
+            }
+            ts.end();
+        }
+    }
+
+    /** Builds an {@link AhoCorasickAnnotator} from typed entries. */
+    public static final class Builder {
+
+        private final List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        private final List<Integer> entryState = new ArrayList<>();
+        private final List<Integer> entryLength = new ArrayList<>();
+        private final List<String> entryType = new ArrayList<>();
+        private boolean ignoreCase = true;
+
+        private Builder() {
+            children.add(new TreeMap<Character, Integer>()); // root
+        }
+
+        /** Sets whether entries are matched case insensitively. Must be called before adding entries. */
+        public Builder ignoreCase(boolean ignoreCase) {
+            checkState(entryType.isEmpty(), "ignoreCase must be set before adding entries");
+            this.ignoreCase = ignoreCase;
+            return this;
+        }
+
+        /** Adds an entry of the given type. */
+        public Builder add(String type, String entry) {
+            checkNotNull(type, "type cannot be null");
+            checkArgument(entry != null && !entry.isEmpty(), "entry cannot be null or empty");
+            int state = ROOT;
+            for (int i = 0; i < entry.length(); i++) {
+                final char c = ignoreCase ? Character.toLowerCase(entry.charAt(i)) : entry.charAt(i);
+                final TreeMap<Character, Integer> stateChildren = children.get(state);
+                Integer child = stateChildren.get(c);
+                if (child == null) {
+                    child = children.size();
+                    children.add(new TreeMap<Character, Integer>());
+                    stateChildren.put(c, child);
+                }
+                state = child;
+            }
+            entryState.add(state);
+            entryLength.add(entry.length());
+            entryType.add(type);
+            return this;
+        }
+
+        /** Adds all the entries of the given type. */
+        public Builder add(String type, String... entries) {
+            for (final String entry : entries) {
+                add(type, entry);
+            }
+            return this;
+        }
+
+        public AhoCorasickAnnotator build() {
+            checkState(!entryType.isEmpty(), "no entries were added");
+            return new AhoCorasickAnnotator(this);
+        }
+
+    }
+
+}
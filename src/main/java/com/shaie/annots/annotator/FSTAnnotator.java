@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots.annotator;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.fst.Builder;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.FST.Arc;
+import org.apache.lucene.util.fst.FST.BytesReader;
+import org.apache.lucene.util.fst.NoOutputs;
+import org.apache.lucene.util.fst.Util;
+
+/**
+ * An {@link Annotator} which accepts single words from a dictionary that is stored in an {@link FST}. Unlike
+ * {@link OneWordAnnotator}, which keeps every word as a separate object on the heap, the FST shares the prefixes and
+ * suffixes of the words and is stored in a few large byte arrays, which makes it suitable for dictionaries with
+ * millions of entries.
+ * <p>
+ * The dictionary is expected to be built offline with {@link #write(Iterable, Path)} and loaded with
+ * {@link #open(Path)}. Words are matched case insensitively, and lookups do not allocate any objects.
+ */
+public class FSTAnnotator implements Annotator {
+
+    private static final NoOutputs OUTPUTS = NoOutputs.getSingleton();
+
+    private final FST<Object> fst;
+    private final ThreadLocal<Lookup> lookups = new ThreadLocal<Lookup>() {
+        @Override
+        protected Lookup initialValue() {
+            return new Lookup(fst);
+        }
+    };
+
+    /** Returns an {@link FSTAnnotator} which accepts the given words. The words do not need to be sorted. */
+    public static FSTAnnotator fromWords(Collection<String> words) {
+        try {
+            return new FSTAnnotator(buildFST(sortedLowerCase(words)));
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Returns an {@link FSTAnnotator} whose dictionary is read from the given file. */
+    public static FSTAnnotator open(Path path) throws IOException {
+        return new FSTAnnotator(FST.read(path, OUTPUTS));
+    }
+
+    /**
+     * Builds the dictionary from the given words and writes it to the given file. The words are streamed into the FST
+     * and must therefore be lower cased, sorted and unique. Use {@link #sortedLowerCase(Collection)} if the words are
+     * not already prepared.
+     */
+    public static void write(Iterable<String> sortedWords, Path path) throws IOException {
+        buildFST(sortedWords).save(path);
+    }
+
+    /** Returns a sorted list of the unique lower cased words, in the order expected by {@link #write}. */
+    public static List<String> sortedLowerCase(Collection<String> words) {
+        checkNotNull(words, "words cannot be null");
+        final List<String> result = new ArrayList<>(words.size());
+        for (final String word : words) {
+            checkNotNull(word, "word cannot be null");
+            result.add(toLowerCase(word));
+        }
+        Collections.sort(result);
+        // Remove duplicates in place
+        int upto = 0;
+        for (int i = 0; i < result.size(); i++) {
+            if (upto == 0 || !result.get(i).equals(result.get(upto - 1))) {
+                result.set(upto++, result.get(i));
+            }
+        }
+        return result.subList(0, upto);
+    }
+
+    private static FST<Object> buildFST(Iterable<String> sortedWords) throws IOException {
+        checkNotNull(sortedWords, "words cannot be null");
+        final Builder<Object> builder = new Builder<>(FST.INPUT_TYPE.BYTE2, OUTPUTS);
+        final IntsRefBuilder scratch = new IntsRefBuilder();
+        String lastWord = null;
+        for (final String word : sortedWords) {
+            checkArgument(!word.isEmpty(), "words cannot be empty");
+            checkArgument(lastWord == null || lastWord.compareTo(word) < 0,
+                    "words must be sorted and unique, but [%s] follows [%s]", word, lastWord);
+            checkArgument(word.equals(toLowerCase(word)), "words must be lower cased: [%s]", word);
+            builder.add(Util.toUTF16(word, scratch), OUTPUTS.getNoOutput());
+            lastWord = word;
+        }
+        final FST<Object> fst = builder.finish();
+        checkArgument(fst != null, "words cannot be empty");
+        return fst;
+    }
+
+    /** Lower cases the word the same way as the lookup does, i.e. char by char. */
+    private static String toLowerCase(String word) {
+        final char[] chars = word.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    public FSTAnnotator(FST<Object> fst) {
+        this.fst = checkNotNull(fst, "fst cannot be null");
+        checkArgument(fst.getInputType() == FST.INPUT_TYPE.BYTE2, "fst input type must be BYTE2 (UTF-16 chars)");
+    }
+
+    /** Returns the number of bytes used by the underlying {@link FST}. */
+    public long ramBytesUsed() {
+        return fst.ramBytesUsed();
+    }
+
+    @Override
+    public final boolean accept(String text) {
+        if (text == null) {
+            return false;
+        }
+        final Lookup lookup = lookups.get();
+        Arc<Object> arc = fst.getFirstArc(lookup.arc);
+        try {
+            for (int i = 0; i < text.length(); i++) {
+                arc = fst.findTargetArc(Character.toLowerCase(text.charAt(i)), arc, arc, lookup.reader);
+                if (arc == null) {
+                    return false;
+                }
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+        return arc.isFinal();
+    }
+
+    @Override
+    public final boolean accept(char[] text, int offset, int len) {
+        if (text == null) {
+            return false;
+        }
+        final Lookup lookup = lookups.get();
+        Arc<Object> arc = fst.getFirstArc(lookup.arc);
+        try {
+            for (int i = offset, end = offset + len; i < end; i++) {
+                arc = fst.findTargetArc(Character.toLowerCase(text[i]), arc, arc, lookup.reader);
+                if (arc == null) {
+                    return false;
+                }
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+        return arc.isFinal();
+    }
+
+    /** Per-thread state for traversing the {@link FST}, so that lookups do not allocate. */
+    private static final class Lookup {
+        final Arc<Object> arc = new Arc<>();
+        final BytesReader reader;
+
+        Lookup(FST<Object> fst) {
+            reader = fst.getBytesReader();
+        }
+    }
+
+}
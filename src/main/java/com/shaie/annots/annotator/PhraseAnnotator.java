@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots.annotator;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.CharsRefBuilder;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.FST.Arc;
+import org.apache.lucene.util.fst.FST.BytesReader;
+
+/**
+ * An {@link Annotator} of multi-word phrases, e.g. "dark sea green". The phrases are stored in the {@link FST} of a
+ * {@link SynonymMap}, where the words of each phrase are separated by {@link SynonymMap#WORD_SEPARATOR}. Phrases are
+ * matched word by word through a {@link Cursor}, which allows finding the phrases in a stream of tokens (see
+ * {@link com.shaie.annots.filter.PhraseAnnotatorTokenFilter}). As an {@link Annotator}, it accepts only the phrases
+ * which consist of a single word.
+ * <p>
+ * Phrases are matched case insensitively.
+ */
+public class PhraseAnnotator implements Annotator {
+
+    private static final CharsRef OUTPUT = new CharsRef("phrase");
+
+    private final FST<BytesRef> fst;
+    private final ThreadLocal<Cursor> cursors = new ThreadLocal<Cursor>() {
+        @Override
+        protected Cursor initialValue() {
+            return newCursor();
+        }
+    };
+
+    public PhraseAnnotator(String... phrases) {
+        checkArgument(phrases != null && phrases.length > 0, "phrases cannot be null or empty");
+        final SynonymMap.Builder builder = new SynonymMap.Builder(true);
+        final CharsRefBuilder scratch = new CharsRefBuilder();
+        for (final String phrase : phrases) {
+            checkNotNull(phrase, "phrase cannot be null");
+            final String[] words = toLowerCase(phrase.trim()).split("\\s+");
+            checkArgument(!words[0].isEmpty(), "phrase cannot be empty");
+            builder.add(SynonymMap.Builder.join(words, scratch), OUTPUT, true);
+        }
+        try {
+            this.fst = builder.build().fst;
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Lower cases the phrase the same way as the {@link Cursor} does, i.e. code point by code point. */
+    private static String toLowerCase(String phrase) {
+        final StringBuilder sb = new StringBuilder(phrase.length());
+        for (int i = 0; i < phrase.length();) {
+            final int codePoint = phrase.codePointAt(i);
+            sb.appendCodePoint(Character.toLowerCase(codePoint));
+            i += Character.charCount(codePoint);
+        }
+        return sb.toString();
+    }
+
+    /** Returns a new {@link Cursor} for matching phrases word by word. A cursor may not be shared between threads. */
+    public Cursor newCursor() {
+        return new Cursor();
+    }
+
+    @Override
+    public final boolean accept(String text) {
+        if (text == null) {
+            return false;
+        }
+        return accept(text.toCharArray(), 0, text.length());
+    }
+
+    @Override
+    public final boolean accept(char[] text, int offset, int len) {
+        if (text == null) {
+            return false;
+        }
+        final Cursor cursor = cursors.get();
+        cursor.reset();
+        return cursor.advance(text, offset, len) && cursor.isMatch();
+    }
+
+    /**
+     * Matches a phrase word by word. After {@link #reset()}, call {@link #advance(char[], int, int)} with each word of
+     * the text. The cursor remains valid as long as the words seen so far are a prefix of a phrase, and
+     * {@link #isMatch()} tells whether they form a complete phrase. Cursors are reusable and do not allocate.
+     */
+    public final class Cursor {
+
+        private final Arc<BytesRef> arc = new Arc<>();
+        private final BytesReader reader = fst.getBytesReader();
+
+        private int numWords;
+        private boolean valid;
+
+        private Cursor() {
+            reset();
+        }
+
+        /** Resets the cursor to the start of a phrase. */
+        public void reset() {
+            fst.getFirstArc(arc);
+            numWords = 0;
+            valid = true;
+        }
+
+        /**
+         * Advances the cursor with the next word, read from the input array at start {@code offset} for length
+         * {@code len}. Returns true iff the words seen so far are a prefix of some phrase.
+         */
+        public boolean advance(char[] word, int offset, int len) {
+            if (!valid) {
+                return false;
+            }
+            try {
+                if (numWords > 0 && !step(SynonymMap.WORD_SEPARATOR)) {
+                    return valid = false;
+                }
+                final int end = offset + len;
+                for (int i = offset; i < end;) {
+                    final int codePoint = Character.codePointAt(word, i, end);
+                    if (!step(Character.toLowerCase(codePoint))) {
+                        return valid = false;
+                    }
+                    i += Character.charCount(codePoint);
+                }
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+            ++numWords;
+            return true;
+        }
+
+        /** Returns true iff the words seen so far form a complete phrase. */
+        public boolean isMatch() {
+            return valid && numWords > 0 && arc.isFinal();
+        }
+
+        private boolean step(int label) throws IOException {
+            return fst.findTargetArc(label, arc, arc, reader) != null;
+        }
+
+    }
+
+}
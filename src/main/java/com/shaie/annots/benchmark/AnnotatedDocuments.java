@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/** Generates random documents and annotation markers for the annotation benchmarks. */
+final class AnnotatedDocuments {
+
+    private static final int MIN_WORD_LENGTH = 3;
+    private static final int MAX_WORD_LENGTH = 10;
+    private static final int MAX_ANNOTATION_LENGTH = 3;
+
+    private AnnotatedDocuments() {
+        // No instances should be created.
+    }
+
+    /** Returns {@code size} random lowercase words. */
+    static String[] newVocabulary(Random random, int size) {
+        final String[] words = new String[size];
+        final char[] chars = new char[MAX_WORD_LENGTH];
+        for (int i = 0; i < size; i++) {
+            final int len = MIN_WORD_LENGTH + random.nextInt(MAX_WORD_LENGTH - MIN_WORD_LENGTH + 1);
+            for (int j = 0; j < len; j++) {
+                chars[j] = (char) ('a' + random.nextInt(26));
+            }
+            words[i] = new String(chars, 0, len);
+        }
+        return words;
+    }
+
+    /** Returns a whitespace separated text of roughly {@code numChars} characters drawn from the vocabulary. */
+    static String newText(Random random, String[] vocabulary, int numChars) {
+        final StringBuilder sb = new StringBuilder(numChars + MAX_WORD_LENGTH + 1);
+        while (sb.length() < numChars) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(vocabulary[random.nextInt(vocabulary.length)]);
+        }
+        return sb.toString();
+    }
+
+    /** Returns the number of whitespace separated words in the text. */
+    static int countWords(String text) {
+        int count = 0;
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); i++) {
+            final boolean isWhitespace = Character.isWhitespace(text.charAt(i));
+            if (!isWhitespace && !inWord) {
+                ++count;
+            }
+            inWord = !isWhitespace;
+        }
+        return count;
+    }
+
+    /**
+     * Returns annotation markers (pos + len pairs) such that an annotation starts at every position with probability
+     * {@code density}. At least one annotation is always returned.
+     */
+    static int[] newMarkers(Random random, int numPositions, double density) {
+        int[] markers = new int[16];
+        int numMarkers = 0;
+        for (int pos = 0; pos < numPositions; pos++) {
+            if (random.nextDouble() >= density && (numMarkers > 0 || pos < numPositions - 1)) {
+                continue;
+            }
+            if (numMarkers == markers.length) {
+                markers = Arrays.copyOf(markers, markers.length * 2);
+            }
+            markers[numMarkers++] = pos;
+            markers[numMarkers++] = 1 + random.nextInt(Math.min(MAX_ANNOTATION_LENGTH, numPositions - pos));
+        }
+        return Arrays.copyOf(markers, numMarkers);
+    }
+
+    /** Returns the first {@code density} fraction of the vocabulary words, but at least one word. */
+    static String[] selectWords(String[] vocabulary, double density) {
+        final int numWords = Math.max(1, (int) Math.round(vocabulary.length * density));
+        return Arrays.copyOf(vocabulary, numWords);
+    }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots.benchmark;
+
+import static com.shaie.annots.filter.PreAnnotatedTokenFilter.*;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanWeight;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.collect.ImmutableMap;
+import com.shaie.annots.MultiPositionSpanTermQuery;
+import com.shaie.annots.PreAnnotatedAnalyzer;
+import com.shaie.annots.filter.AnnotationSpanTable;
+import com.shaie.annots.filter.PreAnnotatedTokenFilter.LengthEncoding;
+
+/**
+ * JMH benchmarks which compare the two {@link LengthEncoding}s of the annotation lengths at search time. The same
+ * documents and annotations are indexed into two fields, one with the lengths in payloads and one with an
+ * {@link AnnotationSpanTable}, and every benchmark visits all the spans of the {@link #ANY_ANNOTATION_TERM} term of one
+ * field through {@link MultiPositionSpanTermQuery}.
+ * <p>
+ * The primary score is the number of full passes over the index per second. Run through {@link #main(String[])} to
+ * also report the bytes allocated per pass.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnnotationLengthEncodingBenchmark {
+
+    private static final long SEED = 0xA770L;
+    private static final int VOCABULARY_SIZE = 10000;
+    private static final int NUM_DOCS = 2000;
+    private static final String PAYLOAD_FIELD = "payload";
+    private static final String SPAN_TABLE_FIELD = "table";
+
+    @Param({ "1024", "16384" })
+    public int docSize;
+
+    @Param({ "0.01", "0.1", "0.5" })
+    public double density;
+
+    private Directory dir;
+    private DirectoryReader reader;
+    private IndexSearcher searcher;
+    private SpanWeight payloadWeight;
+    private SpanWeight spanTableWeight;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final PreAnnotatedAnalyzer payloadAnalyzer = new PreAnnotatedAnalyzer(LengthEncoding.PAYLOAD);
+        final PreAnnotatedAnalyzer spanTableAnalyzer = new PreAnnotatedAnalyzer(LengthEncoding.SPAN_TABLE);
+        final Analyzer analyzer = new PerFieldAnalyzerWrapper(new WhitespaceAnalyzer(),
+                ImmutableMap.<String, Analyzer> of(PAYLOAD_FIELD, payloadAnalyzer, SPAN_TABLE_FIELD,
+                        spanTableAnalyzer));
+
+        final Random random = new Random(SEED);
+        final String[] vocabulary = AnnotatedDocuments.newVocabulary(random, VOCABULARY_SIZE);
+        dir = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(analyzer))) {
+            for (int i = 0; i < NUM_DOCS; i++) {
+                final String text = AnnotatedDocuments.newText(random, vocabulary, docSize);
+                final int[] markers = AnnotatedDocuments.newMarkers(random, AnnotatedDocuments.countWords(text),
+                        density);
+                final Document doc = new Document();
+                doc.add(new TextField(PAYLOAD_FIELD, text, Store.NO));
+                doc.add(new TextField(SPAN_TABLE_FIELD, text, Store.NO));
+                doc.add(AnnotationSpanTable.newField(SPAN_TABLE_FIELD, markers));
+                payloadAnalyzer.setMarkers(PAYLOAD_FIELD, markers);
+                spanTableAnalyzer.setMarkers(SPAN_TABLE_FIELD, markers);
+                writer.addDocument(doc);
+            }
+            writer.forceMerge(1);
+        }
+        analyzer.close();
+
+        reader = DirectoryReader.open(dir);
+        searcher = new IndexSearcher(reader);
+        payloadWeight = createWeight(new MultiPositionSpanTermQuery(new Term(PAYLOAD_FIELD, ANY_ANNOTATION_TERM)));
+        spanTableWeight = createWeight(new MultiPositionSpanTermQuery(
+                new Term(SPAN_TABLE_FIELD, ANY_ANNOTATION_TERM), AnnotationSpanTable.fieldName(SPAN_TABLE_FIELD)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        reader.close();
+        dir.close();
+    }
+
+    @Benchmark
+    public long payload() throws IOException {
+        return visitSpans(payloadWeight);
+    }
+
+    @Benchmark
+    public long spanTable() throws IOException {
+        return visitSpans(spanTableWeight);
+    }
+
+    private SpanWeight createWeight(SpanQuery query) throws IOException {
+        // Not through createNormalizedWeight, which wraps the weight with the searcher's query cache
+        return ((SpanQuery) searcher.rewrite(query)).createWeight(searcher, false);
+    }
+
+    /** Visits all the spans of the weight, and returns the sum of their end positions. */
+    private long visitSpans(SpanWeight weight) throws IOException {
+        long sum = 0;
+        for (final LeafReaderContext context : reader.leaves()) {
+            final Spans spans = weight.getSpans(context, SpanWeight.Postings.POSITIONS);
+            if (spans == null) {
+                continue;
+            }
+            while (spans.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+                while (spans.nextStartPosition() != Spans.NO_MORE_POSITIONS) {
+                    sum += spans.endPosition();
+                }
+            }
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Options options = new OptionsBuilder()
+                .include(AnnotationLengthEncodingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.spans.SpanContainingQuery;
+import org.apache.lucene.search.spans.SpanFirstQuery;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.search.spans.SpanWeight;
+import org.apache.lucene.search.spans.SpanWithinQuery;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.collect.ImmutableMap;
+import com.shaie.annots.AnnotationSpanQueries;
+import com.shaie.annots.PreAnnotatedAnalyzer;
+import com.shaie.annots.filter.AnnotationSpanTable;
+import com.shaie.annots.filter.PreAnnotatedTokenFilter.LengthEncoding;
+
+/**
+ * JMH benchmarks for the {@link AnnotationSpanQueries} which combine annotations with text, comparing the lazy decoding
+ * of the annotation lengths by {@code MultiPositionSpans} with decoding the length of every visited annotation.
+ * <p>
+ * The {@code lazy} benchmarks run the queries as created by {@link AnnotationSpanQueries}, so a length is only decoded
+ * when the conjunction compares the annotation's end. The {@code eager} benchmarks wrap the annotations with a
+ * {@link SpanFirstQuery} which accepts all positions, but asks for the end of every one of them, which forces all the
+ * visited lengths to be decoded. The primary score is the number of full passes over the matching spans per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnnotationSpanQueriesBenchmark {
+
+    private static final long SEED = 0xA770L;
+    private static final int VOCABULARY_SIZE = 1000;
+    private static final int NUM_DOCS = 2000;
+    private static final int DOC_SIZE = 4096;
+    private static final String TEXT_FIELD = "text";
+    private static final String COLOR_FIELD = "color";
+
+    @Param({ "PAYLOAD", "SPAN_TABLE" })
+    public LengthEncoding lengthEncoding;
+
+    @Param({ "0.1", "0.5" })
+    public double density;
+
+    private Directory dir;
+    private DirectoryReader reader;
+    private IndexSearcher searcher;
+    private SpanWeight lazyContainingWeight;
+    private SpanWeight eagerContainingWeight;
+    private SpanWeight lazyWithinWeight;
+    private SpanWeight eagerWithinWeight;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final PreAnnotatedAnalyzer colorAnalyzer = new PreAnnotatedAnalyzer(lengthEncoding);
+        final Analyzer analyzer = new PerFieldAnalyzerWrapper(new WhitespaceAnalyzer(),
+                ImmutableMap.<String, Analyzer> of(COLOR_FIELD, colorAnalyzer));
+
+        final Random random = new Random(SEED);
+        final String[] vocabulary = AnnotatedDocuments.newVocabulary(random, VOCABULARY_SIZE);
+        dir = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(analyzer))) {
+            for (int i = 0; i < NUM_DOCS; i++) {
+                final String text = AnnotatedDocuments.newText(random, vocabulary, DOC_SIZE);
+                final int[] markers = AnnotatedDocuments.newMarkers(random, AnnotatedDocuments.countWords(text),
+                        density);
+                final Document doc = new Document();
+                doc.add(new TextField(TEXT_FIELD, text, Store.NO));
+                doc.add(new TextField(COLOR_FIELD, text, Store.NO));
+                if (lengthEncoding == LengthEncoding.SPAN_TABLE) {
+                    doc.add(AnnotationSpanTable.newField(COLOR_FIELD, markers));
+                }
+                colorAnalyzer.setMarkers(COLOR_FIELD, markers);
+                writer.addDocument(doc);
+            }
+            writer.forceMerge(1);
+        }
+        analyzer.close();
+
+        reader = DirectoryReader.open(dir);
+        searcher = new IndexSearcher(reader);
+        final String spanTableField = lengthEncoding == LengthEncoding.SPAN_TABLE
+                ? AnnotationSpanTable.fieldName(COLOR_FIELD) : null;
+        final AnnotationSpanQueries colors = new AnnotationSpanQueries(COLOR_FIELD, TEXT_FIELD, spanTableField, null);
+        final SpanQuery text = new SpanTermQuery(new Term(TEXT_FIELD, vocabulary[0]));
+        final SpanQuery eagerAnnotations = new SpanFirstQuery(colors.anyAnnotation(), Integer.MAX_VALUE);
+        lazyContainingWeight = createWeight(colors.containing(text));
+        eagerContainingWeight = createWeight(new SpanContainingQuery(eagerAnnotations, text));
+        lazyWithinWeight = createWeight(colors.within(text));
+        eagerWithinWeight = createWeight(new SpanWithinQuery(eagerAnnotations, text));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        reader.close();
+        dir.close();
+    }
+
+    @Benchmark
+    public long lazyContaining() throws IOException {
+        return visitSpans(lazyContainingWeight);
+    }
+
+    @Benchmark
+    public long eagerContaining() throws IOException {
+        return visitSpans(eagerContainingWeight);
+    }
+
+    @Benchmark
+    public long lazyWithin() throws IOException {
+        return visitSpans(lazyWithinWeight);
+    }
+
+    @Benchmark
+    public long eagerWithin() throws IOException {
+        return visitSpans(eagerWithinWeight);
+    }
+
+    private SpanWeight createWeight(SpanQuery query) throws IOException {
+        // Not through createNormalizedWeight, which wraps the weight with the searcher's query cache
+        return ((SpanQuery) searcher.rewrite(query)).createWeight(searcher, false);
+    }
+
+    /** Visits all the spans of the weight, and returns the sum of their end positions. */
+    private long visitSpans(SpanWeight weight) throws IOException {
+        long sum = 0;
+        for (final LeafReaderContext context : reader.leaves()) {
+            final Spans spans = weight.getSpans(context, SpanWeight.Postings.POSITIONS);
+            if (spans == null) {
+                continue;
+            }
+            while (spans.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+                while (spans.nextStartPosition() != Spans.NO_MORE_POSITIONS) {
+                    sum += spans.endPosition();
+                }
+            }
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Options options = new OptionsBuilder()
+                .include(AnnotationSpanQueriesBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+}
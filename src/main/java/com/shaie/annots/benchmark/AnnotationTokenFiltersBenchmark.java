@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots.benchmark;
+
+import static com.shaie.utils.Utils.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.shaie.annots.annotator.Annotator;
+import com.shaie.annots.annotator.OneWordAnnotator;
+import com.shaie.annots.filter.AnnotatorTokenFilter;
+import com.shaie.annots.filter.AnyAnnotationTokenFilter;
+import com.shaie.annots.filter.PreAnnotatedTokenFilter;
+import com.shaie.annots.filter.SimplePreAnnotatedTokenFilter;
+
+/**
+ * JMH benchmarks for the annotation token filters. Every benchmark analyzes a single document, whose size (in chars)
+ * and annotation density (the fraction of positions that start an annotation, or that are accepted by the
+ * {@link Annotator}) are controlled by {@link #docSize} and {@link #density}.
+ * <p>
+ * The primary score is documents/sec, and the {@code tokens} secondary score is the number of input tokens processed
+ * per second. When run through {@link #main(String[])}, the benchmarks are run with the {@link GCProfiler} and a
+ * summary with tokens/sec and bytes allocated per token is printed at the end.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnnotationTokenFiltersBenchmark {
+
+    private static final long SEED = 0xA770L;
+    private static final int VOCABULARY_SIZE = 10000;
+    private static final String ALLOC_RATE_NORM = "gc.alloc.rate.norm";
+    private static final String TOKENS = "tokens";
+
+    @Param({ "1024", "16384", "131072", "1048576" })
+    public int docSize;
+
+    @Param({ "0.001", "0.01", "0.1", "0.5" })
+    public double density;
+
+    private String text;
+    private int numTokens;
+    private int[] markers;
+    private Tokenizer tokenizer;
+    private TokenStream annotatorStream;
+    private TokenStream anyAnnotationStream;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new Random(SEED);
+        final String[] vocabulary = AnnotatedDocuments.newVocabulary(random, VOCABULARY_SIZE);
+        text = AnnotatedDocuments.newText(random, vocabulary, docSize);
+        numTokens = AnnotatedDocuments.countWords(text);
+        markers = AnnotatedDocuments.newMarkers(random, numTokens, density);
+
+        final Annotator annotator = new OneWordAnnotator(AnnotatedDocuments.selectWords(vocabulary, density));
+        tokenizer = new WhitespaceTokenizer();
+        annotatorStream = new AnnotatorTokenFilter(tokenizer, annotator);
+        anyAnnotationStream = new AnyAnnotationTokenFilter(new AnnotatorTokenFilter(tokenizer, annotator));
+    }
+
+    @Benchmark
+    public int tokenizer(TokenCounter counter) throws IOException {
+        return consume(tokenizer, counter);
+    }
+
+    @SuppressWarnings("resource")
+    @Benchmark
+    public int preAnnotatedTokenFilter(TokenCounter counter) throws IOException {
+        return consume(new PreAnnotatedTokenFilter(tokenizer, markers), counter);
+    }
+
+    @SuppressWarnings("resource")
+    @Benchmark
+    public int simplePreAnnotatedTokenFilter(TokenCounter counter) throws IOException {
+        return consume(new SimplePreAnnotatedTokenFilter(tokenizer, markers), counter);
+    }
+
+    @Benchmark
+    public int annotatorTokenFilter(TokenCounter counter) throws IOException {
+        return consume(annotatorStream, counter);
+    }
+
+    @Benchmark
+    public int anyAnnotationTokenFilter(TokenCounter counter) throws IOException {
+        return consume(anyAnnotationStream, counter);
+    }
+
+    /** Consumes the stream and returns the number of tokens it emitted. */
+    private int consume(TokenStream ts, TokenCounter counter) throws IOException {
+        tokenizer.setReader(new StringReader(text));
+        int numOutputTokens = 0;
+        try {
+            ts.reset();
+            while (ts.incrementToken()) {
+                ++numOutputTokens;
+            }
+            ts.end();
+        } finally {
+            ts.close();
+        }
+        counter.tokens += numTokens;
+        return numOutputTokens;
+    }
+
+    /** Counts the input tokens processed by each benchmark, reported as tokens/sec. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class TokenCounter {
+
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            tokens = 0;
+        }
+
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Options options = new OptionsBuilder()
+                .include(AnnotationTokenFiltersBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        printSummary(new Runner(options).run());
+    }
+
+    /** Prints tokens/sec and bytes allocated per token for every benchmark run. */
+    private static void printSummary(Collection<RunResult> results) {
+        System.out.println(format("%-32s %8s %8s %14s %14s", "benchmark", "docSize", "density", "tokens/sec",
+                "bytes/token"));
+        for (final RunResult result : results) {
+            final BenchmarkParams params = result.getParams();
+            final String benchmark = params.getBenchmark();
+            final double docsPerSec = result.getPrimaryResult().getScore();
+            final double tokensPerSec = getScore(result, TOKENS);
+            // gc.alloc.rate.norm is the number of bytes allocated per benchmark operation, i.e. per document
+            final double bytesPerDoc = getScore(result, ALLOC_RATE_NORM);
+            final double bytesPerToken = tokensPerSec > 0 ? bytesPerDoc * docsPerSec / tokensPerSec : Double.NaN;
+            System.out.println(format("%-32s %8s %8s %14.0f %14.2f",
+                    benchmark.substring(benchmark.lastIndexOf('.') + 1), params.getParam("docSize"),
+                    params.getParam("density"), tokensPerSec, bytesPerToken));
+        }
+    }
+
+    private static double getScore(RunResult result, String label) {
+        final Result<?> secondaryResult = result.getSecondaryResults().get(label);
+        return secondaryResult == null ? Double.NaN : secondaryResult.getScore();
+    }
+
+}
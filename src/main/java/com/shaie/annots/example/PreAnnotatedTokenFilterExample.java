@@ -20,16 +20,12 @@ import static com.shaie.annots.filter.PreAnnotatedTokenFilter.*;
 import static com.shaie.utils.Utils.*;
 
 import java.io.IOException;
-import java.io.StringReader;
 
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
-import org.apache.lucene.analysis.core.WhitespaceTokenizer;
-import org.apache.lucene.analysis.sinks.TeeSinkTokenFilter;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
@@ -41,15 +37,14 @@ import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.search.spans.FieldMaskingSpanQuery;
-import org.apache.lucene.search.spans.SpanNearQuery;
 import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.search.spans.SpanTermQuery;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.RAMDirectory;
 
-import com.shaie.annots.MultiPositionSpanTermQuery;
-import com.shaie.annots.filter.PreAnnotatedTokenFilter;
+import com.google.common.collect.ImmutableMap;
+import com.shaie.annots.AnnotationSpanQueries;
+import com.shaie.annots.PreAnnotatedAnalyzer;
 import com.shaie.utils.IndexUtils;
 
 /**
@@ -64,12 +59,16 @@ public class PreAnnotatedTokenFilterExample {
     public static void main(String[] args) throws Exception {
         final Directory dir = new RAMDirectory();
         final Analyzer analyzer = new WhitespaceAnalyzer();
-        final IndexWriterConfig conf = new IndexWriterConfig(analyzer);
+        final PreAnnotatedAnalyzer colorAnalyzer = new PreAnnotatedAnalyzer();
+        final Analyzer indexAnalyzer = new PerFieldAnalyzerWrapper(analyzer,
+                ImmutableMap.<String, Analyzer> of(COLOR_FIELD, colorAnalyzer));
+        final IndexWriterConfig conf = new IndexWriterConfig(indexAnalyzer);
         final IndexWriter writer = new IndexWriter(dir, conf);
 
-        addDocument(writer, "quick rosy brown fox and a pale violet red dog", 1, 2, 2, 1, 6, 3, 7, 1, 8, 1);
-        addDocument(writer, "only red dog", 1, 1);
-        addDocument(writer, "man with red pale face", 2, 1);
+        addDocument(writer, colorAnalyzer, "quick rosy brown fox and a pale violet red dog",
+                1, 2, 2, 1, 6, 3, 7, 1, 8, 1);
+        addDocument(writer, colorAnalyzer, "only red dog", 1, 1);
+        addDocument(writer, colorAnalyzer, "man with red pale face", 2, 1);
         writer.close();
 
         final QueryParser qp = new QueryParser(TEXT_FIELD, analyzer);
@@ -92,30 +91,31 @@ public class PreAnnotatedTokenFilterExample {
         searchForColoredFox(searcher);
         System.out.println();
 
+        searchForPaleWithinColor(searcher);
+        System.out.println();
+
         reader.close();
     }
 
-    @SuppressWarnings("resource")
-    private static void addDocument(IndexWriter writer, String text, int... colorAnnotations) throws IOException {
-        final Tokenizer tokenizer = new WhitespaceTokenizer();
-        tokenizer.setReader(new StringReader(text));
-        final TeeSinkTokenFilter textStream = new TeeSinkTokenFilter(tokenizer);
-        final TokenStream colorsStream =
-                new PreAnnotatedTokenFilter(textStream.newSinkTokenStream(), colorAnnotations);
-
+    private static void addDocument(IndexWriter writer, PreAnnotatedAnalyzer colorAnalyzer, String text,
+            int... colorAnnotations) throws IOException {
         final Document doc = new Document();
-        doc.add(new StoredField(TEXT_FIELD, text));
-        doc.add(new TextField(TEXT_FIELD, textStream));
-        doc.add(new TextField(COLOR_FIELD, colorsStream));
+        doc.add(new TextField(TEXT_FIELD, text, Store.YES));
+        doc.add(new TextField(COLOR_FIELD, text, Store.NO));
+        colorAnalyzer.setMarkers(COLOR_FIELD, colorAnnotations);
         writer.addDocument(doc);
     }
 
     private static void searchForColoredFox(IndexSearcher searcher) throws IOException {
-        final SpanQuery anyColor = new MultiPositionSpanTermQuery(new Term(COLOR_FIELD, ANY_ANNOTATION_TERM));
-        final SpanQuery colorAsText = new FieldMaskingSpanQuery(anyColor, TEXT_FIELD);
+        final AnnotationSpanQueries colors = new AnnotationSpanQueries(COLOR_FIELD, TEXT_FIELD);
         final SpanQuery fox = new SpanTermQuery(new Term(TEXT_FIELD, "fox"));
-        final SpanQuery coloredFox = new SpanNearQuery(new SpanQuery[] { colorAsText, fox }, 0, true);
-        search(searcher, coloredFox);
+        search(searcher, colors.before(fox, 0));
+    }
+
+    private static void searchForPaleWithinColor(IndexSearcher searcher) throws IOException {
+        final AnnotationSpanQueries colors = new AnnotationSpanQueries(COLOR_FIELD, TEXT_FIELD);
+        final SpanQuery pale = new SpanTermQuery(new Term(TEXT_FIELD, "pale"));
+        search(searcher, colors.within(pale));
     }
 
     private static void search(IndexSearcher searcher, Query q) throws IOException {
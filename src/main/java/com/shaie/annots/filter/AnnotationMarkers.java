@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots.filter;
+
+import java.util.Arrays;
+
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * Holds annotation markers (pairs of pos + len), sorted by their start position and without markers that are covered
+ * by others. E.g. the annotation marker [5,1] is covered by the annotation [4,3] and therefore is redundant to keep.
+ * <p>
+ * Markers are packed into {@code long}s (start in the upper 32 bits, and the length, inverted so that longer markers
+ * sort first, in the lower ones) and sorted in place, so {@link #set(int...)} does not box or allocate once its buffers
+ * are large enough. This allows reusing the same instance across documents.
+ */
+final class AnnotationMarkers {
+
+    private long[] packed = new long[0];
+    private int[] starts = new int[0];
+    private int[] ends = new int[0];
+    private int size;
+
+    /** Sets the markers to the given annotation pairs (pos + len). */
+    void set(int... annotations) {
+        if ((annotations.length & 0x1) != 0) {
+            throw new IllegalArgumentException("expected even number of integers, got " + annotations.length);
+        }
+
+        final int numAnnotations = annotations.length / 2;
+        if (packed.length < numAnnotations) {
+            packed = new long[ArrayUtil.oversize(numAnnotations, Long.BYTES)];
+        }
+        boolean sorted = true;
+        for (int i = 0; i < numAnnotations; i++) {
+            packed[i] = pack(annotations[2 * i], annotations[2 * i + 1]);
+            sorted &= i == 0 || packed[i - 1] <= packed[i];
+        }
+        if (!sorted) {
+            Arrays.sort(packed, 0, numAnnotations);
+        }
+        filterCovered(numAnnotations);
+    }
+
+    /** Returns the number of annotations. */
+    int size() {
+        return size;
+    }
+
+    /** Returns the start position of the annotation at the given index. */
+    int start(int index) {
+        return starts[index];
+    }
+
+    /** Returns the (inclusive) end position of the annotation at the given index. */
+    int end(int index) {
+        return ends[index];
+    }
+
+    /**
+     * Returns the index of the first annotation, at or after {@code fromIndex}, which ends at or after
+     * {@code position}, or {@link #size()} if there is no such annotation. Since covered annotations are removed, both
+     * the start and end positions of the annotations are strictly increasing, so this is done by galloping from
+     * {@code fromIndex} and then binary searching the range it found. This takes constant time when annotations are
+     * dense, and logarithmic time in the number of skipped annotations when they are sparse.
+     */
+    int advance(int fromIndex, int position) {
+        if (fromIndex >= size || ends[fromIndex] >= position) {
+            return fromIndex;
+        }
+        int low = fromIndex;
+        int step = 1;
+        int high = fromIndex + step;
+        while (high < size && ends[high] < position) {
+            low = high;
+            step <<= 1;
+            high = fromIndex + step;
+        }
+        if (high >= size) {
+            high = size;
+        }
+        // ends[low] < position, and ends[high] >= position (or high == size)
+        while (high - low > 1) {
+            final int mid = (low + high) >>> 1;
+            if (ends[mid] < position) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return high;
+    }
+
+    /** Keeps only the sorted annotations which are not covered by a previous one. */
+    private void filterCovered(int numAnnotations) {
+        if (starts.length < numAnnotations) {
+            starts = new int[ArrayUtil.oversize(numAnnotations, Integer.BYTES)];
+            ends = new int[starts.length];
+        }
+        size = 0;
+        int end = -1;
+        for (int i = 0; i < numAnnotations; i++) {
+            final int thisStart = (int) (packed[i] >>> 32);
+            final int thisEnd = thisStart + (Integer.MAX_VALUE - (int) packed[i]) - 1;
+            if (thisEnd <= end) {
+                // Filter that annotation information since it's covered in the previous one.
+                continue;
+            }
+            starts[size] = thisStart;
+            ends[size] = thisEnd;
+            ++size;
+            end = thisEnd;
+        }
+    }
+
+    private static long pack(int start, int len) {
+        if (start < 0 || len <= 0) {
+            throw new IllegalArgumentException("invalid annotation marker: pos=" + start + ", len=" + len);
+        }
+        // Same start position: longer annotation comes first.
+        return ((long) start << 32) | (Integer.MAX_VALUE - len);
+    }
+
+}
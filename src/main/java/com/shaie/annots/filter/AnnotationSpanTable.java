@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots.filter;
+
+import static com.google.common.base.Preconditions.*;
+
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * A per-document table of the annotations' start positions and lengths, which is indexed as a
+ * {@link BinaryDocValuesField}. It is an alternative to recording the annotation lengths in the payloads of the
+ * {@link PreAnnotatedTokenFilter#ANY_ANNOTATION_TERM} term (see
+ * {@link PreAnnotatedTokenFilter.LengthEncoding#SPAN_TABLE}).
+ * <p>
+ * The annotations are sorted by their start position, without the ones which are covered by others (exactly like
+ * {@link PreAnnotatedTokenFilter} indexes them), and every annotation is encoded as a pair of {@code VInt}s: the delta
+ * from the previous start position and the length. Since search visits the positions of a document in increasing
+ * order, the table is read through a forward-only {@link Reader}.
+ */
+public final class AnnotationSpanTable {
+
+    private static final String FIELD_SUFFIX = "_spans";
+    private static final int MAX_BYTES_IN_VINT = 5;
+
+    private AnnotationSpanTable() {
+        // No instance
+    }
+
+    /** Returns the name of the doc values field which holds the span table of the given annotation field. */
+    public static String fieldName(String annotationField) {
+        return annotationField + FIELD_SUFFIX;
+    }
+
+    /** Returns a {@link BinaryDocValuesField} with the span table of the given annotation markers (pos + len). */
+    public static BinaryDocValuesField newField(String annotationField, int... markers) {
+        return new BinaryDocValuesField(fieldName(annotationField), encode(markers));
+    }
+
+    /** Encodes the given annotation markers (pairs of pos + len) into a span table. */
+    public static BytesRef encode(int... markers) {
+        checkArgument(markers != null, "annotation markers cannot be null");
+        final AnnotationMarkers annotations = new AnnotationMarkers();
+        annotations.set(markers);
+        final byte[] bytes = new byte[annotations.size() * 2 * MAX_BYTES_IN_VINT];
+        int pos = 0;
+        int lastStart = 0;
+        for (int i = 0; i < annotations.size(); i++) {
+            final int start = annotations.start(i);
+            pos = writeVInt(bytes, pos, start - lastStart);
+            pos = writeVInt(bytes, pos, annotations.end(i) - start + 1);
+            lastStart = start;
+        }
+        return new BytesRef(bytes, 0, pos);
+    }
+
+    /**
+     * Writes the value as a {@code VInt} (like {@link DataOutput#writeVInt(int)}, which declares an
+     * {@link java.io.IOException} even when writing to an array), and returns the position following it.
+     */
+    private static int writeVInt(byte[] bytes, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[pos++] = (byte) value;
+        return pos;
+    }
+
+    /** Reads the annotation lengths of a span table, for increasing start positions. */
+    public static final class Reader {
+
+        private final ByteArrayDataInput in = new ByteArrayDataInput();
+
+        private int start;
+        private int length;
+
+        /** Resets the reader to read the given span table. */
+        public void reset(BytesRef table) {
+            in.reset(table.bytes, table.offset, table.length);
+            start = -1;
+            length = 0;
+        }
+
+        /**
+         * Returns the length of the annotation which starts at the given position, or 0 if there isn't one. Positions
+         * must be given in non-decreasing order.
+         */
+        public int length(int position) {
+            while (start < position && !in.eof()) {
+                start = Math.max(start, 0) + in.readVInt();
+                length = in.readVInt();
+            }
+            return start == position ? length : 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots.filter;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.sinks.TeeSinkTokenFilter;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.AttributeSource;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import com.google.common.collect.Maps;
+import com.shaie.annots.annotator.Annotator;
+
+/**
+ * A {@link TokenFilter} which passes through all the tokens of its input, and in addition routes every token to the
+ * annotation fields whose {@link Annotator} accepts it. Each token is evaluated by all annotators in a single pass,
+ * and its state is captured at most once, no matter how many fields accept it. The accepted tokens of each field are
+ * replayed by the stream returned from {@link #getSinkTokenStream(String)}, at their original positions.
+ * <p>
+ * This replaces chaining an {@link AnnotatorTokenFilter} per field on top of a {@link TeeSinkTokenFilter} sink, where
+ * every sink buffers and replays all the tokens of the document. Like {@link TeeSinkTokenFilter}, this filter must be
+ * consumed before the sink streams, e.g. by adding its field to the document before the annotation fields.
+ */
+public final class MultiAnnotatorTokenFilter extends TokenFilter {
+
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final PositionIncrementAttribute posIncrAtt = addAttribute(PositionIncrementAttribute.class);
+
+    private final Annotator[] annotators;
+    private final AnnotationSinkTokenStream[] sinks;
+    private final Map<String, AnnotationSinkTokenStream> fieldSinks = Maps.newHashMap();
+
+    private int absPosition;
+
+    public MultiAnnotatorTokenFilter(TokenStream input, Map<String, Annotator> fieldAnnotators) {
+        super(input);
+        checkArgument(fieldAnnotators != null && !fieldAnnotators.isEmpty(), "annotators cannot be null or empty");
+        annotators = new Annotator[fieldAnnotators.size()];
+        sinks = new AnnotationSinkTokenStream[fieldAnnotators.size()];
+        int i = 0;
+        for (final Entry<String, Annotator> entry : fieldAnnotators.entrySet()) {
+            annotators[i] = checkNotNull(entry.getValue(), "annotator cannot be null");
+            sinks[i] = new AnnotationSinkTokenStream(cloneAttributes());
+            fieldSinks.put(entry.getKey(), sinks[i]);
+            ++i;
+        }
+    }
+
+    /** Returns the {@link TokenStream} of the tokens that were accepted by the given field's {@link Annotator}. */
+    public TokenStream getSinkTokenStream(String fieldName) {
+        final AnnotationSinkTokenStream sink = fieldSinks.get(fieldName);
+        checkArgument(sink != null, "no annotator was given for field [%s]", fieldName);
+        return sink;
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (!input.incrementToken()) {
+            return false;
+        }
+
+        absPosition += posIncrAtt.getPositionIncrement();
+        final char[] buffer = termAtt.buffer();
+        final int length = termAtt.length();
+        State state = null;
+        for (int i = 0; i < annotators.length; i++) {
+            if (annotators[i].accept(buffer, 0, length)) {
+                if (state == null) {
+                    state = captureState();
+                }
+                sinks[i].addState(state, absPosition);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        absPosition = -1;
+        for (final AnnotationSinkTokenStream sink : sinks) {
+            sink.clearStates();
+        }
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        final State finalState = captureState();
+        final int finalPosition = absPosition + posIncrAtt.getPositionIncrement();
+        for (final AnnotationSinkTokenStream sink : sinks) {
+            sink.setFinalState(finalState, finalPosition);
+        }
+    }
+
+    /** A {@link TokenStream} which replays the tokens that were accepted by one {@link Annotator}. */
+    private static final class AnnotationSinkTokenStream extends TokenStream {
+
+        private final PositionIncrementAttribute posIncrAtt = addAttribute(PositionIncrementAttribute.class);
+
+        private State[] states = new State[8];
+        private int[] positions = new int[8];
+        private int numStates;
+        private int upto;
+        private int lastPosition;
+        private State finalState;
+        private int finalPosition;
+
+        AnnotationSinkTokenStream(AttributeSource source) {
+            super(source);
+        }
+
+        @Override
+        public boolean incrementToken() throws IOException {
+            if (upto >= numStates) {
+                return false;
+            }
+            restoreState(states[upto]);
+            posIncrAtt.setPositionIncrement(positions[upto] - lastPosition);
+            lastPosition = positions[upto];
+            ++upto;
+            return true;
+        }
+
+        @Override
+        public void reset() throws IOException {
+            super.reset();
+            upto = 0;
+            lastPosition = -1;
+        }
+
+        @Override
+        public void end() throws IOException {
+            super.end();
+            if (finalState != null) {
+                restoreState(finalState);
+                // Account for the positions of the tokens which followed the last accepted one
+                posIncrAtt.setPositionIncrement(finalPosition - lastPosition);
+            }
+        }
+
+        void addState(State state, int position) {
+            if (numStates == states.length) {
+                final int newSize = ArrayUtil.oversize(numStates + 1, RamUsageEstimator.NUM_BYTES_OBJECT_REF);
+                states = Arrays.copyOf(states, newSize);
+                positions = Arrays.copyOf(positions, newSize);
+            }
+            states[numStates] = state;
+            positions[numStates] = position;
+            ++numStates;
+        }
+
+        void setFinalState(State state, int position) {
+            finalState = state;
+            finalPosition = position;
+        }
+
+        void clearStates() {
+            Arrays.fill(states, 0, numStates, null);
+            numStates = 0;
+            finalState = null;
+        }
+
+    }
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots.filter;
+
+import org.apache.lucene.util.Attribute;
+
+/**
+ * An {@link Attribute} through which the annotation filters hint their input streams about the next position that they
+ * need. Tokens at positions before it are dropped by the filter anyway, so a stream which is able to skip tokens
+ * cheaply (e.g. one which reads pre-tokenized input) may consult it and not produce them at all, as long as it adds the
+ * skipped positions to the position increment of the next token it produces.
+ * <p>
+ * <b>NOTE:</b> the value is set by the consuming filter and not by the producing stream, therefore it is not affected
+ * by {@link org.apache.lucene.util.AttributeSource#clearAttributes()}.
+ */
+public interface NextAnnotatedPositionAttribute extends Attribute {
+
+    /** Returns the next annotated position, or {@link Integer#MAX_VALUE} if there are no more annotations. */
+    int getNextPosition();
+
+    /** Sets the next annotated position. */
+    void setNextPosition(int position);
+
+}
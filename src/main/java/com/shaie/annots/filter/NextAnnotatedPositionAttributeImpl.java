@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots.filter;
+
+import org.apache.lucene.util.AttributeImpl;
+import org.apache.lucene.util.AttributeReflector;
+
+/** Default implementation of {@link NextAnnotatedPositionAttribute}. */
+public class NextAnnotatedPositionAttributeImpl extends AttributeImpl implements NextAnnotatedPositionAttribute {
+
+    private int nextPosition = 0;
+
+    @Override
+    public int getNextPosition() {
+        return nextPosition;
+    }
+
+    @Override
+    public void setNextPosition(int position) {
+        this.nextPosition = position;
+    }
+
+    @Override
+    public void clear() {
+        // Not cleared per token, since the value is set by the consumer of the stream.
+    }
+
+    @Override
+    public void copyTo(AttributeImpl target) {
+        ((NextAnnotatedPositionAttribute) target).setNextPosition(nextPosition);
+    }
+
+    @Override
+    public void reflectWith(AttributeReflector reflector) {
+        reflector.reflect(NextAnnotatedPositionAttribute.class, "nextPosition", nextPosition);
+    }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots.filter;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.store.ByteArrayDataOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CharsRefBuilder;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import com.shaie.annots.annotator.PhraseAnnotator;
+
+/**
+ * A {@link TokenFilter} which finds the phrases of a {@link PhraseAnnotator} in the token stream and keeps only the
+ * tokens which are covered by them. Phrases are matched leftmost-longest, i.e. at every position the longest phrase
+ * which starts there is taken, and matching resumes after its last token. The filter buffers only the tokens of the
+ * phrase that is currently being matched.
+ * <p>
+ * The output is the same as {@link PreAnnotatedTokenFilter}'s: every phrase is preceded by a
+ * {@link PreAnnotatedTokenFilter#ANY_ANNOTATION_TERM} token at the position of its first token, with a
+ * {@link PayloadAttribute} which holds the phrase length. That way annotation and indexing happen in a single pass over
+ * the text, without computing the annotation markers in advance.
+ */
+public final class PhraseAnnotatorTokenFilter extends TokenFilter {
+
+    private static final int MAX_BYTES_IN_VINT = 5;
+
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final PositionIncrementAttribute posIncrAtt = addAttribute(PositionIncrementAttribute.class);
+    private final PayloadAttribute payloadAtt = addAttribute(PayloadAttribute.class);
+
+    private final BytesRef payloadBytes = new BytesRef(MAX_BYTES_IN_VINT);
+    private final ByteArrayDataOutput out = new ByteArrayDataOutput(payloadBytes.bytes);
+    private final PhraseAnnotator.Cursor cursor;
+
+    /** A ring buffer of the tokens which were read from the input, but not yet matched or output. */
+    private BufferedToken[] window = new BufferedToken[8];
+    private int windowHead;
+    private int windowSize;
+
+    private boolean inputExhausted;
+    private int inputPosition;
+    private int outputPosition;
+    private int pendingTokens;
+
+    public PhraseAnnotatorTokenFilter(TokenStream input, PhraseAnnotator annotator) {
+        super(input);
+        checkNotNull(annotator, "annotator cannot be null");
+        this.cursor = annotator.newCursor();
+        for (int i = 0; i < window.length; i++) {
+            window[i] = new BufferedToken();
+        }
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (pendingTokens > 0) {
+            outputNextMatchedToken();
+            return true;
+        }
+
+        while (windowSize > 0 || fillWindow()) {
+            final int matchLength = longestMatch();
+            if (matchLength > 0) {
+                outputAnyTerm(matchLength);
+                pendingTokens = matchLength;
+                return true;
+            }
+            // No phrase starts at the first token, drop it
+            removeFirstToken();
+        }
+        return false;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        for (int i = 0; i < windowSize; i++) {
+            tokenAt(i).state = null;
+        }
+        windowHead = 0;
+        windowSize = 0;
+        inputExhausted = false;
+        inputPosition = -1;
+        outputPosition = -1;
+        pendingTokens = 0;
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        final int finalPosition = inputPosition + posIncrAtt.getPositionIncrement();
+        posIncrAtt.setPositionIncrement(finalPosition - outputPosition);
+    }
+
+    /** Returns the number of tokens of the longest phrase which starts at the first token in the window. */
+    private int longestMatch() throws IOException {
+        cursor.reset();
+        int matchLength = 0;
+        for (int i = 0; i < windowSize || fillWindow(); i++) {
+            final CharsRefBuilder term = tokenAt(i).term;
+            if (!cursor.advance(term.chars(), 0, term.length())) {
+                break;
+            }
+            if (cursor.isMatch()) {
+                matchLength = i + 1;
+            }
+        }
+        return matchLength;
+    }
+
+    private void outputAnyTerm(int matchLength) throws IOException {
+        final BufferedToken first = tokenAt(0);
+        final int length = tokenAt(matchLength - 1).position - first.position + 1;
+        restoreState(first.state);
+        termAtt.setEmpty().append(PreAnnotatedTokenFilter.ANY_ANNOTATION_TERM);
+        out.reset(payloadBytes.bytes);
+        out.writeVInt(length);
+        payloadBytes.length = out.getPosition();
+        payloadAtt.setPayload(payloadBytes);
+        setPosition(first.position);
+    }
+
+    private void outputNextMatchedToken() {
+        final BufferedToken token = tokenAt(0);
+        restoreState(token.state);
+        setPosition(token.position);
+        removeFirstToken();
+        --pendingTokens;
+    }
+
+    private void setPosition(int position) {
+        posIncrAtt.setPositionIncrement(position - outputPosition);
+        outputPosition = position;
+    }
+
+    /** Reads the next token from the input into the end of the window. Returns false if the input is exhausted. */
+    private boolean fillWindow() throws IOException {
+        if (inputExhausted) {
+            return false;
+        }
+        if (!input.incrementToken()) {
+            inputExhausted = true;
+            return false;
+        }
+        inputPosition += posIncrAtt.getPositionIncrement();
+        if (windowSize == window.length) {
+            growWindow();
+        }
+        final BufferedToken token = tokenAt(windowSize++);
+        token.state = captureState();
+        token.position = inputPosition;
+        token.term.copyChars(termAtt.buffer(), 0, termAtt.length());
+        return true;
+    }
+
+    private void growWindow() {
+        final BufferedToken[] newWindow = new BufferedToken[ArrayUtil.oversize(window.length + 1,
+                RamUsageEstimator.NUM_BYTES_OBJECT_REF)];
+        for (int i = 0; i < windowSize; i++) {
+            newWindow[i] = tokenAt(i);
+        }
+        for (int i = windowSize; i < newWindow.length; i++) {
+            newWindow[i] = new BufferedToken();
+        }
+        window = newWindow;
+        windowHead = 0;
+    }
+
+    private void removeFirstToken() {
+        tokenAt(0).state = null;
+        windowHead = (windowHead + 1) % window.length;
+        --windowSize;
+    }
+
+    private BufferedToken tokenAt(int index) {
+        return window[(windowHead + index) % window.length];
+    }
+
+    /** A token which was read from the input, along with its absolute position and term for matching. */
+    private static final class BufferedToken {
+        final CharsRefBuilder term = new CharsRefBuilder();
+        State state;
+        int position;
+    }
+
+}
@@ -19,9 +19,6 @@ package com.shaie.annots.filter;
 import static com.google.common.base.Preconditions.*;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.List;
 
 import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
@@ -31,7 +28,6 @@ import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.apache.lucene.store.ByteArrayDataOutput;
 import org.apache.lucene.store.DataOutput;
 import org.apache.lucene.util.BytesRef;
-import org.testng.collections.Lists;
 
 /**
  * A {@link TokenFilter} which keeps only tokens with positions that are covered by a given array of annotation
@@ -43,32 +39,78 @@ import org.testng.collections.Lists;
  * the annotation and a {@link PayloadAttribute} with the annotation length, encoded as {@link DataOutput#writeVInt(int)
  * VInt}. So for the above example and annotations, it will output the token with {@code pos=0,payload=[3]} and
  * {@code pos=5,payload=[2]} .
+ * <p>
+ * Alternatively, with {@link LengthEncoding#SPAN_TABLE}, the annotation length is not written as a payload, and is
+ * expected to be indexed per document in an {@link AnnotationSpanTable}. This avoids indexing payloads and decoding
+ * them at search time.
+ * <p>
+ * The filter publishes the start of the next annotation through {@link NextAnnotatedPositionAttribute}, so that input
+ * streams which support it can skip over unannotated tokens.
  */
 public final class PreAnnotatedTokenFilter extends TokenFilter {
 
     public static final String ANY_ANNOTATION_TERM = "_any_";
 
+    /** How the length of an annotation is recorded in the index. */
+    public static enum LengthEncoding {
+        /** The length is written as the payload of the {@link #ANY_ANNOTATION_TERM} token. */
+        PAYLOAD,
+        /** The length is not written by the filter, but is indexed separately in an {@link AnnotationSpanTable}. */
+        SPAN_TABLE
+    }
+
     private static final int MAX_BYTES_IN_VINT = 5;
 
     private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
     private final PositionIncrementAttribute posIncrAtt = addAttribute(PositionIncrementAttribute.class);
+    private final NextAnnotatedPositionAttribute nextPosAtt = addAttribute(NextAnnotatedPositionAttribute.class);
     private final PayloadAttribute payloadAtt = addAttribute(PayloadAttribute.class);
 
     private final BytesRef payloadBytes = new BytesRef(MAX_BYTES_IN_VINT);
     private final ByteArrayDataOutput out = new ByteArrayDataOutput(payloadBytes.bytes);
-    private final int[] markers;
+    private final AnnotationMarkers markers = new AnnotationMarkers();
 
     private int skippedPositions;
     private int absPosition;
     private int curStart;
     private int curEnd;
-    private int pairIdx;
+    private int annotationIdx;
     private State state = null;
+    private LengthEncoding lengthEncoding = LengthEncoding.PAYLOAD;
 
     public PreAnnotatedTokenFilter(TokenStream input, int... markers) {
-        super(input);
+        this(input);
         checkArgument(markers != null && markers.length > 0, "annotation markers cannot be null or empty");
-        this.markers = getSortedFilteredMarkers(markers);
+        this.markers.set(markers);
+    }
+
+    private PreAnnotatedTokenFilter(TokenStream input) {
+        super(input);
+    }
+
+    /**
+     * Returns a filter without any annotation markers, which are expected to be set per document through
+     * {@link #setMarkers(int...)}. This is useful when the filter is created once and reused, e.g. by an
+     * {@link org.apache.lucene.analysis.Analyzer}.
+     */
+    public static PreAnnotatedTokenFilter withoutMarkers(TokenStream input) {
+        return new PreAnnotatedTokenFilter(input);
+    }
+
+    /**
+     * Sets the annotation markers to use for the next document. This allows reusing the filter across documents, and
+     * should be called before {@link #reset()}. Unlike the constructor, this method accepts empty markers, in which
+     * case the filter does not output any tokens.
+     */
+    public void setMarkers(int... markers) {
+        checkArgument(markers != null, "annotation markers cannot be null");
+        this.markers.set(markers);
+    }
+
+    /** Sets how the annotation lengths are recorded. Defaults to {@link LengthEncoding#PAYLOAD}. */
+    public PreAnnotatedTokenFilter setLengthEncoding(LengthEncoding lengthEncoding) {
+        this.lengthEncoding = checkNotNull(lengthEncoding, "lengthEncoding cannot be null");
+        return this;
     }
 
     @Override
@@ -100,7 +142,7 @@ public final class PreAnnotatedTokenFilter extends TokenFilter {
         super.reset();
         skippedPositions = 0;
         absPosition = -1;
-        pairIdx = 0;
+        annotationIdx = 0;
         updateCurrentStartEnd();
         state = null;
     }
@@ -118,10 +160,13 @@ public final class PreAnnotatedTokenFilter extends TokenFilter {
         posIncrAtt.setPositionIncrement(0);
     }
 
-    /** Update the payload attribute for the {@link #ANY_ANNOTATION_TERM}. */
+    /** Update the term and payload attributes for the {@link #ANY_ANNOTATION_TERM}. */
     private void outputAnyTerm() throws IOException {
         state = captureState();
         termAtt.setEmpty().append(ANY_ANNOTATION_TERM);
+        if (lengthEncoding != LengthEncoding.PAYLOAD) {
+            return;
+        }
         out.reset(payloadBytes.bytes);
         out.writeVInt(curEnd - curStart + 1);
         payloadBytes.length = out.getPosition();
@@ -134,83 +179,25 @@ public final class PreAnnotatedTokenFilter extends TokenFilter {
             return false;
         }
         if (absPosition > curEnd) {
-            pairIdx += 2;
-            if (pairIdx < markers.length) {
-                updateCurrentStartEnd();
-                // Check if next annotation accepts it.
-                return acceptCurrentToken();
-            }
-            // No more annotated tokens
-            curStart = Integer.MAX_VALUE;
-            curEnd = Integer.MAX_VALUE;
-            return false;
+            // Skip to the first annotation which ends at or after the current position, and check if it accepts it.
+            annotationIdx = markers.advance(annotationIdx + 1, absPosition);
+            updateCurrentStartEnd();
+            return absPosition >= curStart;
         }
         return true;
     }
 
     /** Update current start and end positions. */
     private void updateCurrentStartEnd() {
-        curStart = markers[pairIdx];
-        curEnd = curStart + markers[pairIdx + 1] - 1;
-    }
-
-    /**
-     * Returns a sorted list of annotation pairs (pos + len), and also filters annotation infos that are covered by
-     * others. E.g. the annotation info [5,1] is covered by the annotation [4,3] and therefore is redundant to keep.
-     */
-    private static int[] getSortedFilteredMarkers(int... annotations) {
-        if (annotations == null || annotations.length == 0) {
-            return new int[0];
-        }
-        if ((annotations.length & 0x1) != 0) {
-            throw new IllegalArgumentException("expected even number of integers, got " + annotations.length);
-        }
-
-        final int[][] sorted = getSortedMarkers(annotations);
-        final List<Integer> filtered = Lists.newArrayList();
-        filtered.add(sorted[0][0]);
-        filtered.add(sorted[0][1]);
-        int start = sorted[0][0];
-        int end = start + sorted[0][1] - 1;
-        for (int i = 1; i < sorted.length; i++) {
-            final int thisStart = sorted[i][0];
-            final int thisEnd = thisStart + sorted[i][1] - 1;
-            if (thisEnd <= end) {
-                // Filter that annotation information since it's covered in the previous one.
-                continue;
-            }
-            filtered.add(sorted[i][0]);
-            filtered.add(sorted[i][1]);
-            start = thisStart;
-            end = thisEnd;
-        }
-
-        final int[] result = new int[filtered.size()];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = filtered.get(i);
-        }
-        return result;
-    }
-
-    private static int[][] getSortedMarkers(int... annotations) {
-        final int[][] annots = new int[annotations.length / 2][2];
-        for (int i = 0, j = 0; i < annotations.length; i += 2, j++) {
-            annots[j][0] = annotations[i];
-            annots[j][1] = annotations[i + 1];
+        if (annotationIdx < markers.size()) {
+            curStart = markers.start(annotationIdx);
+            curEnd = markers.end(annotationIdx);
+        } else {
+            // No more annotated tokens
+            curStart = Integer.MAX_VALUE;
+            curEnd = Integer.MAX_VALUE;
         }
-        Arrays.sort(annots, new Comparator<int[]>() {
-            @Override
-            public int compare(int[] o1, int[] o2) {
-                if (o1[0] != o2[0]) {
-                    // Start position is not the same, smaller one comes first.
-                    return o1[0] - o2[0];
-                }
-
-                // Both start at the same position, longer one comes first.
-                return o2[1] - o1[1];
-            }
-        });
-        return annots;
+        nextPosAtt.setNextPosition(curStart);
     }
 
 }
\ No newline at end of file
@@ -19,36 +19,46 @@ package com.shaie.annots.filter;
 import static com.google.common.base.Preconditions.*;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.List;
 
 import org.apache.lucene.analysis.FilteringTokenFilter;
 import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
-import org.testng.collections.Lists;
 
 /**
  * A {@link TokenFilter} which keeps only tokens with positions that are covered by a given array of annotation markers
  * and lengths. For example, if you process the text "quick brown fox and a red dog", and you give it the array
  * <code>[0,3,5,2]</code> (two annotations, {@code pos=0,len=3} and {@code pos=5,len=2}), then it will keep only the
  * tokens: "quick", "brown", "fox", "red", "dog".
+ * <p>
+ * The filter publishes the start of the next annotation through {@link NextAnnotatedPositionAttribute}, so that input
+ * streams which support it can skip over unannotated tokens.
  */
 public final class SimplePreAnnotatedTokenFilter extends FilteringTokenFilter {
 
     private final PositionIncrementAttribute posIncrAtt = addAttribute(PositionIncrementAttribute.class);
-    private final int[] markers;
+    private final NextAnnotatedPositionAttribute nextPosAtt = addAttribute(NextAnnotatedPositionAttribute.class);
+    private final AnnotationMarkers markers = new AnnotationMarkers();
 
     private int absPosition;
     private int curStart;
     private int curEnd;
-    private int pairIdx;
+    private int annotationIdx;
 
     public SimplePreAnnotatedTokenFilter(TokenStream input, int... markers) {
         super(input);
         checkArgument(markers != null && markers.length > 0, "annotation markers cannot be null or empty");
-        this.markers = getSortedFilteredMarkers(markers);
+        this.markers.set(markers);
+    }
+
+    /**
+     * Sets the annotation markers to use for the next document. This allows reusing the filter across documents, and
+     * should be called before {@link #reset()}. Unlike the constructor, this method accepts empty markers, in which
+     * case the filter does not output any tokens.
+     */
+    public void setMarkers(int... markers) {
+        checkArgument(markers != null, "annotation markers cannot be null");
+        this.markers.set(markers);
     }
 
     @Override
@@ -61,7 +71,7 @@ public final class SimplePreAnnotatedTokenFilter extends FilteringTokenFilter {
     public void reset() throws IOException {
         super.reset();
         absPosition = -1;
-        pairIdx = 0;
+        annotationIdx = 0;
         updateCurrentStartEnd();
     }
 
@@ -71,83 +81,25 @@ public final class SimplePreAnnotatedTokenFilter extends FilteringTokenFilter {
             return false;
         }
         if (absPosition > curEnd) {
-            pairIdx += 2;
-            if (pairIdx < markers.length) {
-                updateCurrentStartEnd();
-                // Check if next annotation accepts it.
-                return acceptCurrentToken();
-            }
-            // No more annotated tokens
-            curStart = Integer.MAX_VALUE;
-            curEnd = Integer.MAX_VALUE;
-            return false;
+            // Skip to the first annotation which ends at or after the current position, and check if it accepts it.
+            annotationIdx = markers.advance(annotationIdx + 1, absPosition);
+            updateCurrentStartEnd();
+            return absPosition >= curStart;
         }
         return true;
     }
 
     /** Update current start and end positions. */
     private void updateCurrentStartEnd() {
-        curStart = markers[pairIdx];
-        curEnd = curStart + markers[pairIdx + 1] - 1;
-    }
-
-    /**
-     * Returns a sorted list of annotation pairs (pos + len), and also filters annotation markers that are covered by
-     * others. E.g. the annotation marker [5,1] is covered by the annotation [4,3] and therefore is redundant to keep.
-     */
-    private static int[] getSortedFilteredMarkers(int... annotations) {
-        if (annotations == null || annotations.length == 0) {
-            return new int[0];
-        }
-        if ((annotations.length & 0x1) != 0) {
-            throw new IllegalArgumentException("expected even number of integers, got " + annotations.length);
-        }
-
-        final int[][] sorted = getSortedMarkers(annotations);
-        final List<Integer> filtered = Lists.newArrayList();
-        filtered.add(sorted[0][0]);
-        filtered.add(sorted[0][1]);
-        int start = sorted[0][0];
-        int end = start + sorted[0][1] - 1;
-        for (int i = 1; i < sorted.length; i++) {
-            final int thisStart = sorted[i][0];
-            final int thisEnd = thisStart + sorted[i][1] - 1;
-            if (thisEnd <= end) {
-                // Filter that annotation information since it's covered in the previous one.
-                continue;
-            }
-            filtered.add(sorted[i][0]);
-            filtered.add(sorted[i][1]);
-            start = thisStart;
-            end = thisEnd;
-        }
-
-        final int[] result = new int[filtered.size()];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = filtered.get(i);
-        }
-        return result;
-    }
-
-    private static int[][] getSortedMarkers(int... annotations) {
-        final int[][] annots = new int[annotations.length / 2][2];
-        for (int i = 0, j = 0; i < annotations.length; i += 2, j++) {
-            annots[j][0] = annotations[i];
-            annots[j][1] = annotations[i + 1];
+        if (annotationIdx < markers.size()) {
+            curStart = markers.start(annotationIdx);
+            curEnd = markers.end(annotationIdx);
+        } else {
+            // No more annotated tokens
+            curStart = Integer.MAX_VALUE;
+            curEnd = Integer.MAX_VALUE;
         }
-        Arrays.sort(annots, new Comparator<int[]>() {
-            @Override
-            public int compare(int[] o1, int[] o2) {
-                if (o1[0] != o2[0]) {
-                    // Start position is not the same, smaller one comes first.
-                    return o1[0] - o2[0];
-                }
-
-                // Both start at the same position, longer one comes first.
-                return o2[1] - o1[1];
-            }
-        });
-        return annots;
+        nextPosAtt.setNextPosition(curStart);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,320 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.solr;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.solr.common.cloud.CollectionStateWatcher;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.Slice;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Tracks the state of collections and emits {@link Event events} when replicas go down or become active, when shards
+ * change state and when nodes leave or join the cluster.
+ * <p>
+ * The tracker registers a {@link CollectionStateWatcher} per watched collection, which {@link ZkStateReader} notifies
+ * whenever the collection's state or the cluster's live nodes change. Each notification is compared only with the
+ * previous state of that collection, and if neither the collection's state nor the live nodes changed it is skipped
+ * entirely. Replicas on nodes that are not live are considered {@link Replica.State#DOWN}, whatever their published
+ * state is. The first notification of a collection only records its state, and does not emit events.
+ */
+public class ClusterStateChangeTracker implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClusterStateChangeTracker.class);
+
+    /** The types of events emitted by the tracker. */
+    public static enum EventType {
+        /** A replica went DOWN, or its node left the cluster. */
+        REPLICA_DOWN,
+        /** A replica became ACTIVE. */
+        REPLICA_ACTIVE,
+        /** A shard was created or its state changed. */
+        SHARD_STATE_CHANGED,
+        /** A node left the cluster's live nodes. */
+        NODE_LEFT,
+        /** A node joined the cluster's live nodes. */
+        NODE_JOINED
+    }
+
+    /** Receives the events of the tracker. */
+    public static interface Listener {
+
+        /**
+         * Called with the events of a single state change, in the order the changes were observed. Called by a single
+         * thread at a time, from ZooKeeper's notification threads, and so should return quickly.
+         */
+        public void onEvents(List<Event> events);
+
+    }
+
+    private final ZkStateReader zkStateReader;
+    private final Listener listener;
+    private final Map<String, CollectionStateWatcher> watchers = Maps.newConcurrentMap();
+    private final Map<String, CollectionView> collections = Maps.newHashMap();
+    private Set<String> liveNodes = null;
+    private volatile boolean closed = false;
+
+    public ClusterStateChangeTracker(ZkStateReader zkStateReader, Listener listener) {
+        this.zkStateReader = zkStateReader;
+        this.listener = listener;
+    }
+
+    /** Watches all the collections which currently exist in the cluster. */
+    public void watchAll() {
+        for (final String collection : zkStateReader.getClusterState().getCollectionStates().keySet()) {
+            watch(collection);
+        }
+    }
+
+    /**
+     * Watches the given collection. Collections that are created after {@link #watchAll()} was called need to be
+     * watched explicitly. A collection that is deleted is still watched, so that it is tracked again if it is
+     * re-created.
+     */
+    public void watch(final String collection) {
+        if (closed) {
+            throw new IllegalStateException("tracker is closed");
+        }
+        final CollectionStateWatcher watcher = new CollectionStateWatcher() {
+            @Override
+            public boolean onStateChanged(Set<String> liveNodes, DocCollection collectionState) {
+                if (closed) {
+                    return true;
+                }
+                update(collection, liveNodes, collectionState);
+                return false;
+            }
+        };
+        if (watchers.putIfAbsent(collection, watcher) == null) {
+            zkStateReader.registerCollectionStateWatcher(collection, watcher);
+        }
+    }
+
+    /** Stops watching the given collection. */
+    public void unwatch(String collection) {
+        final CollectionStateWatcher watcher = watchers.remove(collection);
+        if (watcher != null) {
+            zkStateReader.removeCollectionStateWatcher(collection, watcher);
+        }
+        synchronized (this) {
+            collections.remove(collection);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (final String collection : Lists.newArrayList(watchers.keySet())) {
+            unwatch(collection);
+        }
+    }
+
+    /** Computes the events of a collection's state change, and notifies the listener if there are any. */
+    synchronized List<Event> update(String collection, Set<String> currentLiveNodes, DocCollection collectionState) {
+        final List<Event> events = Lists.newArrayList();
+        final Set<String> newLiveNodes = ImmutableSet.copyOf(currentLiveNodes);
+        if (liveNodes != null && !liveNodes.equals(newLiveNodes)) {
+            for (final String nodeName : Sets.difference(liveNodes, newLiveNodes)) {
+                events.add(Event.forNode(EventType.NODE_LEFT, nodeName));
+            }
+            for (final String nodeName : Sets.difference(newLiveNodes, liveNodes)) {
+                events.add(Event.forNode(EventType.NODE_JOINED, nodeName));
+            }
+        }
+        liveNodes = newLiveNodes;
+
+        final CollectionView previous = collections.get(collection);
+        if (collectionState == null) {
+            collections.remove(collection);
+        } else if (previous == null) {
+            collections.put(collection, new CollectionView(collectionState, newLiveNodes));
+        } else if (!previous.isSameState(collectionState, newLiveNodes)) {
+            final CollectionView current = new CollectionView(collectionState, newLiveNodes);
+            current.diff(previous, events);
+            collections.put(collection, current);
+        }
+
+        if (!events.isEmpty()) {
+            final List<Event> result = Collections.unmodifiableList(events);
+            try {
+                listener.onEvents(result);
+            } catch (final RuntimeException e) {
+                LOGGER.warn("Listener failed to handle events {}", result, e);
+            }
+        }
+        return events;
+    }
+
+    /** An event of the tracker. Properties which do not apply to the event's type are {@code null}. */
+    public static final class Event {
+
+        private final EventType type;
+        private final String nodeName;
+        private final String collection;
+        private final String shard;
+        private final Replica replica;
+        private final Slice.State previousShardState;
+        private final Slice.State shardState;
+
+        private Event(EventType type, String nodeName, String collection, String shard, Replica replica,
+                Slice.State previousShardState, Slice.State shardState) {
+            this.type = type;
+            this.nodeName = nodeName;
+            this.collection = collection;
+            this.shard = shard;
+            this.replica = replica;
+            this.previousShardState = previousShardState;
+            this.shardState = shardState;
+        }
+
+        static Event forNode(EventType type, String nodeName) {
+            return new Event(type, nodeName, null, null, null, null, null);
+        }
+
+        static Event forReplica(EventType type, String collection, String shard, Replica replica) {
+            return new Event(type, replica.getNodeName(), collection, shard, replica, null, null);
+        }
+
+        static Event forShard(String collection, String shard, Slice.State previousState, Slice.State state) {
+            return new Event(EventType.SHARD_STATE_CHANGED, null, collection, shard, null, previousState, state);
+        }
+
+        public EventType getType() {
+            return type;
+        }
+
+        /** Returns the node of a node or replica event. */
+        public String getNodeName() {
+            return nodeName;
+        }
+
+        /** Returns the collection of a replica or shard event. */
+        public String getCollection() {
+            return collection;
+        }
+
+        /** Returns the shard of a replica or shard event. */
+        public String getShard() {
+            return shard;
+        }
+
+        /** Returns the replica of a replica event. */
+        public Replica getReplica() {
+            return replica;
+        }
+
+        /** Returns the previous state of the shard of a shard event, or {@code null} if the shard was created. */
+        public Slice.State getPreviousShardState() {
+            return previousShardState;
+        }
+
+        /** Returns the state of the shard of a shard event. */
+        public Slice.State getShardState() {
+            return shardState;
+        }
+
+        @Override
+        public String toString() {
+            switch (type) {
+                case NODE_LEFT:
+                case NODE_JOINED:
+                    return type + "(" + nodeName + ")";
+                case SHARD_STATE_CHANGED:
+                    return type + "(" + collection + "/" + shard + ": " + previousShardState + " -> " + shardState
+                            + ")";
+                default:
+                    return type + "(" + collection + "/" + shard + "/" + replica.getName() + "@" + nodeName + ")";
+            }
+        }
+
+    }
+
+    /** The state of a collection's shards and replicas, as last observed. */
+    private static final class CollectionView {
+
+        private final DocCollection collectionState;
+        private final Set<String> liveNodes;
+        private final Map<String, Slice.State> shardStates = Maps.newHashMap();
+        private final Map<String, Replica.State> replicaStates = Maps.newHashMap();
+
+        CollectionView(DocCollection collectionState, Set<String> liveNodes) {
+            this.collectionState = collectionState;
+            this.liveNodes = liveNodes;
+            for (final Slice slice : collectionState.getSlices()) {
+                shardStates.put(slice.getName(), slice.getState());
+                for (final Replica replica : slice.getReplicas()) {
+                    replicaStates.put(replica.getName(), effectiveState(replica));
+                }
+            }
+        }
+
+        /** Returns true if the collection's state and the live nodes are the same as the ones of this view. */
+        boolean isSameState(DocCollection otherState, Set<String> otherLiveNodes) {
+            if (otherState != collectionState) {
+                // Collections with their own state.json get a new version on every change
+                if (collectionState.getStateFormat() == 1
+                        || otherState.getZNodeVersion() != collectionState.getZNodeVersion()) {
+                    return false;
+                }
+            }
+            return otherLiveNodes.equals(liveNodes);
+        }
+
+        /** Adds the events that lead from the previous view to this one. */
+        void diff(CollectionView previous, List<Event> events) {
+            final String collection = collectionState.getName();
+            for (final Slice slice : collectionState.getSlices()) {
+                final Slice.State previousShardState = previous.shardStates.get(slice.getName());
+                if (previousShardState != slice.getState()) {
+                    events.add(Event.forShard(collection, slice.getName(), previousShardState, slice.getState()));
+                }
+                for (final Replica replica : slice.getReplicas()) {
+                    final Replica.State state = replicaStates.get(replica.getName());
+                    final Replica.State previousState = previous.replicaStates.get(replica.getName());
+                    if (Objects.equals(state, previousState)) {
+                        continue;
+                    }
+                    if (state == Replica.State.DOWN && previousState != null) {
+                        events.add(Event.forReplica(EventType.REPLICA_DOWN, collection, slice.getName(), replica));
+                    } else if (state == Replica.State.ACTIVE) {
+                        events.add(Event.forReplica(EventType.REPLICA_ACTIVE, collection, slice.getName(), replica));
+                    }
+                }
+            }
+        }
+
+        private Replica.State effectiveState(Replica replica) {
+            return liveNodes.contains(replica.getNodeName()) ? replica.getState() : Replica.State.DOWN;
+        }
+
+    }
+
+}
@@ -0,0 +1,323 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.solr;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.ClusterState.CollectionRef;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.Slice;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * An indexed view of a {@link ClusterState}, which offers the lookups by node, collection and shard of
+ * {@link CollectionsStateHelper} without walking the replicas again.
+ * <p>
+ * The view of a collection is built on its first lookup, and lookups by node build the views of all the collections.
+ * Once built, a collection's view does not change, so all the lookups of a snapshot see the same state. The views are
+ * shared through a {@link CollectionViews} cache between the snapshots of the same cluster: a view is reused for as
+ * long as the collection's state and the live nodes did not change. A watched collection keeps its state instance until
+ * it changes, while a collection which is not watched by the {@link org.apache.solr.common.cloud.ZkStateReader} is
+ * lazily loaded, and its state is read from ZooKeeper on every access. Its view is therefore matched by the state's
+ * znode version.
+ */
+public class ClusterStateSnapshot {
+
+    private final ClusterState clusterState;
+    private final ImmutableSet<String> liveNodes;
+    private final ImmutableSet<String> collectionNames;
+    private final boolean hasLazyCollections;
+    private final CollectionViews collectionViews;
+    private final ConcurrentMap<String, CollectionView> collections = Maps.newConcurrentMap();
+
+    private volatile NodeIndex nodeIndex;
+
+    public ClusterStateSnapshot(ClusterState clusterState) {
+        this(clusterState, new CollectionViews());
+    }
+
+    /** Creates a snapshot which reuses the still valid collection views of the given cache. */
+    ClusterStateSnapshot(ClusterState clusterState, CollectionViews collectionViews) {
+        this.clusterState = clusterState;
+        this.liveNodes = ImmutableSet.copyOf(clusterState.getLiveNodes());
+        this.collectionViews = collectionViews;
+
+        final Map<String, CollectionRef> collectionStates = clusterState.getCollectionStates();
+        boolean hasLazyCollections = false;
+        for (final CollectionRef collectionRef : collectionStates.values()) {
+            hasLazyCollections |= collectionRef.isLazilyLoaded();
+        }
+        this.collectionNames = ImmutableSet.copyOf(collectionStates.keySet());
+        this.hasLazyCollections = hasLazyCollections;
+    }
+
+    /** Returns the cluster state this snapshot was created from. */
+    public ClusterState getClusterState() {
+        return clusterState;
+    }
+
+    /**
+     * Returns true if this snapshot is up to date with the given cluster state, which is the case if it was created
+     * from the same instance and none of its collections is lazily loaded.
+     */
+    public boolean isSnapshotOf(ClusterState clusterState) {
+        return this.clusterState == clusterState && !hasLazyCollections;
+    }
+
+    /** Returns the cluster's live nodes. */
+    public Set<String> getLiveNodes() {
+        return liveNodes;
+    }
+
+    /** Returns the names of the cluster's collections. */
+    public Set<String> getCollectionNames() {
+        return collectionNames;
+    }
+
+    /** Returns the state of a collection, as seen by this snapshot. */
+    public DocCollection getCollection(String collection) {
+        return getCollectionView(collection).state;
+    }
+
+    /** Returns all the replicas of all shards of the specified collection. */
+    public List<Replica> getAllCollectionReplicas(String collection) {
+        return getCollectionView(collection).all;
+    }
+
+    /** Returns the active replicas of a collection. */
+    public List<Replica> getActiveReplicas(String collection) {
+        return getCollectionView(collection).active;
+    }
+
+    /** Returns the inactive replicas of a collection. */
+    public List<Replica> getInactiveReplicas(String collection) {
+        return getCollectionView(collection).inactive;
+    }
+
+    /** Returns true if all the slices and replicas of a collection are active. */
+    public boolean isCollectionFullyActive(String collection) {
+        return getCollectionView(collection).fullyActive;
+    }
+
+    /** Returns true if the replica is on a live node and active. */
+    public boolean isReplicaActive(Replica replica) {
+        return CollectionsStateHelper.isReplicaActive(replica, liveNodes);
+    }
+
+    /** Returns true if the replica is in a DOWN state. */
+    public boolean isReplicaDown(Replica replica) {
+        return isReplicaDown(replica, liveNodes);
+    }
+
+    /** Returns all the replicas (of all shards and collections) that exist on the given node. */
+    public List<ReplicaInfo> getNodeReplicas(String nodeName) {
+        return getNodeIndex().nodeReplicas.get(nodeName);
+    }
+
+    /** Returns all replicas per node. */
+    public Map<String, Collection<ReplicaInfo>> getNodeReplicas() {
+        return getNodeIndex().nodeReplicas.asMap();
+    }
+
+    /** Returns the nodes which hold a replica of the given shard of the given collection. */
+    public Set<String> getShardNodes(String collection, String shard) {
+        final CollectionView view = getCollectionViewOrNull(collection);
+        final ImmutableSet<String> nodes = view == null ? null : view.shardNodes.get(shard);
+        return nodes == null ? ImmutableSet.<String> of() : nodes;
+    }
+
+    /** Returns true if the given node holds a replica of the given shard of the given collection. */
+    public boolean isNodeReplicaOfShard(String collection, String shard, String nodeName) {
+        return getShardNodes(collection, shard).contains(nodeName);
+    }
+
+    /**
+     * Returns all the nodes with down replicas. Note that some replicas for a node may not be marked DOWN, however per
+     * node returned there is at least one replica that was marked DOWN.
+     */
+    public Map<String, List<ReplicaInfo>> getDownReplicas() {
+        return getNodeIndex().downReplicas;
+    }
+
+    private static boolean isReplicaDown(Replica replica, Set<String> liveNodes) {
+        return !liveNodes.contains(replica.getNodeName()) || replica.getState() == Replica.State.DOWN;
+    }
+
+    private CollectionView getCollectionView(String collection) {
+        final CollectionView view = getCollectionViewOrNull(collection);
+        if (view == null) {
+            // Fails the same way as ClusterState does for a non-existing collection
+            throw new SolrException(ErrorCode.BAD_REQUEST, "Could not find collection : " + collection);
+        }
+        return view;
+    }
+
+    private CollectionView getCollectionViewOrNull(String collection) {
+        CollectionView view = collections.get(collection);
+        if (view != null) {
+            return view;
+        }
+        final CollectionRef collectionRef = clusterState.getCollectionRef(collection);
+        final DocCollection state = collectionRef == null ? null : collectionRef.get();
+        if (state == null) {
+            collectionViews.views.remove(collection);
+            return null;
+        }
+        view = collectionViews.getView(state, liveNodes, collectionRef.isLazilyLoaded());
+        final CollectionView existing = collections.putIfAbsent(collection, view);
+        return existing == null ? view : existing;
+    }
+
+    private NodeIndex getNodeIndex() {
+        NodeIndex index = nodeIndex;
+        if (index == null) {
+            final List<CollectionView> views = Lists.newArrayListWithCapacity(collectionNames.size());
+            for (final String collection : collectionNames) {
+                final CollectionView view = getCollectionViewOrNull(collection);
+                // A lazily loaded collection may have been deleted since the snapshot was created
+                if (view != null) {
+                    views.add(view);
+                }
+            }
+            index = new NodeIndex(views, liveNodes);
+            nodeIndex = index;
+        }
+        return index;
+    }
+
+    /** A cache of collection views, which is shared by the snapshots of the same cluster. */
+    static final class CollectionViews {
+
+        private final ConcurrentMap<String, CollectionView> views = Maps.newConcurrentMap();
+
+        CollectionView getView(DocCollection state, ImmutableSet<String> liveNodes, boolean lazilyLoaded) {
+            final CollectionView cached = views.get(state.getName());
+            if (cached != null && cached.isViewOf(state, liveNodes, lazilyLoaded)) {
+                return cached;
+            }
+            final CollectionView view = new CollectionView(state, liveNodes);
+            views.put(state.getName(), view);
+            return view;
+        }
+
+    }
+
+    /** The replicas of a collection, indexed by their state and shard. */
+    private static final class CollectionView {
+
+        final DocCollection state;
+        final ImmutableSet<String> liveNodes;
+        final ImmutableList<Replica> all;
+        final ImmutableList<Replica> active;
+        final ImmutableList<Replica> inactive;
+        final ImmutableList<ReplicaInfo> replicaInfos;
+        final ImmutableMap<String, ImmutableSet<String>> shardNodes;
+        final boolean fullyActive;
+
+        CollectionView(DocCollection state, ImmutableSet<String> liveNodes) {
+            this.state = state;
+            this.liveNodes = liveNodes;
+            final ImmutableList.Builder<Replica> allBuilder = ImmutableList.builder();
+            final ImmutableList.Builder<Replica> activeBuilder = ImmutableList.builder();
+            final ImmutableList.Builder<Replica> inactiveBuilder = ImmutableList.builder();
+            final ImmutableList.Builder<ReplicaInfo> replicaInfosBuilder = ImmutableList.builder();
+            final ImmutableMap.Builder<String, ImmutableSet<String>> shardNodesBuilder = ImmutableMap.builder();
+            boolean fullyActive = true;
+            for (final Slice slice : state.getSlices()) {
+                final boolean sliceActive = CollectionsStateHelper.isSliceActive(slice);
+                fullyActive &= sliceActive;
+                final ImmutableSet.Builder<String> nodes = ImmutableSet.builder();
+                for (final Replica replica : slice.getReplicas()) {
+                    allBuilder.add(replica);
+                    if (sliceActive && CollectionsStateHelper.isReplicaActive(replica, liveNodes)) {
+                        activeBuilder.add(replica);
+                    } else {
+                        inactiveBuilder.add(replica);
+                        fullyActive = false;
+                    }
+                    nodes.add(replica.getNodeName());
+                    replicaInfosBuilder.add(new ReplicaInfo(replica, state.getName(), slice.getName()));
+                }
+                shardNodesBuilder.put(slice.getName(), nodes.build());
+            }
+            this.all = allBuilder.build();
+            this.active = activeBuilder.build();
+            this.inactive = inactiveBuilder.build();
+            this.replicaInfos = replicaInfosBuilder.build();
+            this.shardNodes = shardNodesBuilder.build();
+            this.fullyActive = fullyActive;
+        }
+
+        /**
+         * Returns true if this is a view of the given collection state. A lazily loaded state is a new instance on
+         * every read, and is therefore compared by its znode version.
+         */
+        boolean isViewOf(DocCollection state, ImmutableSet<String> liveNodes, boolean lazilyLoaded) {
+            if (!this.liveNodes.equals(liveNodes)) {
+                return false;
+            }
+            return this.state == state || (lazilyLoaded && this.state.getZNodeVersion() == state.getZNodeVersion());
+        }
+
+    }
+
+    /** The replicas of all the collections, indexed by node. */
+    private static final class NodeIndex {
+
+        final ImmutableListMultimap<String, ReplicaInfo> nodeReplicas;
+        final ImmutableMap<String, List<ReplicaInfo>> downReplicas;
+
+        NodeIndex(List<CollectionView> views, Set<String> liveNodes) {
+            final ImmutableListMultimap.Builder<String, ReplicaInfo> nodeReplicasBuilder =
+                    ImmutableListMultimap.builder();
+            for (final CollectionView view : views) {
+                for (final ReplicaInfo replicaInfo : view.replicaInfos) {
+                    nodeReplicasBuilder.put(replicaInfo.getReplica().getNodeName(), replicaInfo);
+                }
+            }
+            this.nodeReplicas = nodeReplicasBuilder.build();
+
+            final Map<String, List<ReplicaInfo>> downReplicas = Maps.newHashMap();
+            for (final String nodeName : nodeReplicas.keySet()) {
+                final ImmutableList<ReplicaInfo> replicas = nodeReplicas.get(nodeName);
+                for (final ReplicaInfo replicaInfo : replicas) {
+                    if (isReplicaDown(replicaInfo.getReplica(), liveNodes)) {
+                        downReplicas.put(nodeName, replicas);
+                        break;
+                    }
+                }
+            }
+            this.downReplicas = ImmutableMap.copyOf(downReplicas);
+        }
+
+    }
+
+}
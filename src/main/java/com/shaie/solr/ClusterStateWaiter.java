@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.solr;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.solr.common.cloud.CollectionStatePredicate;
+import org.apache.solr.common.cloud.SolrZkClient;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Waits for the cluster state to satisfy some condition, by watching ZooKeeper rather than polling it. The condition
+ * is evaluated once when waiting starts, and then again only when the watched state changes, so waits complete as soon
+ * as the condition becomes true.
+ */
+public class ClusterStateWaiter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClusterStateWaiter.class);
+
+    private ClusterStateWaiter() {
+        // Should not be instantiated
+    }
+
+    /** A condition on the cluster's live nodes. */
+    public interface LiveNodesCondition {
+        /** Returns true/false indicating whether or not the condition has been met by the given live nodes. */
+        boolean isSatisfied(Set<String> liveNodes);
+    }
+
+    /**
+     * Waits until the state of the collection satisfies the predicate, or the timeout has expired. The predicate is
+     * evaluated on changes to the collection's state, as well as to the cluster's live nodes. Note that the collection
+     * state passed to the predicate is {@code null} if the collection does not exist.
+     *
+     * @return true if the predicate was satisfied before the timeout, false if it wasn't.
+     */
+    public static boolean waitForCollectionState(ZkStateReader zkStateReader, String collection,
+            CollectionStatePredicate predicate, long time, TimeUnit unit) {
+        try {
+            zkStateReader.waitForState(collection, time, unit, predicate);
+            return true;
+        } catch (final TimeoutException e) {
+            return false;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("WaitFor aborted", e);
+        }
+    }
+
+    /**
+     * Waits until the cluster's live nodes satisfy the condition, or the timeout has expired. The condition is
+     * evaluated whenever the children of the {@link ZkStateReader#LIVE_NODES_ZKNODE} node change.
+     *
+     * @return true if the condition was satisfied before the timeout, false if it wasn't.
+     * @throws RuntimeException if the live nodes could not be read while waiting.
+     */
+    public static boolean waitForLiveNodes(ZkStateReader zkStateReader, LiveNodesCondition condition, long time,
+            TimeUnit unit) {
+        final LiveNodesWatcher watcher = new LiveNodesWatcher(zkStateReader.getZkClient(), condition);
+        try {
+            watcher.check();
+            if (!watcher.finished.await(time, unit)) {
+                return false;
+            }
+            if (watcher.failure != null) {
+                throw new RuntimeException("Failed to read live nodes", watcher.failure);
+            }
+            return true;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("WaitFor aborted", e);
+        } finally {
+            // ZooKeeper watches cannot be removed, so just make sure the pending one does not get re-registered
+            watcher.done = true;
+        }
+    }
+
+    /** Waits for the given node to disappear from the cluster's live nodes. */
+    public static boolean waitForNodeToDisappearFromLiveNodes(ZkStateReader zkStateReader, final String nodeName,
+            long time, TimeUnit unit) {
+        return waitForLiveNodes(zkStateReader, new LiveNodesCondition() {
+            @Override
+            public boolean isSatisfied(Set<String> liveNodes) {
+                return !liveNodes.contains(nodeName);
+            }
+        }, time, unit);
+    }
+
+    /**
+     * Reads the live nodes and re-registers itself on every change, until the condition is satisfied or reading the
+     * live nodes fails. A failure finishes the wait, so that it is reported to the waiting thread instead of leaving it
+     * waiting for a change that will never be watched.
+     */
+    private static final class LiveNodesWatcher implements Watcher {
+
+        final CountDownLatch finished = new CountDownLatch(1);
+        volatile boolean done = false;
+        volatile RuntimeException failure = null;
+
+        private final SolrZkClient zkClient;
+        private final LiveNodesCondition condition;
+
+        LiveNodesWatcher(SolrZkClient zkClient, LiveNodesCondition condition) {
+            this.zkClient = zkClient;
+            this.condition = condition;
+        }
+
+        @Override
+        public void process(WatchedEvent event) {
+            // Connection events do not consume the watch, only node events do
+            if (event.getType() == Event.EventType.None || done) {
+                return;
+            }
+            try {
+                check();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(new RuntimeException("Interrupted while reading live nodes", e));
+            } catch (final RuntimeException e) {
+                LOGGER.warn("Failed to read live nodes", e);
+                fail(e);
+            }
+        }
+
+        void check() throws InterruptedException {
+            final List<String> liveNodes;
+            try {
+                liveNodes = zkClient.getChildren(ZkStateReader.LIVE_NODES_ZKNODE, this, true);
+            } catch (final KeeperException e) {
+                throw new RuntimeException(e);
+            }
+            if (condition.isSatisfied(ImmutableSet.copyOf(liveNodes))) {
+                done = true;
+                finished.countDown();
+            }
+        }
+
+        private void fail(RuntimeException e) {
+            failure = e;
+            done = true;
+            finished.countDown();
+        }
+
+    }
+
+}
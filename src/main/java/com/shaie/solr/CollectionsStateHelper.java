@@ -19,14 +19,13 @@ package com.shaie.solr;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
 
 import org.apache.solr.common.cloud.ClusterState;
 import org.apache.solr.common.cloud.DocCollection;
 import org.apache.solr.common.cloud.Replica;
 import org.apache.solr.common.cloud.Slice;
 import org.apache.solr.common.cloud.ZkStateReader;
-import org.testng.collections.Maps;
 
 import com.google.common.collect.Lists;
 
@@ -34,6 +33,9 @@ import com.google.common.collect.Lists;
 public class CollectionsStateHelper {
 
     private final ZkStateReader zkStateReader;
+    private final ClusterStateSnapshot.CollectionViews collectionViews = new ClusterStateSnapshot.CollectionViews();
+
+    private volatile ClusterStateSnapshot snapshot;
 
     public CollectionsStateHelper(ZkStateReader zkStateReader) {
         this.zkStateReader = zkStateReader;
@@ -46,13 +48,28 @@ public class CollectionsStateHelper {
 
     /** Returns the active replicas of a collection. */
     public Collection<Replica> getActiveReplicas(String collection) {
+        return getSnapshot().getActiveReplicas(collection);
+    }
+
+    /** Returns the inactive replicas of a collection. */
+    public Collection<Replica> getInactiveReplicas(String collection) {
+        return getSnapshot().getInactiveReplicas(collection);
+    }
+
+    /** Returns true if all the slices and replicas of a collection are active. */
+    public boolean isCollectionFullyActive(String collection) {
+        return getSnapshot().isCollectionFullyActive(collection);
+    }
+
+    /** Returns the active replicas of the given collection state, given the cluster's live nodes. */
+    public static Collection<Replica> getActiveReplicas(DocCollection collection, Set<String> liveNodes) {
         final List<Replica> activeReplicas = Lists.newArrayList();
-        for (final Slice slice : getSlices(collection)) {
+        for (final Slice slice : collection.getSlices()) {
             if (!isSliceActive(slice)) {
                 continue;
             }
             for (final Replica replica : slice.getReplicas()) {
-                if (isReplicaActive(replica)) {
+                if (isReplicaActive(replica, liveNodes)) {
                     activeReplicas.add(replica);
                 }
             }
@@ -60,15 +77,15 @@ public class CollectionsStateHelper {
         return activeReplicas;
     }
 
-    /** Returns the inactive replicas of a collection. */
-    public Collection<Replica> getInactiveReplicas(String collection) {
+    /** Returns the inactive replicas of the given collection state, given the cluster's live nodes. */
+    public static Collection<Replica> getInactiveReplicas(DocCollection collection, Set<String> liveNodes) {
         final List<Replica> inactiveReplicas = Lists.newArrayList();
-        for (final Slice slice : getSlices(collection)) {
+        for (final Slice slice : collection.getSlices()) {
             if (!isSliceActive(slice)) {
                 inactiveReplicas.addAll(slice.getReplicas());
             } else {
                 for (final Replica replica : slice.getReplicas()) {
-                    if (!isReplicaActive(replica)) {
+                    if (!isReplicaActive(replica, liveNodes)) {
                         inactiveReplicas.add(replica);
                     }
                 }
@@ -77,10 +94,14 @@ public class CollectionsStateHelper {
         return inactiveReplicas;
     }
 
-    /** Returns true if all the slices and replicas of a collection are active. */
-    public boolean isCollectionFullyActive(String collection) {
-        for (final Slice slice : getSlices(collection)) {
-            if (!isSliceAndAllReplicasActive(slice)) {
+    /**
+     * Returns true if all the slices and replicas of the given collection state are active, given the cluster's live
+     * nodes. This allows evaluating the state that is passed to ZooKeeper watchers, without reading the cluster state
+     * again.
+     */
+    public static boolean isCollectionFullyActive(DocCollection collection, Set<String> liveNodes) {
+        for (final Slice slice : collection.getSlices()) {
+            if (!isSliceAndAllReplicasActive(slice, liveNodes)) {
                 return false;
             }
         }
@@ -89,11 +110,16 @@ public class CollectionsStateHelper {
 
     /** Returns true if the slice and all its replicas are active. */
     public boolean isSliceAndAllReplicasActive(Slice slice) {
+        return isSliceAndAllReplicasActive(slice, getSnapshot().getLiveNodes());
+    }
+
+    /** Returns true if the slice and all its replicas are active, given the cluster's live nodes. */
+    public static boolean isSliceAndAllReplicasActive(Slice slice, Set<String> liveNodes) {
         if (!isSliceActive(slice)) {
             return false;
         }
         for (final Replica replica : slice.getReplicas()) {
-            if (!isReplicaActive(replica)) {
+            if (!isReplicaActive(replica, liveNodes)) {
                 return false;
             }
         }
@@ -106,56 +132,47 @@ public class CollectionsStateHelper {
      *
      * @see #isSliceAndAllReplicasActive(Slice)
      */
-    public boolean isSliceActive(Slice slice) {
+    public static boolean isSliceActive(Slice slice) {
         return slice.getState() == Slice.State.ACTIVE;
     }
 
     /** Returns true if the replica is on a live node and active. */
     public boolean isReplicaActive(Replica replica) {
-        return getClusterState().liveNodesContain(replica.getNodeName())
-                && replica.getState() == Replica.State.ACTIVE;
+        return getSnapshot().isReplicaActive(replica);
+    }
+
+    /** Returns true if the replica is on one of the given live nodes and active. */
+    public static boolean isReplicaActive(Replica replica, Set<String> liveNodes) {
+        return liveNodes.contains(replica.getNodeName()) && replica.getState() == Replica.State.ACTIVE;
+    }
+
+    /** Returns true if the replica is its shard's leader. */
+    public static boolean isLeader(Replica replica) {
+        return Boolean.parseBoolean(replica.getStr(ZkStateReader.LEADER_PROP));
     }
 
     /** Returns true if the replica is in a DOWN state. */
     public boolean isReplicaDown(Replica replica) {
-        return !getClusterState().liveNodesContain(replica.getNodeName())
-                || replica.getState() == Replica.State.DOWN;
+        return getSnapshot().isReplicaDown(replica);
     }
 
     /** Returns all the replicas (of all shards and collections) that exist on the given node. */
     public List<Replica> getAllNodeReplicas(String nodeName) {
         final List<Replica> replicas = Lists.newArrayList();
-        final ClusterState clusterState = getClusterState();
-        for (final DocCollection collection : clusterState.getCollectionsMap().values()) {
-            for (final Slice slice : collection.getSlices()) {
-                for (final Replica replica : slice.getReplicas()) {
-                    if (replica.getNodeName().equals(nodeName)) {
-                        replicas.add(replica);
-                    }
-                }
-            }
+        for (final ReplicaInfo replicaInfo : getSnapshot().getNodeReplicas(nodeName)) {
+            replicas.add(replicaInfo.getReplica());
         }
         return replicas;
     }
 
     /** Returns all the replicas of all shards of the specified collection. */
     public List<Replica> getAllCollectionReplicas(String collection) {
-        final List<Replica> replicas = Lists.newArrayList();
-        for (final Slice slice : getSlices(collection)) {
-            replicas.addAll(slice.getReplicas());
-        }
-        return replicas;
+        return getSnapshot().getAllCollectionReplicas(collection);
     }
 
     /** Returns true if the given node holds a replica of the given shard of the given collection. */
     public boolean isNodeReplicaOfShard(String collectionName, String shardName, String nodeName) {
-        for (final Replica replica : getClusterState().getCollection(collectionName).getSlice(shardName)
-                .getReplicas()) {
-            if (replica.getNodeName().equals(nodeName)) {
-                return true;
-            }
-        }
-        return false;
+        return getSnapshot().isNodeReplicaOfShard(collectionName, shardName, nodeName);
     }
 
     /**
@@ -163,16 +180,23 @@ public class CollectionsStateHelper {
      * node returned there is at least one replica that was marked DOWN.
      */
     public Map<String, List<ReplicaInfo>> getDownReplicas() {
-        final Map<String, List<ReplicaInfo>> nodeReplicas = getNodeReplicas();
-        final Map<String, List<ReplicaInfo>> result = Maps.newHashMap();
-        for (final Entry<String, List<ReplicaInfo>> entry : nodeReplicas.entrySet()) {
-            for (final ReplicaInfo replicaInfo : entry.getValue()) {
-                if (isReplicaDown(replicaInfo.getReplica())) {
-                    result.put(entry.getKey(), entry.getValue());
-                }
-            }
+        return getSnapshot().getDownReplicas();
+    }
+
+    /**
+     * Returns a {@link ClusterStateSnapshot} of the current cluster state. The snapshot is reused for as long as the
+     * {@link ZkStateReader} returns the same cluster state and it has no lazily loaded collections, whose state needs
+     * to be read again on every query. Otherwise a new snapshot is created, which still reuses the views of the
+     * collections whose state did not change, so that consecutive queries do not walk the cluster state again.
+     */
+    public ClusterStateSnapshot getSnapshot() {
+        final ClusterState clusterState = getClusterState();
+        ClusterStateSnapshot current = snapshot;
+        if (current == null || !current.isSnapshotOf(clusterState)) {
+            current = new ClusterStateSnapshot(clusterState, collectionViews);
+            snapshot = current;
         }
-        return result;
+        return current;
     }
 
     /**
@@ -183,23 +207,4 @@ public class CollectionsStateHelper {
         return zkStateReader.getClusterState();
     }
 
-    /** Returns all replicas per node. */
-    private Map<String, List<ReplicaInfo>> getNodeReplicas() {
-        final ClusterState clusterState = getClusterState();
-        final Map<String, List<ReplicaInfo>> result = Maps.newHashMap();
-        for (final DocCollection collection : clusterState.getCollectionsMap().values()) {
-            for (final Slice slice : collection.getSlices()) {
-                for (final Replica replica : slice.getReplicas()) {
-                    List<ReplicaInfo> nodeReplicas = result.get(replica.getNodeName());
-                    if (nodeReplicas == null) {
-                        nodeReplicas = Lists.newArrayList();
-                        result.put(replica.getNodeName(), nodeReplicas);
-                    }
-                    nodeReplicas.add(new ReplicaInfo(replica, collection.getName(), slice.getName()));
-                }
-            }
-        }
-        return result;
-    }
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,320 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.solr;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.common.cloud.CollectionStatePredicate;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.Slice;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Table;
+import com.shaie.solr.solrj.CollectionAdminHelper;
+
+/**
+ * Spreads shard leaders evenly over the cluster's live nodes. The rebalancer computes a target leader per shard, marks
+ * it with the {@code preferredLeader} replica property, and then issues REBALANCELEADERS for every collection whose
+ * leaders need to change, with at most {@code maxConcurrentCollections} collections rebalanced at once. It then waits
+ * for the leaders to move, and reports how long each collection took to converge.
+ */
+public class LeaderRebalancer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LeaderRebalancer.class);
+
+    /** The name of the replica property which marks a shard's preferred leader. */
+    public static final String PREFERRED_LEADER = "preferredLeader";
+
+    /** The key of the {@link #PREFERRED_LEADER} property in the replica's state. */
+    static final String PREFERRED_LEADER_PROP = "property.preferredleader";
+
+    private final CollectionsStateHelper collectionsStateHelper;
+    private final CollectionAdminHelper collectionAdminHelper;
+    private final ZkStateReader zkStateReader;
+    private final ExecutorService executor;
+    private final int maxConcurrentCollections;
+    private final int maxAtOnce;
+    private final int maxWaitSeconds;
+
+    /**
+     * @param maxConcurrentCollections
+     *            The maximum number of collections whose leaders are rebalanced at once
+     * @param maxAtOnce
+     *            The maximum number of leaders of a collection which REBALANCELEADERS changes at once
+     * @param maxWaitSeconds
+     *            The time REBALANCELEADERS waits for each leader change, which is also the time to wait for a
+     *            collection to converge after REBALANCELEADERS returns
+     */
+    public LeaderRebalancer(CollectionsStateHelper collectionsStateHelper, CollectionAdminHelper collectionAdminHelper,
+            ZkStateReader zkStateReader, ExecutorService executor, int maxConcurrentCollections, int maxAtOnce,
+            int maxWaitSeconds) {
+        checkArgument(maxConcurrentCollections > 0, "maxConcurrentCollections must be positive: %s",
+                maxConcurrentCollections);
+        this.collectionsStateHelper = collectionsStateHelper;
+        this.collectionAdminHelper = collectionAdminHelper;
+        this.zkStateReader = zkStateReader;
+        this.executor = executor;
+        this.maxConcurrentCollections = maxConcurrentCollections;
+        this.maxAtOnce = maxAtOnce;
+        this.maxWaitSeconds = maxWaitSeconds;
+    }
+
+    /**
+     * Computes the target leader of every active shard, such that the number of leaders per live node is as even as
+     * possible. Shards with fewer candidates are assigned first, and a shard keeps its current leader when its node is
+     * among the least loaded candidates, so that leaders which are already well placed do not move. Only active
+     * replicas on live nodes are candidates. Returns a table of collection, shard and target leader.
+     */
+    public static Table<String, String, Replica> planLeaders(ClusterStateSnapshot snapshot) {
+        final Set<String> liveNodes = snapshot.getLiveNodes();
+        final List<SliceCandidates> slices = Lists.newArrayList();
+        for (final String collection : snapshot.getCollectionNames()) {
+            for (final Slice slice : snapshot.getCollection(collection).getActiveSlices()) {
+                slices.add(new SliceCandidates(collection, slice, candidates(slice, liveNodes)));
+            }
+        }
+        // Ties are broken by name, so that the plan does not depend on the iteration order of the cluster state
+        Collections.sort(slices, new Comparator<SliceCandidates>() {
+            @Override
+            public int compare(SliceCandidates slice1, SliceCandidates slice2) {
+                return ComparisonChain.start()
+                        .compare(slice1.candidates.size(), slice2.candidates.size())
+                        .compare(slice1.collection, slice2.collection)
+                        .compare(slice1.slice.getName(), slice2.slice.getName())
+                        .result();
+            }
+        });
+
+        final Multiset<String> leaderCounts = HashMultiset.create();
+        final ImmutableTable.Builder<String, String, Replica> plan = ImmutableTable.builder();
+        for (final SliceCandidates slice : slices) {
+            Replica target = null;
+            for (final Replica candidate : slice.candidates) {
+                if (target == null || isBetterLeader(candidate, target, leaderCounts)) {
+                    target = candidate;
+                }
+            }
+            if (target != null) {
+                leaderCounts.add(target.getNodeName());
+                plan.put(slice.collection, slice.slice.getName(), target);
+            }
+        }
+        return plan.build();
+    }
+
+    /**
+     * Plans the leaders of the current cluster state and rebalances the collections whose leaders need to change. The
+     * plan is computed from a new snapshot of the cluster state, rather than from one which may have been cached.
+     */
+    public Result rebalance() {
+        return rebalance(planLeaders(new ClusterStateSnapshot(collectionsStateHelper.getClusterState())));
+    }
+
+    /** Marks the planned leaders as preferred and rebalances the collections whose leaders need to change. */
+    public Result rebalance(Table<String, String, Replica> plan) {
+        final long startNanos = System.nanoTime();
+        final Semaphore permits = new Semaphore(maxConcurrentCollections);
+        final Map<String, Future<Long>> futures = Maps.newLinkedHashMap();
+        final ImmutableMap.Builder<String, Long> convergenceMillis = ImmutableMap.builder();
+        try {
+            for (final Map.Entry<String, Map<String, Replica>> entry : plan.rowMap().entrySet()) {
+                final String collection = entry.getKey();
+                final Map<String, Replica> shardLeaders = entry.getValue();
+                if (isConverged(zkStateReader.getClusterState().getCollectionOrNull(collection), shardLeaders)) {
+                    continue;
+                }
+                // The permit is taken before submitting, so that waiting collections do not occupy executor threads
+                permits.acquire();
+                try {
+                    futures.put(collection, executor.submit(new Callable<Long>() {
+                        @Override
+                        public Long call() throws Exception {
+                            try {
+                                return rebalance(collection, shardLeaders);
+                            } finally {
+                                permits.release();
+                            }
+                        }
+                    }));
+                } catch (final RejectedExecutionException e) {
+                    permits.release();
+                    throw e;
+                }
+            }
+            for (final Map.Entry<String, Future<Long>> entry : futures.entrySet()) {
+                final Long millis = entry.getValue().get();
+                if (millis != null) {
+                    convergenceMillis.put(entry.getKey(), millis);
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            for (final Future<Long> future : futures.values()) {
+                future.cancel(true);
+            }
+        }
+        final Result result = new Result(futures.size(), convergenceMillis.build(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        LOGGER.info("Leader rebalance finished: {}", result);
+        return result;
+    }
+
+    /**
+     * Rebalances the leaders of a collection and waits for them to converge. Returns the time it took to converge, in
+     * milliseconds, or {@code null} if the collection did not converge.
+     */
+    private Long rebalance(String collection, final Map<String, Replica> shardLeaders) {
+        final long startNanos = System.nanoTime();
+        for (final Map.Entry<String, Replica> entry : shardLeaders.entrySet()) {
+            final Replica replica = entry.getValue();
+            if (!Boolean.parseBoolean(replica.getStr(PREFERRED_LEADER_PROP))) {
+                collectionAdminHelper.addReplicaProperty(collection, entry.getKey(), replica.getName(),
+                        PREFERRED_LEADER, Boolean.TRUE.toString());
+            }
+        }
+        collectionAdminHelper.rebalanceLeaders(collection, maxAtOnce, maxWaitSeconds);
+        final boolean converged = ClusterStateWaiter.waitForCollectionState(zkStateReader, collection,
+                new CollectionStatePredicate() {
+                    @Override
+                    public boolean matches(Set<String> liveNodes, DocCollection collectionState) {
+                        return isConverged(collectionState, shardLeaders);
+                    }
+                }, maxWaitSeconds, TimeUnit.SECONDS);
+        if (!converged) {
+            LOGGER.warn("Leaders of collection [{}] did not converge within {}s", collection, maxWaitSeconds);
+            return null;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /** Returns true if every shard is led by its planned leader. */
+    private static boolean isConverged(DocCollection collectionState, Map<String, Replica> shardLeaders) {
+        if (collectionState == null) {
+            return false;
+        }
+        for (final Map.Entry<String, Replica> entry : shardLeaders.entrySet()) {
+            final Slice slice = collectionState.getSlice(entry.getKey());
+            final Replica leader = slice == null ? null : slice.getLeader();
+            if (leader == null || !leader.getName().equals(entry.getValue().getName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns true if the candidate's node leads fewer shards, or as many and the candidate is the current leader. */
+    private static boolean isBetterLeader(Replica candidate, Replica target, Multiset<String> leaderCounts) {
+        final int candidateCount = leaderCounts.count(candidate.getNodeName());
+        final int targetCount = leaderCounts.count(target.getNodeName());
+        return candidateCount < targetCount
+                || candidateCount == targetCount && CollectionsStateHelper.isLeader(candidate);
+    }
+
+    private static List<Replica> candidates(Slice slice, Set<String> liveNodes) {
+        final List<Replica> candidates = Lists.newArrayList();
+        for (final Replica replica : slice.getReplicas()) {
+            if (CollectionsStateHelper.isReplicaActive(replica, liveNodes)) {
+                candidates.add(replica);
+            }
+        }
+        return candidates;
+    }
+
+    /** A shard to plan, with its leader candidates. */
+    private static final class SliceCandidates {
+
+        final String collection;
+        final Slice slice;
+        final List<Replica> candidates;
+
+        SliceCandidates(String collection, Slice slice, List<Replica> candidates) {
+            this.collection = collection;
+            this.slice = slice;
+            this.candidates = candidates;
+        }
+
+    }
+
+    /** The result of a rebalance. */
+    public static final class Result {
+
+        private final int numRebalanced;
+        private final Map<String, Long> convergenceMillis;
+        private final long elapsedMillis;
+
+        Result(int numRebalanced, Map<String, Long> convergenceMillis, long elapsedMillis) {
+            this.numRebalanced = numRebalanced;
+            this.convergenceMillis = convergenceMillis;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /** Returns the number of collections whose leaders needed to change. */
+        public int getNumRebalanced() {
+            return numRebalanced;
+        }
+
+        /** Returns the number of rebalanced collections whose leaders did not all move within the wait time. */
+        public int getNumNotConverged() {
+            return numRebalanced - convergenceMillis.size();
+        }
+
+        /** Returns the time, in milliseconds, each converged collection took from its rebalance start. */
+        public Map<String, Long> getConvergenceMillis() {
+            return convergenceMillis;
+        }
+
+        /** Returns the time, in milliseconds, the whole rebalance took. */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "rebalanced=" + numRebalanced + ", notConverged=" + getNumNotConverged() + ", elapsed="
+                    + elapsedMillis + "ms";
+        }
+
+    }
+
+}
@@ -0,0 +1,399 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.solr;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+import com.shaie.utils.Utils;
+
+/**
+ * Scores the distribution of replicas and leaders over the cluster's live nodes, and proposes replica moves which even
+ * it out. A cluster is scored by the standard deviation of the per-node replica and leader counts, and by the number of
+ * replicas which share a node with another replica of the same shard. Lower scores are better, and 0 means the
+ * cluster is perfectly balanced.
+ * <p>
+ * Moves are proposed greedily: first replicas which are co-located with another replica of their shard are moved
+ * away, and then replicas are moved from the most loaded nodes to the least loaded ones, until their counts differ by
+ * at most one. Non-leader replicas are preferred, since moving a leader forces a leader election. Leaders are therefore
+ * not balanced by moves; {@link Advice#getAfter()} still reports their distribution. A moved leader is counted as a
+ * non-leader on its new node, and its shard's leadership is assumed to move to the remaining replica on the node with
+ * the fewest leaders. Moves can be executed by a {@link ReplicaTakeover}, which adds each replica on its new node
+ * before deleting the old one.
+ * <p>
+ * Only replicas on live nodes are considered. Replicas on nodes that are down need to be taken over first.
+ */
+public class ReplicaPlacementAdvisor {
+
+    private final int maxMoves;
+
+    /**
+     * @param maxMoves
+     *            The maximum number of moves to propose
+     */
+    public ReplicaPlacementAdvisor(int maxMoves) {
+        checkArgument(maxMoves >= 0, "maxMoves must not be negative: %s", maxMoves);
+        this.maxMoves = maxMoves;
+    }
+
+    /** Scores the cluster and proposes moves to balance it. */
+    public Advice advise(ClusterStateSnapshot snapshot) {
+        final Placement placement = new Placement(snapshot);
+        final Score before = placement.score();
+        final List<Move> moves = Lists.newArrayList();
+        separateCoLocatedReplicas(placement, moves);
+        balanceReplicas(placement, moves);
+        return new Advice(before, placement.score(), moves);
+    }
+
+    /** Moves replicas which share a node with another replica of their shard to the least loaded node possible. */
+    private void separateCoLocatedReplicas(Placement placement, List<Move> moves) {
+        for (final String nodeName : placement.nodeNames()) {
+            for (final ReplicaInfo replicaInfo : placement.sortedForMove(nodeName)) {
+                if (moves.size() >= maxMoves) {
+                    return;
+                }
+                if (placement.shardCount(replicaInfo, nodeName) > 1) {
+                    for (final String targetNode : placement.nodesByLoad()) {
+                        if (placement.shardCount(replicaInfo, targetNode) == 0) {
+                            moves.add(placement.move(replicaInfo, nodeName, targetNode));
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves replicas from the most loaded nodes to the least loaded ones, until all counts differ by at most 1. If none
+     * of the replicas of the most loaded node can be moved, the next most loaded nodes are tried.
+     */
+    private void balanceReplicas(Placement placement, List<Move> moves) {
+        while (moves.size() < maxMoves) {
+            final List<String> nodesByLoad = placement.nodesByLoad();
+            Move move = null;
+            for (int i = nodesByLoad.size() - 1; i > 0 && move == null; i--) {
+                move = findBalancingMove(placement, nodesByLoad.get(i), nodesByLoad);
+            }
+            if (move == null) {
+                return;
+            }
+            moves.add(move);
+        }
+    }
+
+    private static Move findBalancingMove(Placement placement, String sourceNode, List<String> nodesByLoad) {
+        final int sourceLoad = placement.replicaCount(sourceNode);
+        for (final String targetNode : nodesByLoad) {
+            if (sourceLoad - placement.replicaCount(targetNode) <= 1) {
+                // Nodes are sorted by load, so no other target is less loaded
+                return null;
+            }
+            for (final ReplicaInfo replicaInfo : placement.sortedForMove(sourceNode)) {
+                if (placement.shardCount(replicaInfo, targetNode) == 0) {
+                    return placement.move(replicaInfo, sourceNode, targetNode);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String shardKey(ReplicaInfo replicaInfo) {
+        return replicaInfo.getCollectionName() + '/' + replicaInfo.getShardName();
+    }
+
+    /** A mutable model of the replicas on each live node, which moves are applied to. */
+    private static final class Placement {
+
+        private final Map<String, List<ReplicaInfo>> nodeReplicas = Maps.newTreeMap();
+        private final Map<String, Multiset<String>> shardNodes = Maps.newHashMap();
+        private final Set<ReplicaInfo> leaders = Sets.newHashSet();
+        private final Set<ReplicaInfo> moved = Sets.newHashSet();
+
+        Placement(ClusterStateSnapshot snapshot) {
+            for (final String nodeName : snapshot.getLiveNodes()) {
+                final List<ReplicaInfo> replicas = Lists.newArrayList(snapshot.getNodeReplicas(nodeName));
+                nodeReplicas.put(nodeName, replicas);
+                for (final ReplicaInfo replicaInfo : replicas) {
+                    shardNodes(replicaInfo).add(nodeName);
+                    if (CollectionsStateHelper.isLeader(replicaInfo.getReplica())) {
+                        leaders.add(replicaInfo);
+                    }
+                }
+            }
+        }
+
+        List<String> nodeNames() {
+            return ImmutableList.copyOf(nodeReplicas.keySet());
+        }
+
+        int replicaCount(String nodeName) {
+            return nodeReplicas.get(nodeName).size();
+        }
+
+        int leaderCount(String nodeName) {
+            int count = 0;
+            for (final ReplicaInfo replicaInfo : nodeReplicas.get(nodeName)) {
+                if (leaders.contains(replicaInfo)) {
+                    ++count;
+                }
+            }
+            return count;
+        }
+
+        /** Returns the number of replicas of the replica's shard on the given node. */
+        int shardCount(ReplicaInfo replicaInfo, String nodeName) {
+            return shardNodes(replicaInfo).count(nodeName);
+        }
+
+        /** Returns the live nodes, from the least loaded to the most loaded. */
+        List<String> nodesByLoad() {
+            final List<String> nodes = Lists.newArrayList(nodeReplicas.keySet());
+            Collections.sort(nodes, new Comparator<String>() {
+                @Override
+                public int compare(String node1, String node2) {
+                    return Integer.compare(replicaCount(node1), replicaCount(node2));
+                }
+            });
+            return nodes;
+        }
+
+        /** Returns the node's replicas which were not moved yet, with non-leaders first. */
+        List<ReplicaInfo> sortedForMove(String nodeName) {
+            final List<ReplicaInfo> replicas = Lists.newArrayList();
+            for (final ReplicaInfo replicaInfo : nodeReplicas.get(nodeName)) {
+                // Each replica is moved at most once, so that moves can be executed independently
+                if (!moved.contains(replicaInfo)) {
+                    replicas.add(replicaInfo);
+                }
+            }
+            Collections.sort(replicas, new Comparator<ReplicaInfo>() {
+                @Override
+                public int compare(ReplicaInfo replica1, ReplicaInfo replica2) {
+                    return Boolean.compare(leaders.contains(replica1), leaders.contains(replica2));
+                }
+            });
+            return replicas;
+        }
+
+        Move move(ReplicaInfo replicaInfo, String fromNode, String toNode) {
+            nodeReplicas.get(fromNode).remove(replicaInfo);
+            nodeReplicas.get(toNode).add(replicaInfo);
+            final Multiset<String> nodes = shardNodes(replicaInfo);
+            nodes.remove(fromNode);
+            nodes.add(toNode);
+            moved.add(replicaInfo);
+            if (leaders.remove(replicaInfo)) {
+                leaders.add(electLeader(replicaInfo));
+            }
+            return new Move(replicaInfo, fromNode, toNode);
+        }
+
+        /**
+         * Returns the replica which takes over the leadership of a moved leader's shard: the remaining replica on the
+         * node with the fewest leaders, or the moved replica itself if its shard has no other replicas.
+         */
+        private ReplicaInfo electLeader(ReplicaInfo movedLeader) {
+            final String shardKey = shardKey(movedLeader);
+            ReplicaInfo newLeader = movedLeader;
+            int minLeaderCount = Integer.MAX_VALUE;
+            for (final Map.Entry<String, List<ReplicaInfo>> entry : nodeReplicas.entrySet()) {
+                for (final ReplicaInfo replicaInfo : entry.getValue()) {
+                    if (replicaInfo != movedLeader && shardKey.equals(shardKey(replicaInfo))) {
+                        final int leaderCount = leaderCount(entry.getKey());
+                        if (leaderCount < minLeaderCount) {
+                            newLeader = replicaInfo;
+                            minLeaderCount = leaderCount;
+                        }
+                    }
+                }
+            }
+            return newLeader;
+        }
+
+        Score score() {
+            final int numNodes = nodeReplicas.size();
+            final double[] replicaCounts = new double[numNodes];
+            final double[] leaderCounts = new double[numNodes];
+            int i = 0;
+            for (final String nodeName : nodeReplicas.keySet()) {
+                replicaCounts[i] = replicaCount(nodeName);
+                leaderCounts[i] = leaderCount(nodeName);
+                ++i;
+            }
+            int coLocatedReplicas = 0;
+            for (final Multiset<String> nodes : shardNodes.values()) {
+                for (final Multiset.Entry<String> entry : nodes.entrySet()) {
+                    coLocatedReplicas += entry.getCount() - 1;
+                }
+            }
+            return new Score(stdDev(replicaCounts), stdDev(leaderCounts), coLocatedReplicas);
+        }
+
+        private Multiset<String> shardNodes(ReplicaInfo replicaInfo) {
+            final String key = shardKey(replicaInfo);
+            Multiset<String> nodes = shardNodes.get(key);
+            if (nodes == null) {
+                nodes = HashMultiset.create();
+                shardNodes.put(key, nodes);
+            }
+            return nodes;
+        }
+
+        private static double stdDev(double[] values) {
+            if (values.length == 0) {
+                return 0;
+            }
+            double sum = 0;
+            for (final double value : values) {
+                sum += value;
+            }
+            final double mean = sum / values.length;
+            double sumSquares = 0;
+            for (final double value : values) {
+                sumSquares += (value - mean) * (value - mean);
+            }
+            return Math.sqrt(sumSquares / values.length);
+        }
+
+    }
+
+    /** The balance of a cluster. */
+    public static final class Score {
+
+        private final double replicaStdDev;
+        private final double leaderStdDev;
+        private final int coLocatedReplicas;
+
+        Score(double replicaStdDev, double leaderStdDev, int coLocatedReplicas) {
+            this.replicaStdDev = replicaStdDev;
+            this.leaderStdDev = leaderStdDev;
+            this.coLocatedReplicas = coLocatedReplicas;
+        }
+
+        /** Returns the standard deviation of the number of replicas per live node. */
+        public double getReplicaStdDev() {
+            return replicaStdDev;
+        }
+
+        /** Returns the standard deviation of the number of leaders per live node. */
+        public double getLeaderStdDev() {
+            return leaderStdDev;
+        }
+
+        /** Returns the number of replicas which share a node with another replica of the same shard. */
+        public int getCoLocatedReplicas() {
+            return coLocatedReplicas;
+        }
+
+        /** Returns the overall score, where lower is better and 0 is perfectly balanced. */
+        public double getTotal() {
+            return replicaStdDev + leaderStdDev + coLocatedReplicas;
+        }
+
+        @Override
+        public String toString() {
+            return Utils.format("total=%.3f, replicaStdDev=%.3f, leaderStdDev=%.3f, coLocatedReplicas=%d", getTotal(),
+                    replicaStdDev, leaderStdDev, coLocatedReplicas);
+        }
+
+    }
+
+    /** A proposal to move a replica to another node, by adding a replica on that node and deleting this one. */
+    public static final class Move {
+
+        private final ReplicaInfo replicaInfo;
+        private final String fromNode;
+        private final String toNode;
+
+        Move(ReplicaInfo replicaInfo, String fromNode, String toNode) {
+            this.replicaInfo = replicaInfo;
+            this.fromNode = fromNode;
+            this.toNode = toNode;
+        }
+
+        public ReplicaInfo getReplicaInfo() {
+            return replicaInfo;
+        }
+
+        public String getFromNode() {
+            return fromNode;
+        }
+
+        public String getToNode() {
+            return toNode;
+        }
+
+        @Override
+        public String toString() {
+            return shardKey(replicaInfo) + '/' + replicaInfo.getReplica().getName() + ": " + fromNode + " -> " + toNode;
+        }
+
+    }
+
+    /** The score of a cluster before and after the proposed moves. */
+    public static final class Advice {
+
+        private final Score before;
+        private final Score after;
+        private final List<Move> moves;
+
+        Advice(Score before, Score after, List<Move> moves) {
+            this.before = before;
+            this.after = after;
+            this.moves = ImmutableList.copyOf(moves);
+        }
+
+        /** Returns the score of the cluster as it is. */
+        public Score getBefore() {
+            return before;
+        }
+
+        /** Returns the score of the cluster once all moves are done. */
+        public Score getAfter() {
+            return after;
+        }
+
+        public List<Move> getMoves() {
+            return moves;
+        }
+
+        /** Returns the moves as a plan for {@link ReplicaTakeover#takeOver(Map, ReplicaTakeover.ProgressListener)}. */
+        public Map<ReplicaInfo, String> toTakeoverPlan() {
+            final ImmutableMap.Builder<ReplicaInfo, String> plan = ImmutableMap.builder();
+            for (final Move move : moves) {
+                plan.put(move.getReplicaInfo(), move.getToNode());
+            }
+            return plan.build();
+        }
+
+    }
+
+}
@@ -0,0 +1,308 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.solr;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.solr.common.cloud.CollectionStatePredicate;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.Slice;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+import com.shaie.solr.solrj.AddReplicaResponse;
+import com.shaie.solr.solrj.CollectionAdminHelper;
+import com.shaie.utils.Utils;
+
+/**
+ * Takes over down replicas by adding replacement replicas on target nodes, in parallel. A down replica is deleted only
+ * after its replacement became active, so a failed takeover never reduces a shard's replication.
+ * <p>
+ * Takeovers run on the given executor, with bounded parallelism: at most {@code maxPerCollection} takeovers of the
+ * same collection and at most {@code maxPerNode} takeovers onto the same target node run at once, so that neither
+ * the Overseer's per-collection work nor the replication into a single node are overloaded. A takeover is submitted to
+ * the executor only once it is within both limits, so the executor's threads are never blocked waiting for one.
+ * Progress is reported to a {@link ProgressListener} after every takeover.
+ */
+public class ReplicaTakeover {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaTakeover.class);
+
+    private final CollectionsStateHelper collectionsStateHelper;
+    private final CollectionAdminHelper collectionAdminHelper;
+    private final ZkStateReader zkStateReader;
+    private final ExecutorService executor;
+    private final int maxPerCollection;
+    private final int maxPerNode;
+    private final long activeTimeoutSeconds;
+
+    /** Receives the progress of a takeover. */
+    public static interface ProgressListener {
+
+        /** Called after every replica's takeover completes or fails. May be called concurrently. */
+        public void onProgress(Progress progress);
+
+    }
+
+    /**
+     * @param maxPerCollection
+     *            The maximum number of replicas of a single collection that are taken over at once
+     * @param maxPerNode
+     *            The maximum number of replicas that are added to a single target node at once
+     * @param activeTimeoutSeconds
+     *            The time to wait for a new replica to become active, before giving up on its takeover
+     */
+    public ReplicaTakeover(CollectionsStateHelper collectionsStateHelper, CollectionAdminHelper collectionAdminHelper,
+            ZkStateReader zkStateReader, ExecutorService executor, int maxPerCollection, int maxPerNode,
+            long activeTimeoutSeconds) {
+        checkArgument(maxPerCollection > 0, "maxPerCollection must be positive: %s", maxPerCollection);
+        checkArgument(maxPerNode > 0, "maxPerNode must be positive: %s", maxPerNode);
+        this.collectionsStateHelper = collectionsStateHelper;
+        this.collectionAdminHelper = collectionAdminHelper;
+        this.zkStateReader = zkStateReader;
+        this.executor = executor;
+        this.maxPerCollection = maxPerCollection;
+        this.maxPerNode = maxPerNode;
+        this.activeTimeoutSeconds = activeTimeoutSeconds;
+    }
+
+    /**
+     * Assigns each replica a target node. Replicas are spread over the target nodes round-robin, skipping nodes which
+     * already hold a replica of the same shard. Replicas which no target node can take are not assigned.
+     */
+    public Map<ReplicaInfo, String> plan(Collection<ReplicaInfo> replicas, List<String> targetNodes) {
+        checkArgument(!targetNodes.isEmpty(), "no target nodes");
+        final ClusterStateSnapshot snapshot = collectionsStateHelper.getSnapshot();
+        final Map<ReplicaInfo, String> plan = Maps.newLinkedHashMap();
+        int next = 0;
+        for (final ReplicaInfo replicaInfo : replicas) {
+            final Set<String> shardNodes =
+                    snapshot.getShardNodes(replicaInfo.getCollectionName(), replicaInfo.getShardName());
+            for (int i = 0; i < targetNodes.size(); i++) {
+                final String targetNode = targetNodes.get((next + i) % targetNodes.size());
+                if (!shardNodes.contains(targetNode) && !isPlannedForShard(plan, replicaInfo, targetNode)) {
+                    plan.put(replicaInfo, targetNode);
+                    next = (next + i + 1) % targetNodes.size();
+                    break;
+                }
+            }
+            if (!plan.containsKey(replicaInfo)) {
+                LOGGER.warn("No target node can take over replica [{}] of [{}/{}]", replicaInfo.getReplica().getName(),
+                        replicaInfo.getCollectionName(), replicaInfo.getShardName());
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Takes over the replicas according to the plan, and returns when all takeovers have completed or failed.
+     *
+     * @see #plan(Collection, List)
+     */
+    public Progress takeOver(Map<ReplicaInfo, String> plan, ProgressListener listener) {
+        final Progress progress = new Progress(plan.size());
+        takeOver(plan, progress, listener);
+        return progress;
+    }
+
+    /**
+     * Plans and takes over the replicas onto the target nodes. Replicas which no target node can take are counted as
+     * failed.
+     */
+    public Progress takeOver(Collection<ReplicaInfo> replicas, List<String> targetNodes, ProgressListener listener) {
+        final Map<ReplicaInfo, String> plan = plan(replicas, targetNodes);
+        final Progress progress = new Progress(replicas.size());
+        progress.failed.set(replicas.size() - plan.size());
+        takeOver(plan, progress, listener);
+        return progress;
+    }
+
+    private void takeOver(Map<ReplicaInfo, String> plan, final Progress progress, final ProgressListener listener) {
+        final CompletionService<Map.Entry<ReplicaInfo, String>> completionService =
+                new ExecutorCompletionService<>(executor);
+        final List<Map.Entry<ReplicaInfo, String>> pending = Lists.newLinkedList(plan.entrySet());
+        final Set<Future<Map.Entry<ReplicaInfo, String>>> running = Sets.newHashSet();
+        final Multiset<String> runningPerCollection = HashMultiset.create();
+        final Multiset<String> runningPerNode = HashMultiset.create();
+        try {
+            while (!pending.isEmpty() || !running.isEmpty()) {
+                // Submit every pending takeover whose collection and target node are both below their limits
+                for (final Iterator<Map.Entry<ReplicaInfo, String>> it = pending.iterator(); it.hasNext();) {
+                    final Map.Entry<ReplicaInfo, String> entry = it.next();
+                    final String collection = entry.getKey().getCollectionName();
+                    final String targetNode = entry.getValue();
+                    if (runningPerCollection.count(collection) < maxPerCollection
+                            && runningPerNode.count(targetNode) < maxPerNode) {
+                        it.remove();
+                        runningPerCollection.add(collection);
+                        runningPerNode.add(targetNode);
+                        running.add(completionService.submit(new Callable<Map.Entry<ReplicaInfo, String>>() {
+                            @Override
+                            public Map.Entry<ReplicaInfo, String> call() throws Exception {
+                                takeOver(entry.getKey(), entry.getValue(), progress, listener);
+                                return entry;
+                            }
+                        }));
+                    }
+                }
+                final Future<Map.Entry<ReplicaInfo, String>> done = completionService.take();
+                running.remove(done);
+                final Map.Entry<ReplicaInfo, String> entry = done.get();
+                runningPerCollection.remove(entry.getKey().getCollectionName());
+                runningPerNode.remove(entry.getValue());
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            for (final Future<Map.Entry<ReplicaInfo, String>> future : running) {
+                future.cancel(true);
+            }
+        }
+        LOGGER.info("Takeover finished: {}", progress);
+    }
+
+    /** Takes over a single replica, returning whether it was successful. */
+    private boolean takeOver(final ReplicaInfo replicaInfo, final String targetNode, Progress progress,
+            ProgressListener listener) {
+        final String collection = replicaInfo.getCollectionName();
+        final String shard = replicaInfo.getShardName();
+        boolean success = false;
+        try {
+            final AddReplicaResponse response = collectionAdminHelper.addReplica(collection, shard, targetNode);
+            if (!response.isSuccess()) {
+                LOGGER.warn("Failed to add replica of [{}/{}] on [{}]: {}", collection, shard, targetNode,
+                        response.getErrorMessages());
+            } else if (!waitForActive(collection, shard, response.getCoreName())) {
+                LOGGER.warn("Replica [{}] of [{}/{}] did not become active within {}s, not deleting replica [{}]",
+                        response.getCoreName(), collection, shard, activeTimeoutSeconds,
+                        replicaInfo.getReplica().getName());
+            } else {
+                collectionAdminHelper.deleteReplica(collection, shard, replicaInfo.getReplica().getName());
+                success = true;
+            }
+        } catch (final RuntimeException e) {
+            LOGGER.warn("Failed to take over replica [{}] of [{}/{}]", replicaInfo.getReplica().getName(), collection,
+                    shard, e);
+        }
+        (success ? progress.completed : progress.failed).incrementAndGet();
+        if (listener != null) {
+            listener.onProgress(progress);
+        }
+        return success;
+    }
+
+    /** Waits for the replica of the given core to become active. */
+    private boolean waitForActive(String collection, final String shard, final String coreName) {
+        return ClusterStateWaiter.waitForCollectionState(zkStateReader, collection, new CollectionStatePredicate() {
+            @Override
+            public boolean matches(Set<String> liveNodes, DocCollection collectionState) {
+                final Slice slice = collectionState == null ? null : collectionState.getSlice(shard);
+                if (slice == null) {
+                    return false;
+                }
+                for (final Replica replica : slice.getReplicas()) {
+                    if (coreName.equals(replica.getCoreName())) {
+                        return CollectionsStateHelper.isReplicaActive(replica, liveNodes);
+                    }
+                }
+                return false;
+            }
+        }, activeTimeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    private static boolean isPlannedForShard(Map<ReplicaInfo, String> plan, ReplicaInfo replicaInfo, String node) {
+        for (final Map.Entry<ReplicaInfo, String> entry : plan.entrySet()) {
+            final ReplicaInfo planned = entry.getKey();
+            if (entry.getValue().equals(node) && planned.getCollectionName().equals(replicaInfo.getCollectionName())
+                    && planned.getShardName().equals(replicaInfo.getShardName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** The progress of a takeover. */
+    public static final class Progress {
+
+        private final int total;
+        private final long startNanos = System.nanoTime();
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+
+        Progress(int total) {
+            this.total = total;
+        }
+
+        /** Returns the number of replicas to take over. */
+        public int getTotal() {
+            return total;
+        }
+
+        /** Returns the number of replicas that were taken over. */
+        public int getCompleted() {
+            return completed.get();
+        }
+
+        /** Returns the number of replicas that could not be taken over. */
+        public int getFailed() {
+            return failed.get();
+        }
+
+        /** Returns the time since the takeover started, in milliseconds. */
+        public long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+
+        /** Returns the number of replicas taken over per second. */
+        public double getThroughput() {
+            final long elapsedMillis = getElapsedMillis();
+            return elapsedMillis == 0 ? 0 : getCompleted() * 1000.0 / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return Utils.format("completed=%d, failed=%d, total=%d, elapsed=%dms, throughput=%.2f replicas/s",
+                    getCompleted(), getFailed(), total, getElapsedMillis(), getThroughput());
+        }
+
+    }
+
+}
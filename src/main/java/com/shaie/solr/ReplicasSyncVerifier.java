@@ -16,7 +16,11 @@
  */
 package com.shaie.solr;
 
+import java.util.Set;
+
 import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.DocCollection;
 
 /** Verifies that all of a collection's replicas are in sync. */
 public class ReplicasSyncVerifier {
@@ -32,7 +36,15 @@ public class ReplicasSyncVerifier {
      * Otherwise it means they are either down or recovering, in which case we cannot trust that they are fully sync'd.
      */
     public boolean verify(String collection) {
-        final CollectionsStateHelper collectionsStateHelper = new CollectionsStateHelper(solrClient.getZkStateReader());
-        return collectionsStateHelper.isCollectionFullyActive(collection);
+        final ClusterState clusterState = solrClient.getZkStateReader().getClusterState();
+        return verify(clusterState.getCollection(collection), clusterState.getLiveNodes());
+    }
+
+    /**
+     * Verifies that all replicas of the given collection state are in sync, given the cluster's live nodes. Can be used
+     * to evaluate the state passed to cluster state watchers.
+     */
+    public static boolean verify(DocCollection collection, Set<String> liveNodes) {
+        return CollectionsStateHelper.isCollectionFullyActive(collection, liveNodes);
     }
 }
\ No newline at end of file
@@ -20,24 +20,25 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.solr.client.solrj.impl.CloudSolrClient;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.CollectionStatePredicate;
+import org.apache.solr.common.cloud.DocCollection;
 import org.apache.solr.common.cloud.ZkStateReader;
 import org.apache.zookeeper.KeeperException.NoNodeException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Lists;
-import com.shaie.utils.Waiter;
 
 public class SolrCloudUtils {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SolrCloudUtils.class);
 
-    private static final long DEFAULT_POLL_INTERVAL_MS = 500;
-
     public static final String ZK_HOST_PROP_NAME = "zkHost";
 
     private SolrCloudUtils() {
@@ -81,45 +82,48 @@ public class SolrCloudUtils {
 
     /** Waits until all replicas of all slices of the collection are active, or the timeout has expired. */
     public static boolean waitForAllActive(final String collection, ZkStateReader zkStateReader, long timeoutSeconds) {
-        final CollectionsStateHelper collectionsStateHelper = new CollectionsStateHelper(zkStateReader);
-        return Waiter.waitFor(new Waiter.Condition() {
-            @SuppressWarnings("synthetic-access")
-            @Override
-            public boolean isSatisfied() {
-                final boolean result = collectionsStateHelper.isCollectionFullyActive(collection);
-                if (!result) {
-                    LOGGER.info("Not all replicas of collection [{}] are active:\n"
-                            + "active_replicas=[{}],\n"
-                            + "inactive_replicas=[{}]",
-                            collection, collectionsStateHelper.getActiveReplicas(collection),
-                            collectionsStateHelper.getInactiveReplicas(collection));
-                }
-                return result;
+        final boolean result = ClusterStateWaiter.waitForCollectionState(zkStateReader, collection,
+                new CollectionStatePredicate() {
+                    @Override
+                    public boolean matches(Set<String> liveNodes, DocCollection collectionState) {
+                        return collectionState != null
+                                && CollectionsStateHelper.isCollectionFullyActive(collectionState, liveNodes);
+                    }
+                }, timeoutSeconds, TimeUnit.SECONDS);
+        if (!result) {
+            final ClusterState clusterState = zkStateReader.getClusterState();
+            final DocCollection collectionState = clusterState.getCollectionOrNull(collection);
+            if (collectionState == null) {
+                LOGGER.info("Collection [{}] does not exist", collection);
+            } else {
+                LOGGER.info("Not all replicas of collection [{}] are active:\n"
+                        + "active_replicas=[{}],\n"
+                        + "inactive_replicas=[{}]",
+                        collection,
+                        CollectionsStateHelper.getActiveReplicas(collectionState, clusterState.getLiveNodes()),
+                        CollectionsStateHelper.getInactiveReplicas(collectionState, clusterState.getLiveNodes()));
             }
-        }, timeoutSeconds, TimeUnit.SECONDS, 500, TimeUnit.MILLISECONDS);
+        }
+        return result;
     }
 
     /** Waits until all replicas of the collection are in sync. */
     public static boolean waitForReplicasToSync(final String collection, CloudSolrClient solrClient,
             long timeoutSeconds) {
-        final ReplicasSyncVerifier verifier = new ReplicasSyncVerifier(solrClient);
-        return Waiter.waitFor(new Waiter.Condition() {
-            @Override
-            public boolean isSatisfied() {
-                return verifier.verify(collection);
-            }
-        }, timeoutSeconds, TimeUnit.SECONDS, DEFAULT_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        return ClusterStateWaiter.waitForCollectionState(solrClient.getZkStateReader(), collection,
+                new CollectionStatePredicate() {
+                    @Override
+                    public boolean matches(Set<String> liveNodes, DocCollection collectionState) {
+                        return collectionState != null && ReplicasSyncVerifier.verify(collectionState, liveNodes);
+                    }
+                }, timeoutSeconds, TimeUnit.SECONDS);
     }
 
     /** Waits for the given node to disappear from the cluster's live nodes. */
     public static boolean waitForNodeToDisappearFromLiveNodes(final CloudSolrClient solrClient, final String nodeName,
             long timeoutSeconds) {
-        return Waiter.waitFor(new Waiter.Condition() {
-            @Override
-            public boolean isSatisfied() {
-                return !solrClient.getZkStateReader().getClusterState().liveNodesContain(nodeName);
-            }
-        }, timeoutSeconds, TimeUnit.SECONDS, DEFAULT_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        return ClusterStateWaiter.waitForNodeToDisappearFromLiveNodes(solrClient.getZkStateReader(), nodeName,
+                timeoutSeconds, TimeUnit.SECONDS);
     }
 
     /** Returns a Solr node's base URL to a node name as appears */
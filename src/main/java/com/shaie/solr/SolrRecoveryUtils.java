@@ -48,4 +48,18 @@ public class SolrRecoveryUtils {
         }
     }
 
+    /**
+     * Finds a node with DOWN replicas and takes over all its replicas onto the target nodes in parallel, deleting each
+     * DOWN replica once its replacement is active. Returns {@code null} if there are no DOWN replicas.
+     */
+    public ReplicaTakeover.Progress takeOverDownNode(List<String> targetNodes, ReplicaTakeover takeover,
+            ReplicaTakeover.ProgressListener listener) {
+        final Map<String, List<ReplicaInfo>> downNodes = collectionsStateHelper.getDownReplicas();
+        if (downNodes.isEmpty()) {
+            return null;
+        }
+        final Entry<String, List<ReplicaInfo>> downNode = downNodes.entrySet().iterator().next();
+        return takeover.takeOver(downNode.getValue(), targetNodes, listener);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,385 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.solr.solrj;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.apache.solr.client.solrj.response.RequestStatusState;
+import org.apache.solr.common.util.NamedList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Executes many Collections API operations concurrently, without blocking the caller. Operations are submitted as
+ * async requests, and a polling loop checks the status of all in-flight requests every poll interval, completing each
+ * operation's future when its request completed or failed. The status checks are sent concurrently, so a slow status
+ * request does not delay the others. An operation whose request does not complete within {@code operationTimeout} of
+ * its submission fails with a {@link TimeoutException}, so that it does not hold its node's slot forever.
+ * <p>
+ * At most {@code maxInFlightPerNode} operations run at once per node, and the rest are queued until an earlier one
+ * completes. Operations whose nodes are chosen by the Overseer, such as creating and deleting collections, are
+ * throttled together under {@link #ANY_NODE}. Submissions and status checks share a pool of
+ * {@code maxConcurrentRequests} threads, which bounds the number of requests that are sent to Solr at once.
+ */
+public class BulkCollectionAdminExecutor implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkCollectionAdminExecutor.class);
+
+    /** The throttling key of operations which are not bound to a specific node. */
+    public static final String ANY_NODE = "*";
+
+    /** The default maximum number of requests which are sent to Solr at once. */
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+
+    /** The default time, in seconds, an operation may run before it fails. */
+    public static final long DEFAULT_OPERATION_TIMEOUT_SECONDS = 300;
+
+    private final SolrClient solrClient;
+    private final int maxInFlightPerNode;
+    private final long operationTimeoutNanos;
+    private final ScheduledExecutorService executor;
+    private final String asyncIdPrefix = "bulk-" + UUID.randomUUID() + "-";
+    private final AtomicLong nextAsyncId = new AtomicLong();
+    private final Set<Operation<?>> submitted = Sets.newConcurrentHashSet();
+
+    // Guarded by this
+    private final Map<String, Deque<Operation<?>>> queued = Maps.newHashMap();
+    private final Multiset<String> inFlightPerNode = HashMultiset.create();
+    private boolean closed = false;
+
+    /**
+     * Creates an executor which sends at most {@link #DEFAULT_MAX_CONCURRENT_REQUESTS} requests at once, and fails
+     * operations which run longer than {@link #DEFAULT_OPERATION_TIMEOUT_SECONDS}.
+     *
+     * @see #BulkCollectionAdminExecutor(SolrClient, int, int, long, long, TimeUnit)
+     */
+    public BulkCollectionAdminExecutor(SolrClient solrClient, int maxInFlightPerNode, long pollInterval,
+            TimeUnit unit) {
+        this(solrClient, maxInFlightPerNode, DEFAULT_MAX_CONCURRENT_REQUESTS, pollInterval, unit);
+    }
+
+    /**
+     * Creates an executor which fails operations which run longer than {@link #DEFAULT_OPERATION_TIMEOUT_SECONDS}.
+     *
+     * @see #BulkCollectionAdminExecutor(SolrClient, int, int, long, long, TimeUnit)
+     */
+    public BulkCollectionAdminExecutor(SolrClient solrClient, int maxInFlightPerNode, int maxConcurrentRequests,
+            long pollInterval, TimeUnit unit) {
+        this(solrClient, maxInFlightPerNode, maxConcurrentRequests, pollInterval,
+                unit.convert(DEFAULT_OPERATION_TIMEOUT_SECONDS, TimeUnit.SECONDS), unit);
+    }
+
+    /**
+     * @param maxInFlightPerNode
+     *            The maximum number of operations which run at once per node
+     * @param maxConcurrentRequests
+     *            The maximum number of requests, submissions and status checks, which are sent to Solr at once
+     * @param pollInterval
+     *            The time to wait between each polling of the status of the in-flight operations
+     * @param operationTimeout
+     *            The time an operation may run from its submission to Solr, after which it fails and the next operation
+     *            queued for its node is started. Its request is not aborted.
+     * @param unit
+     *            The time unit of the {@code pollInterval} and {@code operationTimeout} arguments
+     */
+    public BulkCollectionAdminExecutor(SolrClient solrClient, int maxInFlightPerNode, int maxConcurrentRequests,
+            long pollInterval, long operationTimeout, TimeUnit unit) {
+        checkArgument(maxInFlightPerNode > 0, "maxInFlightPerNode must be positive: %s", maxInFlightPerNode);
+        checkArgument(maxConcurrentRequests > 0, "maxConcurrentRequests must be positive: %s",
+                maxConcurrentRequests);
+        checkArgument(operationTimeout > 0, "operationTimeout must be positive: %s", operationTimeout);
+        this.solrClient = solrClient;
+        this.maxInFlightPerNode = maxInFlightPerNode;
+        this.operationTimeoutNanos = unit.toNanos(operationTimeout);
+        this.executor = Executors.newScheduledThreadPool(maxConcurrentRequests,
+                new ThreadFactoryBuilder().setNameFormat("bulk-collection-admin-%d").setDaemon(true).build());
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                pollStatus();
+            }
+        }, pollInterval, pollInterval, unit);
+    }
+
+    /** Creates a collection. */
+    public CompletableFuture<CreateCollectionResponse> createCollection(final String collectionName,
+            final int numShards, final int numReplicas, final String configName) {
+        return submit(new Operation<CreateCollectionResponse>(ANY_NODE) {
+            @Override
+            CollectionAdminRequest.AsyncCollectionAdminRequest newRequest() {
+                return CollectionAdminRequest.createCollection(collectionName, configName, numShards, numReplicas);
+            }
+
+            @Override
+            CreateCollectionResponse newResponse(
+                    org.apache.solr.client.solrj.response.CollectionAdminResponse rawResponse) {
+                return new CreateCollectionResponse(rawResponse);
+            }
+        });
+    }
+
+    /** Deletes a collection. */
+    public CompletableFuture<DeleteCollectionResponse> deleteCollection(final String collectionName) {
+        return submit(new Operation<DeleteCollectionResponse>(ANY_NODE) {
+            @Override
+            CollectionAdminRequest.AsyncCollectionAdminRequest newRequest() {
+                return CollectionAdminRequest.deleteCollection(collectionName);
+            }
+
+            @Override
+            DeleteCollectionResponse newResponse(
+                    org.apache.solr.client.solrj.response.CollectionAdminResponse rawResponse) {
+                return new DeleteCollectionResponse(rawResponse);
+            }
+        });
+    }
+
+    /** Adds a replica to the given collection and shard, on the given node. */
+    public CompletableFuture<AddReplicaResponse> addReplica(final String collectionName, final String shardName,
+            final String nodeName) {
+        return submit(new Operation<AddReplicaResponse>(nodeName) {
+            @Override
+            CollectionAdminRequest.AsyncCollectionAdminRequest newRequest() {
+                return CollectionAdminRequest.addReplicaToShard(collectionName, shardName).setNode(nodeName);
+            }
+
+            @Override
+            AddReplicaResponse newResponse(org.apache.solr.client.solrj.response.CollectionAdminResponse rawResponse) {
+                return new AddReplicaResponse(rawResponse);
+            }
+        });
+    }
+
+    /** Returns the number of operations which were submitted to Solr and did not complete yet. */
+    public int getInFlightCount() {
+        return submitted.size();
+    }
+
+    /**
+     * Stops polling and fails the futures of all operations which did not complete. Operations which were already
+     * submitted to Solr are not aborted, and their async request status is not cleared.
+     */
+    @Override
+    public void close() {
+        final List<Operation<?>> incomplete = Lists.newArrayList();
+        synchronized (this) {
+            closed = true;
+            for (final Deque<Operation<?>> operations : queued.values()) {
+                incomplete.addAll(operations);
+            }
+            queued.clear();
+        }
+        executor.shutdownNow();
+        incomplete.addAll(submitted);
+        submitted.clear();
+        for (final Operation<?> operation : incomplete) {
+            operation.future.completeExceptionally(new IllegalStateException("executor was closed"));
+        }
+    }
+
+    private synchronized <T extends CollectionAdminResponse> CompletableFuture<T> submit(Operation<T> operation) {
+        checkState(!closed, "executor is closed");
+        if (inFlightPerNode.count(operation.nodeName) < maxInFlightPerNode) {
+            start(operation);
+        } else {
+            Deque<Operation<?>> nodeQueue = queued.get(operation.nodeName);
+            if (nodeQueue == null) {
+                nodeQueue = new ArrayDeque<>();
+                queued.put(operation.nodeName, nodeQueue);
+            }
+            nodeQueue.add(operation);
+        }
+        return operation.future;
+    }
+
+    /** Sends the operation's request on the executor. Must be called while holding the lock. */
+    private void start(final Operation<?> operation) {
+        inFlightPerNode.add(operation.nodeName);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                send(operation);
+            }
+        });
+    }
+
+    private void send(Operation<?> operation) {
+        operation.asyncId = asyncIdPrefix + nextAsyncId.incrementAndGet();
+        try {
+            operation.newRequest().processAsync(operation.asyncId, solrClient);
+            operation.submittedNanos = System.nanoTime();
+            submitted.add(operation);
+        } catch (IOException | SolrServerException | RuntimeException e) {
+            finish(operation, null, e);
+        }
+    }
+
+    /**
+     * Sends a status check of every in-flight operation to the executor, unless the previous check of the operation is
+     * still running. Operations which ran longer than the timeout are failed instead.
+     */
+    private void pollStatus() {
+        final long now = System.nanoTime();
+        for (final Operation<?> operation : submitted) {
+            if (now - operation.submittedNanos > operationTimeoutNanos) {
+                finish(operation, null, new TimeoutException("async request [" + operation.asyncId
+                        + "] did not complete within " + TimeUnit.NANOSECONDS.toMillis(operationTimeoutNanos) + "ms"));
+                continue;
+            }
+            if (!operation.polling.compareAndSet(false, true)) {
+                continue;
+            }
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            checkStatus(operation);
+                        } finally {
+                            operation.polling.set(false);
+                        }
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                // The executor was closed
+                return;
+            }
+        }
+    }
+
+    /** Checks the status of the operation's request, and completes the operation if its request completed or failed. */
+    private void checkStatus(Operation<?> operation) {
+        try {
+            final NamedList<Object> response = solrClient.request(
+                    CollectionAdminRequest.requestStatus(operation.asyncId));
+            final RequestStatusState state = getState(response);
+            switch (state) {
+                case COMPLETED:
+                case FAILED:
+                    finish(operation, response, null);
+                    deleteAsyncId(operation.asyncId);
+                    break;
+                case NOT_FOUND:
+                    finish(operation, null,
+                            new IllegalStateException("async request [" + operation.asyncId + "] not found"));
+                    break;
+                default:
+                    // still running
+            }
+        } catch (final IOException | SolrServerException | RuntimeException e) {
+            // Retried in the next round
+            LOGGER.warn("Failed to poll the status of async request [{}]", operation.asyncId, e);
+        }
+    }
+
+    /**
+     * Completes the operation and starts the next one queued for its node. An operation which already finished, e.g.
+     * since it timed out while its status was checked, is ignored.
+     */
+    private void finish(Operation<?> operation, NamedList<Object> response, Throwable error) {
+        if (!operation.finished.compareAndSet(false, true)) {
+            return;
+        }
+        submitted.remove(operation);
+        synchronized (this) {
+            inFlightPerNode.remove(operation.nodeName);
+            final Deque<Operation<?>> nodeQueue = queued.get(operation.nodeName);
+            if (!closed && nodeQueue != null && !nodeQueue.isEmpty()) {
+                start(nodeQueue.poll());
+            }
+        }
+        if (error != null) {
+            operation.future.completeExceptionally(error);
+        } else {
+            operation.complete(response);
+        }
+    }
+
+    private void deleteAsyncId(String asyncId) {
+        try {
+            CollectionAdminRequest.deleteAsyncId(asyncId).process(solrClient);
+        } catch (IOException | SolrServerException | RuntimeException e) {
+            LOGGER.warn("Failed to delete the status of async request [{}]", asyncId, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RequestStatusState getState(NamedList<Object> response) {
+        final NamedList<Object> status = (NamedList<Object>) response.get("status");
+        return RequestStatusState.fromKey((String) status.get("state"));
+    }
+
+    /** A Collections API operation and its future. */
+    private abstract static class Operation<T extends CollectionAdminResponse> {
+
+        final String nodeName;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final AtomicBoolean polling = new AtomicBoolean();
+        final AtomicBoolean finished = new AtomicBoolean();
+        volatile String asyncId;
+        volatile long submittedNanos;
+
+        Operation(String nodeName) {
+            this.nodeName = nodeName;
+        }
+
+        abstract CollectionAdminRequest.AsyncCollectionAdminRequest newRequest();
+
+        abstract T newResponse(org.apache.solr.client.solrj.response.CollectionAdminResponse rawResponse);
+
+        /** Completes the future with the response of the operation, as returned by the status request. */
+        void complete(NamedList<Object> response) {
+            try {
+                final org.apache.solr.client.solrj.response.CollectionAdminResponse rawResponse =
+                        new org.apache.solr.client.solrj.response.CollectionAdminResponse();
+                rawResponse.setResponse(response);
+                future.complete(newResponse(rawResponse));
+            } catch (final RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+    }
+
+}
@@ -59,18 +59,22 @@ public class ClusterStatusResponse extends CollectionAdminResponse {
         final Map<String, Collection> collections = Maps.newHashMap();
         for (final Entry<String, Object> collectionEntry : (NamedList<Object>) cluster.get("collections")) {
             final String name = collectionEntry.getKey();
-            final Map<String, Object> collectionValue = (Map<String, Object>) collectionEntry.getValue();
-            final int maxShardsPerNode = Integer.parseInt((String) collectionValue.get("maxShardsPerNode"));
-            final int replicationFactor = Integer.parseInt((String) collectionValue.get("replicationFactor"));
-            final boolean autoCreated = Boolean.parseBoolean((String) collectionValue.get("autoCreated"));
-            final List<String> aliases = (List<String>) collectionValue.get("aliases");
-            final List<Slice> slices = getSlices(collectionValue);
-            collections.put(name, new Collection(name, maxShardsPerNode, replicationFactor, autoCreated, aliases,
-                    slices));
+            collections.put(name, newCollection(name, (Map<String, Object>) collectionEntry.getValue()));
         }
         return collections;
     }
 
+    /** Creates a {@link Collection} from its entry in the response. */
+    @SuppressWarnings("unchecked")
+    static Collection newCollection(String name, Map<String, Object> collectionValue) {
+        final int maxShardsPerNode = Integer.parseInt((String) collectionValue.get("maxShardsPerNode"));
+        final int replicationFactor = Integer.parseInt((String) collectionValue.get("replicationFactor"));
+        final boolean autoCreated = Boolean.parseBoolean((String) collectionValue.get("autoCreated"));
+        final List<String> aliases = (List<String>) collectionValue.get("aliases");
+        final List<Slice> slices = getSlices(collectionValue);
+        return new Collection(name, maxShardsPerNode, replicationFactor, autoCreated, aliases, slices);
+    }
+
     @SuppressWarnings("unchecked")
     private static List<Slice> getSlices(final Map<String, Object> collectionValue) {
         final List<Slice> slices = Lists.newArrayList();
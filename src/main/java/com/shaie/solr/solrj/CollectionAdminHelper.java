@@ -17,23 +17,47 @@
 package com.shaie.solr.solrj;
 
 import java.io.IOException;
+import java.util.Set;
 
 import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
 import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.apache.solr.client.solrj.request.GenericSolrRequest;
 import org.apache.solr.client.solrj.response.CollectionAdminResponse;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.apache.solr.common.params.CollectionParams.CollectionAction;
+import org.apache.solr.common.params.CoreAdminParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.zookeeper.KeeperException;
 
 /** A helper class for interacting with Solr collections. */
 public class CollectionAdminHelper {
 
     private final SolrClient solrClient;
+    private final ZkStateReader zkStateReader;
 
     public CollectionAdminHelper(SolrClient solrClient) {
+        this(solrClient, null);
+    }
+
+    /**
+     * Creates a helper which checks whether collections exist using the given {@link ZkStateReader}'s cluster state,
+     * which is kept up to date by ZooKeeper watches, instead of sending a LIST request for every check. Use this for
+     * bulk operations on many collections, e.g. with {@link CloudSolrClient#getZkStateReader()}. If {@code null}, a
+     * LIST request is sent.
+     */
+    public CollectionAdminHelper(SolrClient solrClient, ZkStateReader zkStateReader) {
         this.solrClient = solrClient;
+        this.zkStateReader = zkStateReader;
     }
 
     /** Returns true if the collection denoted by {@code collectionName} exists. */
     public boolean collectionExists(String collectionName) {
+        if (zkStateReader != null) {
+            return collectionExistsInZk(collectionName);
+        }
         try {
             final CollectionAdminRequest.List listRequest = new CollectionAdminRequest.List();
             final CollectionAdminResponse listResponse = listRequest.process(solrClient);
@@ -44,6 +68,51 @@ public class CollectionAdminHelper {
         }
     }
 
+    /**
+     * Checks the locally watched cluster state first, and only if the collection is not there, checks its znode. This
+     * makes sure that collections which were just created are found, even before the watch fired. The collection's
+     * reference is checked rather than its state, since the state of a collection which is not watched is read from
+     * ZooKeeper on every access.
+     */
+    private boolean collectionExistsInZk(String collectionName) {
+        if (zkStateReader.getClusterState().getCollectionRef(collectionName) != null) {
+            return true;
+        }
+        try {
+            return zkStateReader.getZkClient().exists(ZkStateReader.COLLECTIONS_ZKNODE + "/" + collectionName, true);
+        } catch (final KeeperException e) {
+            throw new RuntimeException(e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Returns the status of the cluster and all its collections, whose slices and replicas are parsed lazily. */
+    public LazyClusterStatusResponse getClusterStatus() {
+        return getClusterStatus(null);
+    }
+
+    /**
+     * Returns the status of the cluster and the given collections, or all collections if {@code null}, whose slices
+     * and replicas are parsed lazily. CLUSTERSTATUS can only be filtered by a single collection, so if more than one
+     * collection is requested, the status of all collections is returned by Solr and filtered here. Note that if a
+     * single collection is requested and it does not exist, Solr fails the request.
+     */
+    public LazyClusterStatusResponse getClusterStatus(Set<String> collections) {
+        try {
+            final CollectionAdminRequest.ClusterStatus clusterStatusRequest =
+                    CollectionAdminRequest.getClusterStatus();
+            if (collections != null && collections.size() == 1) {
+                clusterStatusRequest.setCollectionName(collections.iterator().next());
+            }
+            final CollectionAdminResponse response = clusterStatusRequest.process(solrClient);
+            return new LazyClusterStatusResponse(response, collections);
+        } catch (IOException | SolrServerException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /** Creates a collection. */
     public CreateCollectionResponse createCollection(String collectionName, int numShards, int numReplicas,
             String configName) {
@@ -116,4 +185,45 @@ public class CollectionAdminHelper {
         }
     }
 
+    /**
+     * Adds a property to a replica. Solr stores the property with a {@code property.} prefix, in lower case. Properties
+     * such as {@code preferredLeader} are unique per shard, and so are removed from the shard's other replicas.
+     */
+    public void addReplicaProperty(String collectionName, String shardName, String replicaName, String property,
+            String value) {
+        if (!collectionExists(collectionName)) {
+            throw new IllegalArgumentException("collection [" + collectionName + "] does not exist");
+        }
+
+        try {
+            final CollectionAdminRequest.AddReplicaProp addReplicaPropRequest =
+                    CollectionAdminRequest.addReplicaProperty(collectionName, shardName, replicaName, property, value);
+            addReplicaPropRequest.process(solrClient);
+        } catch (IOException | SolrServerException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Makes the replicas with the {@code preferredLeader} property the leaders of their shards. At most
+     * {@code maxAtOnce} leaders are changed at once, and each change is waited on for up to {@code maxWaitSeconds}.
+     */
+    public void rebalanceLeaders(String collectionName, int maxAtOnce, int maxWaitSeconds) {
+        if (!collectionExists(collectionName)) {
+            throw new IllegalArgumentException("collection [" + collectionName + "] does not exist");
+        }
+
+        // SolrJ 6.4 has no request class for REBALANCELEADERS
+        final ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set(CoreAdminParams.ACTION, CollectionAction.REBALANCELEADERS.toString());
+        params.set(CoreAdminParams.COLLECTION, collectionName);
+        params.set("maxAtOnce", maxAtOnce);
+        params.set("maxWaitSeconds", maxWaitSeconds);
+        try {
+            new GenericSolrRequest(SolrRequest.METHOD.GET, "/admin/collections", params).process(solrClient);
+        } catch (IOException | SolrServerException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.solr.solrj;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.solr.common.util.NamedList;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.shaie.solr.solrj.ClusterStatusResponse.Collection;
+
+/**
+ * A variant of {@link ClusterStatusResponse} which only indexes the collection names of the response, and creates a
+ * collection's {@link Collection}, with its slices and replicas, on first access. This saves the time and heap of
+ * converting the collections the caller never reads, which on large clusters are most of the response.
+ * <p>
+ * The response can also be restricted to a subset of the collections, in which case the other collections are not
+ * indexed at all. Note that in Solr 6.4 the CLUSTERSTATUS request can only be filtered by a single collection on the
+ * server side, see {@link CollectionAdminHelper#getClusterStatus(Set)}.
+ */
+public class LazyClusterStatusResponse extends CollectionAdminResponse {
+
+    private final Map<String, Map<String, Object>> collectionValues;
+    private final ConcurrentMap<String, Collection> collections = Maps.newConcurrentMap();
+    private final Map<String, String> aliases;
+    private final Map<String, List<String>> roles;
+    private final List<String> liveNodes;
+
+    public LazyClusterStatusResponse(org.apache.solr.client.solrj.response.CollectionAdminResponse rawResponse) {
+        this(rawResponse, null);
+    }
+
+    /**
+     * Creates a response which includes only the given collections, or all collections if {@code null}. Requested
+     * collections which do not exist are ignored.
+     */
+    @SuppressWarnings("unchecked")
+    public LazyClusterStatusResponse(org.apache.solr.client.solrj.response.CollectionAdminResponse rawResponse,
+            Set<String> includeCollections) {
+        super(rawResponse);
+
+        if (rawResponse.getStatus() == 0) {
+            final NamedList<Object> cluster = (NamedList<Object>) rawResponse.getResponse().get("cluster");
+            collectionValues = indexCollections(cluster, includeCollections);
+            aliases = (Map<String, String>) cluster.get("aliases");
+            roles = (Map<String, List<String>>) cluster.get("roles");
+            liveNodes = (List<String>) cluster.get("live_nodes");
+        } else {
+            collectionValues = null;
+            aliases = null;
+            roles = null;
+            liveNodes = null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Map<String, Object>> indexCollections(NamedList<Object> cluster,
+            Set<String> includeCollections) {
+        final ImmutableMap.Builder<String, Map<String, Object>> collectionValues = ImmutableMap.builder();
+        final NamedList<Object> collectionsList = (NamedList<Object>) cluster.get("collections");
+        if (collectionsList == null) {
+            return collectionValues.build();
+        }
+        for (final Entry<String, Object> collectionEntry : collectionsList) {
+            final String name = collectionEntry.getKey();
+            if (includeCollections == null || includeCollections.contains(name)) {
+                collectionValues.put(name, (Map<String, Object>) collectionEntry.getValue());
+            }
+        }
+        return collectionValues.build();
+    }
+
+    /** Returns the names of the collections in the response, without creating them. */
+    public Set<String> getCollectionNames() {
+        return collectionValues == null ? null : collectionValues.keySet();
+    }
+
+    /** Returns the collection with the given name, or {@code null} if it is not in the response. */
+    public Collection getCollection(String name) {
+        Collection collection = collections.get(name);
+        if (collection == null) {
+            final Map<String, Object> collectionValue = collectionValues == null ? null : collectionValues.get(name);
+            if (collectionValue == null) {
+                return null;
+            }
+            collection = ClusterStatusResponse.newCollection(name, collectionValue);
+            final Collection existing = collections.putIfAbsent(name, collection);
+            if (existing != null) {
+                collection = existing;
+            }
+        }
+        return collection;
+    }
+
+    /** Returns a view of all the collections in the response, which creates each collection when it is accessed. */
+    public Map<String, Collection> getCollections() {
+        if (collectionValues == null) {
+            return null;
+        }
+        return Maps.asMap(collectionValues.keySet(), new Function<String, Collection>() {
+            @Override
+            public Collection apply(String name) {
+                return getCollection(name);
+            }
+        });
+    }
+
+    public Map<String, String> getAliases() {
+        return aliases;
+    }
+
+    public List<String> getLiveNodes() {
+        return liveNodes;
+    }
+
+    public Map<String, List<String>> getRoles() {
+        return roles;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("collections: ").append(getCollectionNames()).append('\n');
+        sb.append("aliases: ").append(aliases).append('\n');
+        sb.append("roles: ").append(roles).append('\n');
+        sb.append("liveNodes: ").append(liveNodes).append('\n');
+        return sb.toString();
+    }
+
+}
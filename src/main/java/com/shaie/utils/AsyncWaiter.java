@@ -0,0 +1,266 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.utils;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Waits asynchronously for some condition to become true, or for a timeout to expire. Unlike {@link Waiter}, waiting
+ * does not block the calling thread: conditions are polled by a shared scheduler with an exponential backoff, and the
+ * result is delivered through a {@link CompletableFuture}, so that many waits can be in flight at once.
+ * <p>
+ * Conditions are evaluated on the scheduler's threads and should therefore be cheap and non-blocking. Cancelling the
+ * returned future stops polling its condition.
+ */
+public class AsyncWaiter {
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors() / 2), new ThreadFactory() {
+                private final AtomicInteger threadNumber = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "async-waiter-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private AsyncWaiter() {
+        // Should not be instantiated
+    }
+
+    /**
+     * Waits for the condition with the {@link Backoff#DEFAULT default backoff}.
+     *
+     * @see #waitFor(Waiter.Condition, long, TimeUnit, Backoff)
+     */
+    public static CompletableFuture<Boolean> waitFor(Waiter.Condition condition, long time, TimeUnit unit) {
+        return waitFor(condition, time, unit, Backoff.DEFAULT);
+    }
+
+    /**
+     * @param condition
+     *            The condition to check
+     * @param time
+     *            The maximum time to wait for the condition to become true
+     * @param unit
+     *            The time unit of the {@code time} argument
+     * @param backoff
+     *            Determines the time to wait between each polling of the condition
+     *
+     * @return a future which completes with true if the condition was true before the timeout, false if it wasn't. If
+     *         the condition throws an exception, the future completes exceptionally with it.
+     */
+    public static CompletableFuture<Boolean> waitFor(Waiter.Condition condition, long time, TimeUnit unit,
+            Backoff backoff) {
+        final Poller poller = new Poller(condition, System.nanoTime() + unit.toNanos(time), backoff);
+        poller.result.whenComplete(new BiConsumer<Boolean, Throwable>() {
+            @Override
+            public void accept(Boolean satisfied, Throwable error) {
+                poller.cancel();
+            }
+        });
+        poller.schedule(0);
+        return poller.result;
+    }
+
+    /**
+     * Returns a future which completes with true if all the given waits complete with true. It completes with false
+     * as soon as any of the waits completes with false, in which case the other waits are cancelled. Cancelling the
+     * returned future cancels all the waits.
+     */
+    public static CompletableFuture<Boolean> allOf(List<CompletableFuture<Boolean>> waits) {
+        return combine(waits, false);
+    }
+
+    /**
+     * Returns a future which completes with true as soon as any of the given waits completes with true, in which case
+     * the other waits are cancelled. It completes with false if all the waits complete with false. Cancelling the
+     * returned future cancels all the waits.
+     */
+    public static CompletableFuture<Boolean> anyOf(List<CompletableFuture<Boolean>> waits) {
+        return combine(waits, true);
+    }
+
+    /**
+     * Combines the waits into a future which completes with {@code decisive} as soon as any of the waits completes with
+     * it, or with {@code !decisive} once all of them completed otherwise.
+     */
+    private static CompletableFuture<Boolean> combine(List<CompletableFuture<Boolean>> waits, final boolean decisive) {
+        final List<CompletableFuture<Boolean>> futures = ImmutableList.copyOf(waits);
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        final AtomicInteger remaining = new AtomicInteger(futures.size());
+        if (futures.isEmpty()) {
+            result.complete(!decisive);
+            return result;
+        }
+        for (final CompletableFuture<Boolean> future : futures) {
+            future.whenComplete(new BiConsumer<Boolean, Throwable>() {
+                @Override
+                public void accept(Boolean satisfied, Throwable error) {
+                    if (error != null) {
+                        result.completeExceptionally(error);
+                    } else if (satisfied.booleanValue() == decisive) {
+                        result.complete(decisive);
+                    } else if (remaining.decrementAndGet() == 0) {
+                        result.complete(!decisive);
+                    }
+                }
+            });
+        }
+        result.whenComplete(new BiConsumer<Boolean, Throwable>() {
+            @Override
+            public void accept(Boolean satisfied, Throwable error) {
+                for (final CompletableFuture<Boolean> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        });
+        return result;
+    }
+
+    /** Computes the time to wait between polls, which grows exponentially up to a maximum, with random jitter. */
+    public static final class Backoff {
+
+        /** Starts polling after 10ms, doubling the delay up to 1s, with 20% jitter. */
+        public static final Backoff DEFAULT = new Backoff(10, 1000, TimeUnit.MILLISECONDS, 2.0, 0.2);
+
+        private final long initialDelayNanos;
+        private final long maxDelayNanos;
+        private final double multiplier;
+        private final double jitter;
+
+        /**
+         * @param initialDelay
+         *            The time to wait before the second polling of the condition
+         * @param maxDelay
+         *            The maximum time to wait between pollings of the condition
+         * @param unit
+         *            The time unit of the {@code initialDelay} and {@code maxDelay} arguments
+         * @param multiplier
+         *            The factor by which the delay grows after every polling
+         * @param jitter
+         *            The fraction, between 0 and 1, by which every delay is randomly shortened, so that many waits
+         *            that started together do not poll together.
+         */
+        public Backoff(long initialDelay, long maxDelay, TimeUnit unit, double multiplier, double jitter) {
+            checkArgument(initialDelay > 0, "initialDelay must be positive: %s", initialDelay);
+            checkArgument(maxDelay >= initialDelay, "maxDelay must not be smaller than initialDelay: %s", maxDelay);
+            checkArgument(multiplier >= 1, "multiplier must be at least 1: %s", multiplier);
+            checkArgument(jitter >= 0 && jitter <= 1, "jitter must be between 0 and 1: %s", jitter);
+            this.initialDelayNanos = unit.toNanos(initialDelay);
+            this.maxDelayNanos = unit.toNanos(maxDelay);
+            this.multiplier = multiplier;
+            this.jitter = jitter;
+        }
+
+        /** Returns a backoff which polls at a fixed interval, like {@link Waiter}. */
+        public static Backoff fixed(long delay, TimeUnit unit) {
+            return new Backoff(delay, delay, unit, 1, 0);
+        }
+
+        /** Returns the delay, before jitter, that follows the given one, or the initial delay if it is 0. */
+        long nextDelayNanos(long delayNanos) {
+            if (delayNanos == 0) {
+                return initialDelayNanos;
+            }
+            return (long) Math.min(maxDelayNanos, delayNanos * multiplier);
+        }
+
+        /** Returns the given delay, shortened by a random jitter. */
+        long jitter(long delayNanos) {
+            if (jitter == 0) {
+                return delayNanos;
+            }
+            return (long) (delayNanos * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+        }
+
+    }
+
+    /** Polls a condition on the shared scheduler, rescheduling itself until it is satisfied or the deadline passes. */
+    private static final class Poller implements Runnable {
+
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        private final Waiter.Condition condition;
+        private final long deadlineNanos;
+        private final Backoff backoff;
+        private long delayNanos = 0;
+        private volatile ScheduledFuture<?> scheduled;
+
+        Poller(Waiter.Condition condition, long deadlineNanos, Backoff backoff) {
+            this.condition = condition;
+            this.deadlineNanos = deadlineNanos;
+            this.backoff = backoff;
+        }
+
+        @Override
+        public void run() {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                if (condition.isSatisfied()) {
+                    result.complete(Boolean.TRUE);
+                    return;
+                }
+            } catch (final Throwable t) {
+                result.completeExceptionally(t);
+                return;
+            }
+            final long remainingNanos = deadlineNanos - System.nanoTime();
+            if (remainingNanos <= 0) {
+                result.complete(Boolean.FALSE);
+                return;
+            }
+            delayNanos = backoff.nextDelayNanos(delayNanos);
+            // Always poll once more at the deadline, so that the full wait time is given to the condition
+            schedule(Math.min(backoff.jitter(delayNanos), remainingNanos));
+        }
+
+        void schedule(long delay) {
+            scheduled = SCHEDULER.schedule(this, delay, TimeUnit.NANOSECONDS);
+            if (result.isDone()) {
+                // Cancelled while scheduling
+                cancel();
+            }
+        }
+
+        void cancel() {
+            final ScheduledFuture<?> current = scheduled;
+            if (current != null) {
+                current.cancel(false);
+            }
+        }
+
+    }
+
+}
@@ -19,16 +19,25 @@ package com.shaie.utils;
 import static com.shaie.utils.Utils.*;
 
 import java.io.IOException;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.util.BytesRef;
 
-import com.google.common.collect.Maps;
+import com.google.common.collect.Lists;
+import com.shaie.utils.PostingsDumpSink.DocPostings;
 
 public abstract class IndexUtils {
 
@@ -50,38 +59,68 @@ public abstract class IndexUtils {
 
     /** Prints the terms indexed under the given fields with full postings information. */
     public static void printFieldTermsWithInfo(LeafReader reader, String... fields) throws IOException {
-        for (final String field : fields) {
-            System.out.println(format("Terms for field [%s], with positional info:", field));
-            final TermsEnum te = reader.terms(field).iterator();
-            BytesRef scratch;
-            PostingsEnum postings = null;
-            while ((scratch = te.next()) != null) {
-                System.out.println(format("  %s", scratch.utf8ToString()));
-                postings = te.postings(postings, PostingsEnum.ALL);
-                for (postings.nextDoc(); postings.docID() != DocIdSetIterator.NO_MORE_DOCS; postings.nextDoc()) {
-                    final Map<Integer, BytesRef> positions = Maps.newTreeMap();
-                    boolean addedPayload = false;
-                    for (int i = 0; i < postings.freq(); i++) {
-                        final int pos = postings.nextPosition();
-                        final BytesRef payload = postings.getPayload();
-                        if (payload != null) {
-                            positions.put(pos, BytesRef.deepCopyOf(payload));
-                            addedPayload = true;
-                        } else {
-                            positions.put(pos, null);
-                        }
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        try (PostingsDumpSink sink = new PostingsDumpSinks.TextSink(out, 0, false)) {
+            dumpPostings(reader, sink, fields);
+        }
+    }
+
+    /**
+     * Dumps the terms and postings of the given fields in all the segments of the reader to sinks created by the
+     * factory, one task per segment. Returns when all segments were dumped, and rethrows the first failure of any of
+     * the tasks.
+     */
+    public static void dumpPostings(IndexReader reader, ExecutorService executor,
+            final PostingsDumpSink.Factory sinkFactory, final String... fields) throws IOException {
+        final List<Future<Void>> futures = Lists.newArrayList();
+        for (final LeafReaderContext context : reader.leaves()) {
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    try (PostingsDumpSink sink = sinkFactory.newSink(context.ord, context.docBase)) {
+                        dumpPostings(context.reader(), sink, fields);
                     }
-                    if (addedPayload) {
-                        System.out.println(format("    doc=%d, freq=%d", postings.docID(), postings.freq(), positions));
-                        for (final Entry<Integer, BytesRef> e : positions.entrySet()) {
-                            System.out.println(format("      pos=%d, payload=%s", e.getKey(), e.getValue()));
+                    return null;
+                }
+            }));
+        }
+        awaitAll(futures);
+    }
+
+    /**
+     * Dumps the terms and postings of the given fields of a segment to the sink. Fields which do not exist in the
+     * segment are skipped. The postings enum, positions and payloads are reused across terms and documents.
+     */
+    public static void dumpPostings(LeafReader reader, PostingsDumpSink sink, String... fields) throws IOException {
+        final DocPostings docPostings = new DocPostings();
+        PostingsEnum postings = null;
+        for (final String field : fields) {
+            final Terms terms = reader.terms(field);
+            if (terms == null) {
+                continue;
+            }
+            final boolean hasPositions = terms.hasPositions();
+            final int flags = hasPositions ? PostingsEnum.PAYLOADS : PostingsEnum.FREQS;
+            sink.startField(field);
+            final TermsEnum te = terms.iterator();
+            BytesRef term;
+            while ((term = te.next()) != null) {
+                sink.startTerm(term);
+                postings = te.postings(postings, flags);
+                for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                    final int freq = postings.freq();
+                    docPostings.reset(doc, freq, hasPositions);
+                    if (hasPositions) {
+                        for (int i = 0; i < freq; i++) {
+                            final int position = postings.nextPosition();
+                            docPostings.addPosition(position, postings.getPayload());
                         }
-                    } else {
-                        System.out.println(format("    doc=%d, freq=%d, pos=%s", postings.docID(), postings.freq(),
-                                positions.keySet()));
                     }
+                    sink.doc(docPostings);
                 }
+                sink.endTerm();
             }
+            sink.endField();
         }
     }
 
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Receives the terms and postings of a segment from {@link IndexUtils#dumpPostings}. The calls are nested: a field's
+ * terms are reported between {@link #startField(String)} and {@link #endField()}, and a term's documents between
+ * {@link #startTerm(BytesRef)} and {@link #endTerm()}. The arguments are reused between calls, and must be copied by
+ * sinks which keep them. A sink is called by a single thread.
+ */
+public interface PostingsDumpSink extends Closeable {
+
+    /** Called before the terms of a field. */
+    public void startField(String field) throws IOException;
+
+    /** Called before the documents of a term. */
+    public void startTerm(BytesRef term) throws IOException;
+
+    /** Called for every document of the current term. */
+    public void doc(DocPostings postings) throws IOException;
+
+    /** Called after the documents of a term. */
+    public void endTerm() throws IOException;
+
+    /** Called after the terms of a field. */
+    public void endField() throws IOException;
+
+    /** Creates a sink per segment, for dumping the segments in parallel. */
+    public static interface Factory {
+
+        /** Returns the sink for the segment with the given ordinal and doc base. */
+        public PostingsDumpSink newSink(int segment, int docBase) throws IOException;
+
+    }
+
+    /**
+     * The postings of one document, with positions and payloads held in primitive arrays which are reused between
+     * documents.
+     */
+    public static final class DocPostings {
+
+        private int docID;
+        private int freq;
+        private boolean hasPositions;
+        private boolean hasPayloads;
+        private int[] positions = new int[16];
+        private int[] payloadEnds = new int[16];
+        private byte[] payloadBytes = new byte[64];
+        private int numPositions;
+
+        /** Resets the postings to a new document. */
+        void reset(int docID, int freq, boolean hasPositions) {
+            this.docID = docID;
+            this.freq = freq;
+            this.hasPositions = hasPositions;
+            hasPayloads = false;
+            numPositions = 0;
+        }
+
+        /** Adds the next position of the document, and copies its payload (which may be {@code null}). */
+        void addPosition(int position, BytesRef payload) {
+            if (numPositions == positions.length) {
+                positions = ArrayUtil.grow(positions, numPositions + 1);
+                payloadEnds = ArrayUtil.grow(payloadEnds, positions.length);
+            }
+            int payloadEnd = numPositions == 0 ? 0 : payloadEnds[numPositions - 1];
+            if (payload != null && payload.length > 0) {
+                payloadBytes = ArrayUtil.grow(payloadBytes, payloadEnd + payload.length);
+                System.arraycopy(payload.bytes, payload.offset, payloadBytes, payloadEnd, payload.length);
+                payloadEnd += payload.length;
+                hasPayloads = true;
+            }
+            positions[numPositions] = position;
+            payloadEnds[numPositions] = payloadEnd;
+            ++numPositions;
+        }
+
+        public int docID() {
+            return docID;
+        }
+
+        public int freq() {
+            return freq;
+        }
+
+        /** Returns true if the field was indexed with positions, in which case there are {@link #freq()} of them. */
+        public boolean hasPositions() {
+            return hasPositions;
+        }
+
+        /** Returns true if at least one of the positions has a payload. */
+        public boolean hasPayloads() {
+            return hasPayloads;
+        }
+
+        public int position(int index) {
+            return positions[index];
+        }
+
+        /**
+         * Sets the given {@link BytesRef} to the payload of the position at the given index, and returns it. The
+         * payload is empty if the position does not have one.
+         */
+        public BytesRef payload(int index, BytesRef scratch) {
+            final int start = index == 0 ? 0 : payloadEnds[index - 1];
+            scratch.bytes = payloadBytes;
+            scratch.offset = start;
+            scratch.length = payloadEnds[index] - start;
+            return scratch;
+        }
+
+    }
+
+}
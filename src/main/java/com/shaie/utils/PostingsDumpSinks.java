@@ -0,0 +1,339 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.utils;
+
+import static com.shaie.utils.Utils.*;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.OutputStreamDataOutput;
+import org.apache.lucene.util.BytesRef;
+
+import com.shaie.utils.PostingsDumpSink.DocPostings;
+
+/**
+ * {@link PostingsDumpSink} implementations. The factories write every segment into its own file in the given
+ * directory, named {@code postings-<segment>.<ext>}, so that segments can be dumped in parallel. All the sinks report
+ * top-level document IDs.
+ */
+public abstract class PostingsDumpSinks {
+
+    /** The magic number at the start of the files of {@link #binary(Path)}. */
+    public static final int BINARY_MAGIC = 0x504F5354; // "POST"
+    public static final int BINARY_VERSION = 1;
+    public static final byte BINARY_END = 0;
+    public static final byte BINARY_FIELD = 1;
+    public static final byte BINARY_TERM = 2;
+    public static final byte BINARY_DOC = 3;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private PostingsDumpSinks() {
+        // No instances should be created.
+    }
+
+    /** Returns a factory of sinks which write the postings in the same format as {@link IndexUtils}'s print methods. */
+    public static PostingsDumpSink.Factory text(final Path dir) {
+        return new PostingsDumpSink.Factory() {
+            @Override
+            public PostingsDumpSink newSink(int segment, int docBase) throws IOException {
+                return new TextSink(newWriter(dir, segment, "txt"), docBase, true);
+            }
+        };
+    }
+
+    /**
+     * Returns a factory of sinks which write a JSON object per document of every term, one per line, e.g.
+     * <code>{"field":"f","term":"t","doc":3,"freq":2,"positions":[1,5],"payloads":["0a",""]}</code>. Payloads
+     * are written as hex strings, and only if any of the document's positions has one.
+     */
+    public static PostingsDumpSink.Factory json(final Path dir) {
+        return new PostingsDumpSink.Factory() {
+            @Override
+            public PostingsDumpSink newSink(int segment, int docBase) throws IOException {
+                return new JsonSink(newWriter(dir, segment, "json"), docBase);
+            }
+        };
+    }
+
+    /**
+     * Returns a factory of sinks which write a compact binary file: a header ({@link #BINARY_MAGIC},
+     * {@link #BINARY_VERSION} and the segment's doc base as a {@code VInt}), followed by records which start with
+     * one of {@link #BINARY_FIELD} (name as a string), {@link #BINARY_TERM} (length and bytes) or {@link #BINARY_DOC},
+     * and end with {@link #BINARY_END}. A document record holds the delta from the previous document of the term,
+     * {@code freq << 1 | hasPositions}, and per position its delta from the previous one and its payload (length and
+     * bytes). All numbers except the header's ints are {@code VInt}s.
+     */
+    public static PostingsDumpSink.Factory binary(final Path dir) {
+        return new PostingsDumpSink.Factory() {
+            @Override
+            public PostingsDumpSink newSink(int segment, int docBase) throws IOException {
+                final OutputStream os = new BufferedOutputStream(
+                        Files.newOutputStream(dir.resolve(fileName(segment, "bin"))), BUFFER_SIZE);
+                return new BinarySink(os, docBase);
+            }
+        };
+    }
+
+    private static String fileName(int segment, String extension) {
+        return format("postings-%d.%s", segment, extension);
+    }
+
+    private static PrintWriter newWriter(Path dir, int segment, String extension) throws IOException {
+        return new PrintWriter(Files.newBufferedWriter(dir.resolve(fileName(segment, extension)),
+                StandardCharsets.UTF_8));
+    }
+
+    /** Writes the postings as indented text. */
+    public static final class TextSink implements PostingsDumpSink {
+
+        private final PrintWriter out;
+        private final int docBase;
+        private final boolean closeOut;
+        private final BytesRef payload = new BytesRef();
+
+        /** Writes to the given writer, which is closed by {@link #close()} only if {@code closeOut} is true. */
+        public TextSink(PrintWriter out, int docBase, boolean closeOut) {
+            this.out = out;
+            this.docBase = docBase;
+            this.closeOut = closeOut;
+        }
+
+        @Override
+        public void startField(String field) {
+            out.println(format("Terms for field [%s], with positional info:", field));
+        }
+
+        @Override
+        public void startTerm(BytesRef term) {
+            out.println(format("  %s", term.utf8ToString()));
+        }
+
+        @Override
+        public void doc(DocPostings postings) {
+            final int docID = docBase + postings.docID();
+            if (!postings.hasPositions()) {
+                out.println(format("    doc=%d, freq=%d", docID, postings.freq()));
+            } else if (postings.hasPayloads()) {
+                out.println(format("    doc=%d, freq=%d", docID, postings.freq()));
+                for (int i = 0; i < postings.freq(); i++) {
+                    out.println(format("      pos=%d, payload=%s", postings.position(i), postings.payload(i, payload)));
+                }
+            } else {
+                final StringBuilder positions = new StringBuilder("[");
+                for (int i = 0; i < postings.freq(); i++) {
+                    if (i > 0) {
+                        positions.append(", ");
+                    }
+                    positions.append(postings.position(i));
+                }
+                positions.append(']');
+                out.println(format("    doc=%d, freq=%d, pos=%s", docID, postings.freq(), positions));
+            }
+        }
+
+        @Override
+        public void endTerm() {
+        }
+
+        @Override
+        public void endField() {
+        }
+
+        @Override
+        public void close() {
+            if (closeOut) {
+                out.close();
+            } else {
+                out.flush();
+            }
+        }
+
+    }
+
+    /** Writes a JSON object per document of every term. */
+    private static final class JsonSink implements PostingsDumpSink {
+
+        private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+        private final PrintWriter out;
+        private final int docBase;
+        private final StringBuilder prefix = new StringBuilder();
+        private final StringBuilder line = new StringBuilder();
+        private final BytesRef payload = new BytesRef();
+        private String field;
+
+        JsonSink(PrintWriter out, int docBase) {
+            this.out = out;
+            this.docBase = docBase;
+        }
+
+        @Override
+        public void startField(String field) {
+            this.field = field;
+        }
+
+        @Override
+        public void startTerm(BytesRef term) {
+            // The field and term are the same for all the term's documents
+            prefix.setLength(0);
+            prefix.append("{\"field\":");
+            appendString(prefix, field);
+            prefix.append(",\"term\":");
+            appendString(prefix, term.utf8ToString());
+        }
+
+        @Override
+        public void doc(DocPostings postings) {
+            line.setLength(0);
+            line.append(prefix).append(",\"doc\":").append(docBase + postings.docID());
+            line.append(",\"freq\":").append(postings.freq());
+            if (postings.hasPositions()) {
+                line.append(",\"positions\":[");
+                for (int i = 0; i < postings.freq(); i++) {
+                    line.append(i > 0 ? "," : "").append(postings.position(i));
+                }
+                line.append(']');
+            }
+            if (postings.hasPayloads()) {
+                line.append(",\"payloads\":[");
+                for (int i = 0; i < postings.freq(); i++) {
+                    line.append(i > 0 ? ",\"" : "\"");
+                    postings.payload(i, payload);
+                    for (int j = payload.offset; j < payload.offset + payload.length; j++) {
+                        line.append(HEX[(payload.bytes[j] >> 4) & 0xF]).append(HEX[payload.bytes[j] & 0xF]);
+                    }
+                    line.append('"');
+                }
+                line.append(']');
+            }
+            line.append('}');
+            out.println(line);
+        }
+
+        @Override
+        public void endTerm() {
+        }
+
+        @Override
+        public void endField() {
+        }
+
+        @Override
+        public void close() {
+            out.close();
+        }
+
+        private static void appendString(StringBuilder sb, String s) {
+            sb.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                final char c = s.charAt(i);
+                switch (c) {
+                    case '"':
+                        sb.append("\\\"");
+                        break;
+                    case '\\':
+                        sb.append("\\\\");
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            sb.append(format("\\u%04x", (int) c));
+                        } else {
+                            sb.append(c);
+                        }
+                }
+            }
+            sb.append('"');
+        }
+
+    }
+
+    /** Writes the postings in a compact binary format. */
+    private static final class BinarySink implements PostingsDumpSink {
+
+        private final OutputStream os;
+        private final DataOutput out;
+        private final BytesRef payload = new BytesRef();
+        private int lastDocID;
+
+        BinarySink(OutputStream os, int docBase) throws IOException {
+            this.os = os;
+            this.out = new OutputStreamDataOutput(os);
+            out.writeInt(BINARY_MAGIC);
+            out.writeInt(BINARY_VERSION);
+            out.writeVInt(docBase);
+        }
+
+        @Override
+        public void startField(String field) throws IOException {
+            out.writeByte(BINARY_FIELD);
+            out.writeString(field);
+        }
+
+        @Override
+        public void startTerm(BytesRef term) throws IOException {
+            out.writeByte(BINARY_TERM);
+            out.writeVInt(term.length);
+            out.writeBytes(term.bytes, term.offset, term.length);
+            lastDocID = 0;
+        }
+
+        @Override
+        public void doc(DocPostings postings) throws IOException {
+            out.writeByte(BINARY_DOC);
+            out.writeVInt(postings.docID() - lastDocID);
+            lastDocID = postings.docID();
+            out.writeVInt(postings.freq() << 1 | (postings.hasPositions() ? 1 : 0));
+            if (postings.hasPositions()) {
+                int lastPosition = 0;
+                for (int i = 0; i < postings.freq(); i++) {
+                    out.writeVInt(postings.position(i) - lastPosition);
+                    lastPosition = postings.position(i);
+                    postings.payload(i, payload);
+                    out.writeVInt(payload.length);
+                    out.writeBytes(payload.bytes, payload.offset, payload.length);
+                }
+            }
+        }
+
+        @Override
+        public void endTerm() {
+        }
+
+        @Override
+        public void endField() {
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.writeByte(BINARY_END);
+            } finally {
+                os.close();
+            }
+        }
+
+    }
+
+}
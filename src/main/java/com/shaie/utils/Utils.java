@@ -17,11 +17,16 @@
 package com.shaie.utils;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
+import com.google.common.base.Throwables;
 import com.google.common.io.Resources;
 
 /** General utilities. */
@@ -55,4 +60,26 @@ public abstract class Utils {
         return String.format(Locale.ROOT, format, args);
     }
 
+    /**
+     * Waits for all the given futures to complete. Rethrows the first failure of any of the tasks, unwrapped as an
+     * {@link IOException} or a {@link RuntimeException}, and cancels the tasks which did not complete yet.
+     */
+    public static void awaitAll(List<? extends Future<?>> futures) throws IOException {
+        try {
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw new RuntimeException(e.getCause());
+        } finally {
+            for (final Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots;
+
+import static com.shaie.annots.MultiPositionSpanTermQueryTest.*;
+import static org.fest.assertions.Assertions.*;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.shaie.annots.filter.AnnotationSpanTable;
+import com.shaie.annots.filter.PreAnnotatedTokenFilter.LengthEncoding;
+
+/**
+ * Unit tests for {@link AnnotationSpanQueries}. The same annotations are indexed into two fields, one with the lengths
+ * in payloads and one with an {@link AnnotationSpanTable}, and every test runs against both.
+ */
+public class AnnotationSpanQueriesTest {
+
+    private static final String TEXT_FIELD = "text";
+    private static final String PAYLOAD_COLOR_FIELD = "color";
+    private static final String SPAN_TABLE_COLOR_FIELD = "table_color";
+
+    private final Directory dir = new RAMDirectory();
+    private final PreAnnotatedAnalyzer payloadAnalyzer = new PreAnnotatedAnalyzer(LengthEncoding.PAYLOAD);
+    private final PreAnnotatedAnalyzer spanTableAnalyzer = new PreAnnotatedAnalyzer(LengthEncoding.SPAN_TABLE);
+    private final List<AnnotationSpanQueries> allColors = ImmutableList.of(
+            new AnnotationSpanQueries(PAYLOAD_COLOR_FIELD, TEXT_FIELD),
+            new AnnotationSpanQueries(SPAN_TABLE_COLOR_FIELD, TEXT_FIELD,
+                    AnnotationSpanTable.fieldName(SPAN_TABLE_COLOR_FIELD), new TermContextCache()));
+    private IndexWriter writer;
+    private DirectoryReader reader;
+
+    @Before
+    public void setUp() throws IOException {
+        writer = new IndexWriter(dir, new IndexWriterConfig(new PerFieldAnalyzerWrapper(new WhitespaceAnalyzer(),
+                ImmutableMap.<String, Analyzer> of(PAYLOAD_COLOR_FIELD, payloadAnalyzer, SPAN_TABLE_COLOR_FIELD,
+                        spanTableAnalyzer))));
+        addDocument("quick rosy brown fox and a pale violet red dog", 1, 2, 6, 3);
+        addDocument("no colors here");
+        addDocument("red fox", 0, 1);
+        addDocument("fox is not red", 3, 1);
+        reader = DirectoryReader.open(writer);
+        assertThat(reader.leaves()).hasSize(1);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        reader.close();
+        writer.close();
+        payloadAnalyzer.close();
+        spanTableAnalyzer.close();
+        dir.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fails_when_text_query_is_on_another_field() {
+        allColors.get(0).within(new SpanTermQuery(new Term(PAYLOAD_COLOR_FIELD, "red")));
+    }
+
+    @Test
+    public void any_annotation_matches_annotation_spans() throws IOException {
+        for (final AnnotationSpanQueries colors : allColors) {
+            assertThat(spans(colors.anyAnnotation())).containsExactly("0:1-3", "0:6-9", "2:0-1", "3:3-4");
+        }
+    }
+
+    @Test
+    public void before_matches_annotations_followed_by_text() throws IOException {
+        for (final AnnotationSpanQueries colors : allColors) {
+            assertThat(spans(colors.before(text("fox"), 0))).containsExactly("0:1-4", "2:0-2");
+            assertThat(spans(colors.before(text("dog"), 0))).containsExactly("0:6-10");
+        }
+    }
+
+    @Test
+    public void after_matches_annotations_which_follow_text() throws IOException {
+        for (final AnnotationSpanQueries colors : allColors) {
+            assertThat(spans(colors.after(text("fox"), 1))).isEmpty();
+            assertThat(spans(colors.after(text("fox"), 2))).containsExactly("0:3-9", "3:0-4");
+        }
+    }
+
+    @Test
+    public void near_matches_annotations_and_text_in_any_order() throws IOException {
+        for (final AnnotationSpanQueries colors : allColors) {
+            assertThat(spans(colors.near(text("fox"), 0, false))).containsExactly("0:1-4", "2:0-2");
+            assertThat(spans(colors.near(text("fox"), 0, true))).containsExactly("0:1-4", "2:0-2");
+            assertThat(spans(colors.near(text("quick"), 0, false))).containsExactly("0:0-3");
+            assertThat(spans(colors.near(text("quick"), 0, true))).isEmpty();
+        }
+    }
+
+    @Test
+    public void within_matches_text_inside_annotations() throws IOException {
+        for (final AnnotationSpanQueries colors : allColors) {
+            assertThat(spans(colors.within(text("violet")))).containsExactly("0:7-8");
+            assertThat(spans(colors.within(text("red")))).containsExactly("0:8-9", "2:0-1", "3:3-4");
+            assertThat(spans(colors.within(text("fox")))).isEmpty();
+        }
+    }
+
+    @Test
+    public void containing_matches_annotations_which_contain_text() throws IOException {
+        for (final AnnotationSpanQueries colors : allColors) {
+            assertThat(spans(colors.containing(text("violet")))).containsExactly("0:6-9");
+            assertThat(spans(colors.containing(text("brown")))).containsExactly("0:1-3");
+            assertThat(spans(colors.containing(text("red")))).containsExactly("0:6-9", "2:0-1", "3:3-4");
+            assertThat(spans(colors.containing(text("dog")))).isEmpty();
+        }
+    }
+
+    private List<String> spans(SpanQuery query) throws IOException {
+        return collectSpans(getSpans(query, reader.leaves().get(0)));
+    }
+
+    private static SpanQuery text(String word) {
+        return new SpanTermQuery(new Term(TEXT_FIELD, word));
+    }
+
+    private void addDocument(String text, int... markers) throws IOException {
+        final Document doc = new Document();
+        doc.add(new TextField(TEXT_FIELD, text, Store.NO));
+        doc.add(new TextField(PAYLOAD_COLOR_FIELD, text, Store.NO));
+        doc.add(new TextField(SPAN_TABLE_COLOR_FIELD, text, Store.NO));
+        doc.add(AnnotationSpanTable.newField(SPAN_TABLE_COLOR_FIELD, markers));
+        payloadAnalyzer.setMarkers(PAYLOAD_COLOR_FIELD, markers);
+        spanTableAnalyzer.setMarkers(SPAN_TABLE_COLOR_FIELD, markers);
+        writer.addDocument(doc);
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.io.IOException;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.shaie.annots.filter.AnnotationSpanTable;
+import com.shaie.annots.filter.PreAnnotatedTokenFilter.LengthEncoding;
+
+/** Unit tests for {@link AnnotationStatsCache}. */
+public class AnnotationStatsCacheTest {
+
+    private static final String COLOR_FIELD = "color";
+
+    private final Directory dir = new RAMDirectory();
+    private PreAnnotatedAnalyzer analyzer;
+    private IndexWriter writer;
+
+    @Before
+    public void setUp() throws IOException {
+        analyzer = new PreAnnotatedAnalyzer(LengthEncoding.PAYLOAD);
+        writer = new IndexWriter(dir, new IndexWriterConfig(analyzer));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        writer.close();
+        analyzer.close();
+        dir.close();
+    }
+
+    @Test
+    public void computes_counts_and_length_histogram() throws IOException {
+        addDocument("quick rosy brown fox and a pale violet red dog", 1, 2, 6, 3);
+        addDocument("only red dog", 1, 1);
+        addDocument("no colors here");
+        final AnnotationStatsCache cache = new AnnotationStatsCache(LengthEncoding.PAYLOAD);
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            final AnnotationStats stats = cache.getStats(reader, COLOR_FIELD);
+            assertThat(stats.count()).isEqualTo(3);
+            assertThat(stats.numDocs()).isEqualTo(2);
+            assertThat(stats.maxLength()).isEqualTo(3);
+            assertThat(stats.count(2)).isEqualTo(2);
+            assertThat(stats.count(3)).isEqualTo(1);
+            assertThat(stats.count(1, 1)).isEqualTo(1);
+            assertThat(stats.docCount(0)).isEqualTo(2);
+            assertThat(stats.docCount(1)).isEqualTo(1);
+            assertThat(stats.docCount(2)).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void sums_statistics_of_all_segments() throws IOException {
+        addDocument("only red dog", 1, 1);
+        writer.commit();
+        addDocument("pale violet red dog", 0, 3);
+        final AnnotationStatsCache cache = new AnnotationStatsCache(LengthEncoding.PAYLOAD);
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            assertThat(reader.leaves()).hasSize(2);
+            final AnnotationStats stats = cache.getStats(reader, COLOR_FIELD);
+            assertThat(stats.count()).isEqualTo(2);
+            assertThat(stats.lengthHistogram()).isEqualTo(new long[] { 0, 1, 0, 1 });
+            assertThat(stats.docCount(1)).isEqualTo(1);
+            assertThat(cache.size()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void reads_lengths_from_span_table() throws IOException {
+        analyzer.close();
+        writer.close();
+        analyzer = new PreAnnotatedAnalyzer(LengthEncoding.SPAN_TABLE);
+        writer = new IndexWriter(dir, new IndexWriterConfig(analyzer));
+        final Document doc = new Document();
+        doc.add(new TextField(COLOR_FIELD, "pale violet red dog", Store.NO));
+        doc.add(AnnotationSpanTable.newField(COLOR_FIELD, 0, 3));
+        analyzer.setMarkers(COLOR_FIELD, 0, 3);
+        writer.addDocument(doc);
+        final AnnotationStatsCache cache = new AnnotationStatsCache(LengthEncoding.SPAN_TABLE);
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            assertThat(cache.getStats(reader, COLOR_FIELD).count(3)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void reuses_statistics_of_unchanged_segments() throws IOException {
+        addDocument("only red dog", 1, 1);
+        writer.commit();
+        final AnnotationStatsCache cache = new AnnotationStatsCache(LengthEncoding.PAYLOAD);
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            final AnnotationStats stats = cache.getStats(reader.leaves().get(0).reader(), COLOR_FIELD);
+            addDocument("pale violet red dog", 0, 3);
+            try (DirectoryReader newReader = DirectoryReader.openIfChanged(reader, writer)) {
+                assertThat(cache.getStats(newReader.leaves().get(0).reader(), COLOR_FIELD)).isSameAs(stats);
+            }
+        }
+    }
+
+    private void addDocument(String text, int... markers) throws IOException {
+        final Document doc = new Document();
+        doc.add(new TextField(COLOR_FIELD, text, Store.NO));
+        analyzer.setMarkers(COLOR_FIELD, markers);
+        writer.addDocument(doc);
+    }
+
+}
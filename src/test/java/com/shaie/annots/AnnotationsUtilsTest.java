@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Lists;
+import com.shaie.annots.AnnotationsUtils.AnnotationVisitor;
+import com.shaie.annots.AnnotationsUtils.AnnotationVisitorFactory;
+import com.shaie.annots.filter.PreAnnotatedTokenFilter;
+
+/** Unit tests for {@link AnnotationsUtils}. */
+public class AnnotationsUtilsTest {
+
+    private static final String COLOR_FIELD = "color";
+    private static final Term ANY_COLOR = new Term(COLOR_FIELD, PreAnnotatedTokenFilter.ANY_ANNOTATION_TERM);
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final Directory dir = new RAMDirectory();
+    private final PreAnnotatedAnalyzer analyzer = new PreAnnotatedAnalyzer();
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private IndexWriter writer;
+
+    @Before
+    public void setUp() throws IOException {
+        writer = new IndexWriter(dir, new IndexWriterConfig(analyzer));
+        addDocument("quick rosy brown fox and a pale violet red dog", 1, 2, 6, 3);
+        addDocument("no colors here");
+        writer.commit();
+        addDocument("only red dog", 1, 1);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        writer.close();
+        analyzer.close();
+        dir.close();
+    }
+
+    @Test
+    public void visits_annotations_of_all_segments() throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            final List<String> annotations = Lists.newArrayList();
+            AnnotationsUtils.visitAnnotations(reader, ANY_COLOR, null, executor, new AnnotationVisitorFactory() {
+                @Override
+                public AnnotationVisitor newVisitor(final LeafReaderContext context) {
+                    return new AnnotationVisitor() {
+                        @Override
+                        public void visit(int docID, int start, int length) {
+                            synchronized (annotations) {
+                                annotations.add((context.docBase + docID) + ":" + start + "+" + length);
+                            }
+                        }
+                    };
+                }
+            });
+            assertThat(annotations).containsOnly("0:1+2", "0:6+3", "2:1+1");
+        }
+    }
+
+    @Test
+    public void reads_exported_annotations() throws IOException {
+        final Path file = tempFolder.getRoot().toPath().resolve("annotations.bin");
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            AnnotationsUtils.exportAnnotations(reader, ANY_COLOR, executor, file);
+        }
+        final List<String> annotations = Lists.newArrayList();
+        AnnotationsUtils.readAnnotations(file, new AnnotationVisitor() {
+            @Override
+            public void visit(int docID, int start, int length) {
+                annotations.add(docID + ":" + start + "+" + length);
+            }
+        });
+        assertThat(annotations).containsExactly("0:1+2", "0:6+3", "2:1+1");
+        assertThat(tempFolder.getRoot().list()).containsOnly("annotations.bin");
+    }
+
+    private void addDocument(String text, int... markers) throws IOException {
+        final Document doc = new Document();
+        doc.add(new TextField(COLOR_FIELD, text, Store.NO));
+        analyzer.setMarkers(COLOR_FIELD, markers);
+        writer.addDocument(doc);
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.spans.FilterSpans;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanWeight;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.search.spans.TermSpans;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.shaie.annots.filter.AnnotationSpanTable;
+import com.shaie.annots.filter.PreAnnotatedTokenFilter;
+import com.shaie.annots.filter.PreAnnotatedTokenFilter.LengthEncoding;
+
+/** Unit tests for {@link MultiPositionSpanTermQuery}. */
+public class MultiPositionSpanTermQueryTest {
+
+    private static final String TEXT_FIELD = "text";
+    private static final String COLOR_FIELD = "color";
+    private static final Term ANY_COLOR = new Term(COLOR_FIELD, PreAnnotatedTokenFilter.ANY_ANNOTATION_TERM);
+
+    private static final String SPAN_TABLE_FIELD = AnnotationSpanTable.fieldName(COLOR_FIELD);
+
+    private final Directory dir = new RAMDirectory();
+    private LengthEncoding lengthEncoding;
+    private PreAnnotatedAnalyzer analyzer;
+    private IndexWriter writer;
+
+    @Before
+    public void setUp() throws IOException {
+        openWriter(LengthEncoding.PAYLOAD);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        writer.close();
+        analyzer.close();
+        dir.close();
+    }
+
+    @Test
+    public void reads_span_ends_from_payloads() throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            final LeafReaderContext context = reader.leaves().get(0);
+            final Spans spans = getSpans(new MultiPositionSpanTermQuery(ANY_COLOR), context);
+            assertThat(spans).isInstanceOf(MultiPositionSpans.PayloadLengthSpans.class);
+            assertThat(collectSpans(spans)).containsExactly("0:1-3", "0:6-9", "2:1-2");
+        }
+    }
+
+    @Test
+    public void reads_span_ends_from_payloads_collected_from_wrapped_spans() throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            final LeafReaderContext context = reader.leaves().get(0);
+            final Spans termSpans = getSpans(new MultiPositionSpanTermQuery(ANY_COLOR), context);
+            // Not a TermSpans, so the payloads are read through a PayloadSpanCollector
+            final Spans spans = new MultiPositionSpans.PayloadLengthSpans(
+                    new AcceptAllSpans(((MultiPositionSpans) termSpans).in));
+            assertThat(collectSpans(spans)).containsExactly("0:1-3", "0:6-9", "2:1-2");
+        }
+    }
+
+    @Test
+    public void spans_single_position_for_terms_without_payload() throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            final LeafReaderContext context = reader.leaves().get(0);
+            final Spans spans = getSpans(new MultiPositionSpanTermQuery(new Term(TEXT_FIELD, "red")), context);
+            assertThat(collectSpans(spans)).containsExactly("0:8-9", "2:1-2");
+        }
+    }
+
+    @Test
+    public void reads_span_ends_from_span_table() throws IOException {
+        reopenWriter(LengthEncoding.SPAN_TABLE);
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            final LeafReaderContext context = reader.leaves().get(0);
+            assertThat(context.reader().getFieldInfos().fieldInfo(COLOR_FIELD).hasPayloads()).isFalse();
+            final Spans spans = getSpans(new MultiPositionSpanTermQuery(ANY_COLOR, SPAN_TABLE_FIELD), context);
+            assertThat(spans).isInstanceOf(MultiPositionSpans.SpanTableLengthSpans.class);
+            assertThat(collectSpans(spans)).containsExactly("0:1-3", "0:6-9", "2:1-2");
+        }
+    }
+
+    @Test
+    public void reads_span_ends_from_span_table_after_advance() throws IOException {
+        reopenWriter(LengthEncoding.SPAN_TABLE);
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            final LeafReaderContext context = reader.leaves().get(0);
+            final Spans spans = getSpans(new MultiPositionSpanTermQuery(ANY_COLOR, SPAN_TABLE_FIELD), context);
+            assertThat(spans.advance(1)).isEqualTo(2);
+            assertThat(spans.nextStartPosition()).isEqualTo(1);
+            assertThat(spans.endPosition()).isEqualTo(2);
+            assertThat(spans.nextStartPosition()).isEqualTo(Spans.NO_MORE_POSITIONS);
+        }
+    }
+
+    @Test
+    public void spans_single_position_when_span_table_is_missing() throws IOException {
+        reopenWriter(LengthEncoding.SPAN_TABLE);
+        final Document doc = new Document();
+        doc.add(new TextField(COLOR_FIELD, "pale violet red dog", Store.NO));
+        analyzer.setMarkers(COLOR_FIELD, 0, 3);
+        writer.addDocument(doc);
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            final LeafReaderContext context = reader.leaves().get(0);
+            final Spans spans = getSpans(new MultiPositionSpanTermQuery(ANY_COLOR, SPAN_TABLE_FIELD), context);
+            assertThat(collectSpans(spans)).containsExactly("0:1-3", "0:6-9", "2:1-2", "3:0-1");
+        }
+    }
+
+    @Test
+    public void matches_documents_of_annotations() throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            final IndexSearcher searcher = new IndexSearcher(reader);
+            assertThat(searcher.count(new MultiPositionSpanTermQuery(ANY_COLOR))).isEqualTo(2);
+        }
+    }
+
+    static Spans getSpans(SpanQuery query, LeafReaderContext context) throws IOException {
+        final IndexSearcher searcher = new IndexSearcher(context.parent);
+        final SpanWeight weight = ((SpanQuery) searcher.rewrite(query)).createWeight(searcher, false);
+        return weight.getSpans(context, SpanWeight.Postings.POSITIONS);
+    }
+
+    /** Returns the spans as "doc:start-end" strings. */
+    static List<String> collectSpans(Spans spans) throws IOException {
+        final List<String> result = Lists.newArrayList();
+        if (spans == null) {
+            return result;
+        }
+        while (spans.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+            while (spans.nextStartPosition() != Spans.NO_MORE_POSITIONS) {
+                result.add(spans.docID() + ":" + spans.startPosition() + "-" + spans.endPosition());
+            }
+        }
+        return result;
+    }
+
+    private void reopenWriter(LengthEncoding lengthEncoding) throws IOException {
+        writer.deleteAll();
+        writer.close();
+        analyzer.close();
+        openWriter(lengthEncoding);
+    }
+
+    private void openWriter(LengthEncoding lengthEncoding) throws IOException {
+        this.lengthEncoding = lengthEncoding;
+        analyzer = new PreAnnotatedAnalyzer(lengthEncoding);
+        writer = new IndexWriter(dir, new IndexWriterConfig(new PerFieldAnalyzerWrapper(new WhitespaceAnalyzer(),
+                ImmutableMap.<String, Analyzer> of(COLOR_FIELD, analyzer))));
+        addDocument("quick rosy brown fox and a pale violet red dog", 1, 2, 6, 3);
+        addDocument("no colors here");
+        addDocument("only red dog", 1, 1);
+    }
+
+    private void addDocument(String text, int... markers) throws IOException {
+        final Document doc = new Document();
+        doc.add(new TextField(TEXT_FIELD, text, Store.NO));
+        doc.add(new TextField(COLOR_FIELD, text, Store.NO));
+        if (lengthEncoding == LengthEncoding.SPAN_TABLE) {
+            doc.add(AnnotationSpanTable.newField(COLOR_FIELD, markers));
+        }
+        analyzer.setMarkers(COLOR_FIELD, markers);
+        writer.addDocument(doc);
+    }
+
+    /** A {@link FilterSpans} which hides the {@link TermSpans} it wraps. */
+    private static final class AcceptAllSpans extends FilterSpans {
+
+        AcceptAllSpans(Spans in) {
+            super(in);
+        }
+
+        @Override
+        protected AcceptStatus accept(Spans candidate) {
+            return AcceptStatus.YES;
+        }
+
+    }
+
+}
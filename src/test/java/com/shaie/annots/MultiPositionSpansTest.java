@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots;
+
+import static com.shaie.annots.MultiPositionSpanTermQueryTest.*;
+import static org.fest.assertions.Assertions.*;
+
+import java.io.IOException;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.shaie.annots.filter.PreAnnotatedTokenFilter;
+
+/** Unit tests for the lazy decoding of the end positions by {@link MultiPositionSpans}. */
+public class MultiPositionSpansTest {
+
+    private static final String COLOR_FIELD = "color";
+    private static final Term ANY_COLOR = new Term(COLOR_FIELD, PreAnnotatedTokenFilter.ANY_ANNOTATION_TERM);
+
+    private final Directory dir = new RAMDirectory();
+    private final PreAnnotatedAnalyzer analyzer = new PreAnnotatedAnalyzer();
+    private IndexWriter writer;
+    private DirectoryReader reader;
+    private CountingSpans spans;
+
+    @Before
+    public void setUp() throws IOException {
+        writer = new IndexWriter(dir, new IndexWriterConfig(analyzer));
+        addDocument("quick rosy brown fox and a pale violet red dog", 1, 2, 6, 3);
+        addDocument("no colors here");
+        addDocument("only red dog", 1, 1);
+        addDocument("red and green", 0, 1, 2, 1);
+        reader = DirectoryReader.open(writer);
+        final MultiPositionSpans termSpans = (MultiPositionSpans) getSpans(new MultiPositionSpanTermQuery(ANY_COLOR),
+                reader.leaves().get(0));
+        spans = new CountingSpans(termSpans.in);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        reader.close();
+        writer.close();
+        analyzer.close();
+        dir.close();
+    }
+
+    @Test
+    public void does_not_decode_ends_which_are_not_asked_for() throws IOException {
+        assertThat(spans.nextDoc()).isEqualTo(0);
+        assertThat(spans.nextStartPosition()).isEqualTo(1);
+        assertThat(spans.nextStartPosition()).isEqualTo(6);
+        assertThat(spans.nextStartPosition()).isEqualTo(Spans.NO_MORE_POSITIONS);
+        assertThat(spans.endPosition()).isEqualTo(Spans.NO_MORE_POSITIONS);
+        assertThat(spans.numDecoded).isEqualTo(0);
+    }
+
+    @Test
+    public void decodes_end_once_per_position() throws IOException {
+        spans.nextDoc();
+        spans.nextStartPosition();
+        assertThat(spans.endPosition()).isEqualTo(3);
+        assertThat(spans.endPosition()).isEqualTo(3);
+        assertThat(spans.numDecoded).isEqualTo(1);
+        spans.nextStartPosition();
+        assertThat(spans.endPosition()).isEqualTo(9);
+        assertThat(spans.numDecoded).isEqualTo(2);
+    }
+
+    @Test
+    public void resets_end_on_next_doc() throws IOException {
+        spans.nextDoc();
+        spans.nextStartPosition();
+        assertThat(spans.nextDoc()).isEqualTo(2);
+        assertThat(spans.endPosition()).isEqualTo(-1);
+        assertThat(spans.numDecoded).isEqualTo(0);
+        assertThat(spans.nextStartPosition()).isEqualTo(1);
+        assertThat(spans.endPosition()).isEqualTo(2);
+        assertThat(spans.numDecoded).isEqualTo(1);
+    }
+
+    @Test
+    public void resets_end_on_advance() throws IOException {
+        spans.nextDoc();
+        spans.nextStartPosition();
+        assertThat(spans.endPosition()).isEqualTo(3);
+        assertThat(spans.advance(3)).isEqualTo(3);
+        assertThat(spans.endPosition()).isEqualTo(-1);
+        assertThat(spans.numDecoded).isEqualTo(1);
+        assertThat(spans.nextStartPosition()).isEqualTo(0);
+        assertThat(spans.nextStartPosition()).isEqualTo(2);
+        assertThat(spans.endPosition()).isEqualTo(3);
+        assertThat(spans.numDecoded).isEqualTo(2);
+    }
+
+    private void addDocument(String text, int... markers) throws IOException {
+        final Document doc = new Document();
+        doc.add(new TextField(COLOR_FIELD, text, Store.NO));
+        analyzer.setMarkers(COLOR_FIELD, markers);
+        writer.addDocument(doc);
+    }
+
+    /** Counts the lengths that are decoded, which are read from the payloads. */
+    private static final class CountingSpans extends MultiPositionSpans {
+
+        private final MultiPositionSpans payloadSpans;
+        int numDecoded;
+
+        CountingSpans(Spans in) {
+            super(in);
+            this.payloadSpans = new PayloadLengthSpans(in);
+        }
+
+        @Override
+        protected int readLength(int startPosition) throws IOException {
+            ++numDecoded;
+            return payloadSpans.readLength(startPosition);
+        }
+
+    }
+
+}
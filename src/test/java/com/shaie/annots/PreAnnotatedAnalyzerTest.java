@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots;
+
+import static com.shaie.annots.filter.PreAnnotatedTokenFilter.*;
+import static org.fest.assertions.Assertions.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/** Unit tests for {@link PreAnnotatedAnalyzer}. */
+public class PreAnnotatedAnalyzerTest {
+
+    private static final String COLOR_FIELD = "color";
+    private static final String ANIMAL_FIELD = "animal";
+    private static final String TEXT = "quick brown fox and a red dog";
+
+    private final PreAnnotatedAnalyzer analyzer = new PreAnnotatedAnalyzer();
+
+    @After
+    public void tearDown() {
+        analyzer.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fails_when_markers_are_null() {
+        analyzer.setMarkers(COLOR_FIELD, (int[]) null);
+    }
+
+    @Test
+    public void returns_tokens_of_annotated_field() throws IOException {
+        analyzer.setMarkers(COLOR_FIELD, 1, 1, 5, 1);
+        assertThat(tokens(COLOR_FIELD, TEXT)).containsExactly(ANY_ANNOTATION_TERM + ":1+1", "brown:1",
+                ANY_ANNOTATION_TERM + ":5+1", "red:5");
+    }
+
+    @Test
+    public void reuses_components_across_documents() throws IOException {
+        analyzer.setMarkers(COLOR_FIELD, 1, 1);
+        final TokenStream first = analyzer.tokenStream(COLOR_FIELD, TEXT);
+        assertThat(tokens(first)).containsExactly(ANY_ANNOTATION_TERM + ":1+1", "brown:1");
+
+        analyzer.setMarkers(COLOR_FIELD, 5, 2);
+        final TokenStream second = analyzer.tokenStream(COLOR_FIELD, TEXT);
+        assertThat(second).isSameAs(first);
+        assertThat(tokens(second)).containsExactly(ANY_ANNOTATION_TERM + ":5+2", "red:5", "dog:6");
+    }
+
+    @Test
+    public void uses_markers_of_each_field() throws IOException {
+        analyzer.setMarkers(COLOR_FIELD, 1, 1);
+        analyzer.setMarkers(ANIMAL_FIELD, 2, 1, 6, 1);
+        assertThat(tokens(ANIMAL_FIELD, TEXT)).containsExactly(ANY_ANNOTATION_TERM + ":2+1", "fox:2",
+                ANY_ANNOTATION_TERM + ":6+1", "dog:6");
+        assertThat(tokens(COLOR_FIELD, TEXT)).containsExactly(ANY_ANNOTATION_TERM + ":1+1", "brown:1");
+    }
+
+    @Test
+    public void returns_no_tokens_when_markers_are_not_set() throws IOException {
+        assertThat(tokens(COLOR_FIELD, TEXT)).isEmpty();
+    }
+
+    @Test
+    public void does_not_reuse_markers_of_previous_document() throws IOException {
+        analyzer.setMarkers(COLOR_FIELD, 1, 1);
+        assertThat(tokens(COLOR_FIELD, TEXT)).containsExactly(ANY_ANNOTATION_TERM + ":1+1", "brown:1");
+        assertThat(tokens(COLOR_FIELD, TEXT)).isEmpty();
+    }
+
+    @Test
+    public void does_not_use_markers_of_other_threads() throws Exception {
+        analyzer.setMarkers(COLOR_FIELD, 1, 1);
+        final AtomicReference<Object> result = new AtomicReference<>();
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    result.set(tokens(COLOR_FIELD, TEXT));
+                } catch (final Throwable t) {
+                    result.set(t);
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        assertThat(result.get()).isEqualTo(Lists.newArrayList());
+        assertThat(tokens(COLOR_FIELD, TEXT)).containsExactly(ANY_ANNOTATION_TERM + ":1+1", "brown:1");
+    }
+
+    private List<String> tokens(String fieldName, String text) throws IOException {
+        return tokens(analyzer.tokenStream(fieldName, text));
+    }
+
+    /** Returns the tokens as "term:pos" strings, with "+len" for tokens that have a payload. */
+    private static List<String> tokens(TokenStream ts) throws IOException {
+        final List<String> tokens = Lists.newArrayList();
+        try {
+            final CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+            final PositionIncrementAttribute posIncrAtt = ts.addAttribute(PositionIncrementAttribute.class);
+            final PayloadAttribute payloadAtt = ts.addAttribute(PayloadAttribute.class);
+            ts.reset();
+            int pos = -1;
+            while (ts.incrementToken()) {
+                pos += posIncrAtt.getPositionIncrement();
+                final String token = termAtt.toString() + ":" + pos;
+                // Annotation lengths in this test fit in a single VInt byte
+                tokens.add(payloadAtt.getPayload() == null ? token
+                        : token + "+" + payloadAtt.getPayload().bytes[payloadAtt.getPayload().offset]);
+            }
+            ts.end();
+        } finally {
+            ts.close();
+        }
+        return tokens;
+    }
+
+}
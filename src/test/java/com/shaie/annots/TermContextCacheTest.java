@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit tests for {@link TermContextCache}. */
+public class TermContextCacheTest {
+
+    private static final String FIELD = "f";
+    private static final Term TERM = new Term(FIELD, "red");
+
+    private final TermContextCache cache = new TermContextCache();
+    private final Directory dir = new RAMDirectory();
+    private IndexWriter writer;
+
+    @Before
+    public void setUp() throws IOException {
+        writer = new IndexWriter(dir, new IndexWriterConfig(new WhitespaceAnalyzer()));
+        addDocument("red dog");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        writer.close();
+        dir.close();
+    }
+
+    @Test
+    public void returns_same_context_for_same_reader() throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            final TermContext context = cache.get(reader.getContext(), TERM);
+            assertThat(context.docFreq()).isEqualTo(1);
+            assertThat(cache.get(reader.getContext(), TERM)).isSameAs(context);
+        }
+    }
+
+    @Test
+    public void returns_new_context_for_reopened_reader() throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            final TermContext context = cache.get(reader.getContext(), TERM);
+            addDocument("red fox");
+            try (DirectoryReader newReader = DirectoryReader.openIfChanged(reader, writer)) {
+                final TermContext newContext = cache.get(newReader.getContext(), TERM);
+                assertThat(newContext).isNotSameAs(context);
+                assertThat(newContext.docFreq()).isEqualTo(2);
+            }
+        }
+    }
+
+    @Test
+    public void drops_contexts_of_closed_reader() throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            cache.get(reader.getContext(), TERM);
+            assertThat(cache.size()).isEqualTo(1);
+        }
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    private void addDocument(String text) throws IOException {
+        final Document doc = new Document();
+        doc.add(new TextField(FIELD, text, Store.NO));
+        writer.addDocument(doc);
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots.annotator;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/** Unit tests for {@link AhoCorasickAnnotator}. */
+public class AhoCorasickAnnotatorTest {
+
+    private static final String COLOR = "color";
+    private static final String COMPANY = "company";
+    private static final String FIELD = "f";
+
+    private final AhoCorasickAnnotator annotator = AhoCorasickAnnotator.builder()
+            .add(COLOR, "red", "sea green", "dark sea green")
+            .add(COMPANY, "AT&T", "Red Hat")
+            .build();
+
+    @Test
+    public void finds_all_overlapping_matches() {
+        final List<String> matches = Lists.newArrayList();
+        annotator.match("the dark sea green hat", new AhoCorasickAnnotator.MatchHandler() {
+            @Override
+            public void onMatch(int start, int end, String type) {
+                matches.add(type + ":" + start + "-" + end);
+            }
+        });
+        assertThat(matches).containsExactly("color:4-18", "color:9-18");
+    }
+
+    @Test
+    public void accepts_only_whole_entries() {
+        assertThat(annotator.accept("sea green")).isTrue();
+        assertThat(annotator.accept("RED HAT")).isTrue();
+        assertThat(annotator.accept("sea")).isFalse();
+        assertThat(annotator.accept("reds")).isFalse();
+        assertThat(annotator.accept("at&t".toCharArray(), 0, 4)).isTrue();
+    }
+
+    @Test
+    public void matches_case_sensitively_if_requested() {
+        final AhoCorasickAnnotator caseSensitive = AhoCorasickAnnotator.builder()
+                .ignoreCase(false)
+                .add(COMPANY, "AT&T")
+                .build();
+        assertThat(caseSensitive.accept("AT&T")).isTrue();
+        assertThat(caseSensitive.accept("at&t")).isFalse();
+    }
+
+    @Test
+    public void maps_matches_to_token_positions() {
+        final Analyzer analyzer = new WhitespaceAnalyzer();
+        final Map<String, int[]> markers = annotator.annotate(analyzer, FIELD,
+                "a red hat on a dark sea green boat");
+        assertThat(markers.get(COLOR)).isEqualTo(new int[] { 1, 1, 5, 3, 6, 2 });
+        assertThat(markers.get(COMPANY)).isEqualTo(new int[] { 1, 2 });
+    }
+
+    @Test
+    public void ignores_matches_which_split_tokens() {
+        final Analyzer analyzer = new WhitespaceAnalyzer();
+        final Map<String, int[]> markers = annotator.annotate(analyzer, FIELD, "reddish tiredness");
+        assertThat(markers).isEmpty();
+    }
+
+    @Test
+    public void maps_matches_which_cross_punctuation_to_token_positions() {
+        final Analyzer analyzer = new StandardAnalyzer(CharArraySet.EMPTY_SET);
+        final Map<String, int[]> markers = annotator.annotate(analyzer, FIELD, "call AT&T now");
+        assertThat(markers.get(COMPANY)).isEqualTo(new int[] { 1, 2 });
+    }
+
+}
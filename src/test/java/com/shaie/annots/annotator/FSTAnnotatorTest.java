@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots.annotator;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableList;
+
+/** Unit tests for {@link FSTAnnotator}. */
+public class FSTAnnotatorTest {
+
+    private static final ImmutableList<String> WORDS = ImmutableList.of("red", "Green", "greenish", "blue", "red");
+
+    @Rule
+    public final ExpectedException expected = ExpectedException.none();
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void accepts_dictionary_words() {
+        final FSTAnnotator annotator = FSTAnnotator.fromWords(WORDS);
+        assertThat(annotator.accept("red")).isTrue();
+        assertThat(annotator.accept("green")).isTrue();
+        assertThat(annotator.accept("greenish")).isTrue();
+        assertThat(annotator.accept("blue")).isTrue();
+    }
+
+    @Test
+    public void does_not_accept_prefixes_or_extensions_of_words() {
+        final FSTAnnotator annotator = FSTAnnotator.fromWords(WORDS);
+        assertThat(annotator.accept("")).isFalse();
+        assertThat(annotator.accept("gree")).isFalse();
+        assertThat(annotator.accept("greeni")).isFalse();
+        assertThat(annotator.accept("reddish")).isFalse();
+        assertThat(annotator.accept((String) null)).isFalse();
+    }
+
+    @Test
+    public void accepts_words_ignoring_case() {
+        final FSTAnnotator annotator = FSTAnnotator.fromWords(WORDS);
+        assertThat(annotator.accept("RED")).isTrue();
+        assertThat(annotator.accept("GreenISH")).isTrue();
+    }
+
+    @Test
+    public void accepts_words_from_char_array_slice() {
+        final FSTAnnotator annotator = FSTAnnotator.fromWords(WORDS);
+        final char[] text = "a red fox".toCharArray();
+        assertThat(annotator.accept(text, 2, 3)).isTrue();
+        assertThat(annotator.accept(text, 2, 4)).isFalse();
+        assertThat(annotator.accept(text, 0, 1)).isFalse();
+    }
+
+    @Test
+    public void accepts_words_after_write_and_open() throws IOException {
+        final Path path = tempFolder.getRoot().toPath().resolve("words.fst");
+        FSTAnnotator.write(FSTAnnotator.sortedLowerCase(WORDS), path);
+        final FSTAnnotator annotator = FSTAnnotator.open(path);
+        assertThat(annotator.accept("green")).isTrue();
+        assertThat(annotator.accept("yellow")).isFalse();
+    }
+
+    @Test
+    public void fails_to_write_unsorted_words() throws IOException {
+        expected.expect(IllegalArgumentException.class);
+        FSTAnnotator.write(ImmutableList.of("red", "blue"), tempFolder.getRoot().toPath().resolve("words.fst"));
+    }
+
+    @Test
+    public void fails_to_build_from_no_words() {
+        expected.expect(IllegalArgumentException.class);
+        FSTAnnotator.fromWords(Collections.<String> emptyList());
+    }
+
+}
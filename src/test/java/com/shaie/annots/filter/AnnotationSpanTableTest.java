@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots.filter;
+
+import static org.fest.assertions.Assertions.*;
+
+import org.junit.Test;
+
+/** Unit tests for {@link AnnotationSpanTable}. */
+public class AnnotationSpanTableTest {
+
+    private final AnnotationSpanTable.Reader reader = new AnnotationSpanTable.Reader();
+
+    @Test
+    public void returns_lengths_of_annotations() {
+        reader.reset(AnnotationSpanTable.encode(0, 2, 3, 1, 200, 300));
+        assertThat(reader.length(0)).isEqualTo(2);
+        assertThat(reader.length(3)).isEqualTo(1);
+        assertThat(reader.length(200)).isEqualTo(300);
+    }
+
+    @Test
+    public void returns_zero_for_positions_without_annotations() {
+        reader.reset(AnnotationSpanTable.encode(2, 2, 5, 1));
+        assertThat(reader.length(0)).isEqualTo(0);
+        assertThat(reader.length(2)).isEqualTo(2);
+        assertThat(reader.length(3)).isEqualTo(0);
+        assertThat(reader.length(5)).isEqualTo(1);
+        assertThat(reader.length(6)).isEqualTo(0);
+    }
+
+    @Test
+    public void returns_lengths_of_unsorted_annotations() {
+        reader.reset(AnnotationSpanTable.encode(5, 1, 1, 2));
+        assertThat(reader.length(1)).isEqualTo(2);
+        assertThat(reader.length(5)).isEqualTo(1);
+    }
+
+    @Test
+    public void omits_covered_annotations() {
+        reader.reset(AnnotationSpanTable.encode(1, 3, 1, 1, 2, 1));
+        assertThat(reader.length(1)).isEqualTo(3);
+        assertThat(reader.length(2)).isEqualTo(0);
+    }
+
+    @Test
+    public void returns_zero_for_empty_table() {
+        reader.reset(AnnotationSpanTable.encode());
+        assertThat(reader.length(0)).isEqualTo(0);
+    }
+
+}
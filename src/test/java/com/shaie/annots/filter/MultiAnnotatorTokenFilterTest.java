@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots.filter;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.StopFilter;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.shaie.annots.annotator.Annotator;
+import com.shaie.annots.annotator.OneWordAnnotator;
+
+/** Unit tests for {@link MultiAnnotatorTokenFilter}. */
+public class MultiAnnotatorTokenFilterTest {
+
+    private static final String ONE = "one";
+    private static final String TWO = "two";
+    private static final String THREE = "three";
+    private static final String FOUR = "four";
+    private static final String ONE_TWO_THREE_FOUR = ONE + " " + TWO + " " + THREE + " " + FOUR;
+
+    private static final String FIELD1 = "f1";
+    private static final String FIELD2 = "f2";
+
+    private final Map<String, Annotator> annotators = ImmutableMap.<String, Annotator> of(
+            FIELD1, new OneWordAnnotator(ONE, THREE),
+            FIELD2, new OneWordAnnotator(THREE, FOUR));
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fails_when_no_annotators() throws IOException {
+        try (Tokenizer tok = new WhitespaceTokenizer()) {
+            new MultiAnnotatorTokenFilter(tok, Collections.<String, Annotator> emptyMap());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fails_when_requesting_sink_of_unknown_field() throws IOException {
+        try (Tokenizer tok = new WhitespaceTokenizer();
+                MultiAnnotatorTokenFilter f = new MultiAnnotatorTokenFilter(tok, annotators)) {
+            f.getSinkTokenStream("unknown");
+        }
+    }
+
+    @Test
+    public void returns_all_tokens() throws IOException {
+        try (Tokenizer tok = new WhitespaceTokenizer();
+                MultiAnnotatorTokenFilter f = new MultiAnnotatorTokenFilter(tok, annotators)) {
+            tok.setReader(new StringReader(ONE_TWO_THREE_FOUR));
+            assertTokens(f, ONE, 0, TWO, 1, THREE, 2, FOUR, 3);
+        }
+    }
+
+    @Test
+    public void routes_accepted_tokens_to_their_fields() throws IOException {
+        try (Tokenizer tok = new WhitespaceTokenizer();
+                MultiAnnotatorTokenFilter f = new MultiAnnotatorTokenFilter(tok, annotators)) {
+            tok.setReader(new StringReader(ONE_TWO_THREE_FOUR));
+            final TokenStream sink1 = f.getSinkTokenStream(FIELD1);
+            final TokenStream sink2 = f.getSinkTokenStream(FIELD2);
+            assertTokens(f, ONE, 0, TWO, 1, THREE, 2, FOUR, 3);
+            assertTokens(sink1, ONE, 0, THREE, 2);
+            assertTokens(sink2, THREE, 2, FOUR, 3);
+        }
+    }
+
+    @Test
+    public void routes_accepted_tokens_when_underlying_stream_skips_over_tokens() throws IOException {
+        try (Tokenizer tok = new WhitespaceTokenizer();
+                TokenFilter stop = new StopFilter(tok, new CharArraySet(ImmutableList.of(ONE, TWO), false));
+                MultiAnnotatorTokenFilter f = new MultiAnnotatorTokenFilter(stop, annotators)) {
+            tok.setReader(new StringReader(ONE_TWO_THREE_FOUR));
+            final TokenStream sink1 = f.getSinkTokenStream(FIELD1);
+            final TokenStream sink2 = f.getSinkTokenStream(FIELD2);
+            assertTokens(f, THREE, 2, FOUR, 3);
+            assertTokens(sink1, THREE, 2);
+            assertTokens(sink2, THREE, 2, FOUR, 3);
+        }
+    }
+
+    @Test
+    public void returns_tokens_of_new_text_when_reused() throws IOException {
+        try (Tokenizer tok = new WhitespaceTokenizer()) {
+            final MultiAnnotatorTokenFilter f = new MultiAnnotatorTokenFilter(tok, annotators);
+            final TokenStream sink1 = f.getSinkTokenStream(FIELD1);
+            final TokenStream sink2 = f.getSinkTokenStream(FIELD2);
+            tok.setReader(new StringReader(ONE_TWO_THREE_FOUR));
+            assertTokens(f, ONE, 0, TWO, 1, THREE, 2, FOUR, 3);
+            f.close();
+
+            tok.setReader(new StringReader(FOUR));
+            assertTokens(f, FOUR, 0);
+            assertTokens(sink1);
+            assertTokens(sink2, FOUR, 0);
+        }
+    }
+
+    /** Asserts the stream returns the given pairs of term and absolute position. */
+    private static void assertTokens(TokenStream ts, Object... termPositions) throws IOException {
+        ts.reset();
+        final CharTermAttribute term = ts.addAttribute(CharTermAttribute.class);
+        final PositionIncrementAttribute posIncrAtt = ts.addAttribute(PositionIncrementAttribute.class);
+        int pos = -1;
+        for (int i = 0; i < termPositions.length; i += 2) {
+            assertThat(ts.incrementToken()).isTrue();
+            pos += posIncrAtt.getPositionIncrement();
+            assertThat(term.toString()).isEqualTo((String) termPositions[i]);
+            assertThat(pos).isEqualTo(((Integer) termPositions[i + 1]).intValue());
+        }
+        assertThat(ts.incrementToken()).isFalse();
+        ts.end();
+    }
+
+}
@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.annots.filter;
+
+import static org.fest.assertions.Assertions.*;
+
+import static com.shaie.annots.filter.PreAnnotatedTokenFilter.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.commons.lang.builder.ToStringStyle;
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.StopFilter;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.shaie.annots.annotator.PhraseAnnotator;
+
+/** Unit tests for {@link PhraseAnnotatorTokenFilter}. */
+public class PhraseAnnotatorTokenFilterTest {
+
+    private static final String DARK = "dark";
+    private static final String SEA = "sea";
+    private static final String GREEN = "green";
+    private static final String RED = "red";
+    private static final String DOG = "dog";
+
+    private final PhraseAnnotator annotator = new PhraseAnnotator("dark sea green", "sea green", "green", "red");
+
+    @Test
+    public void returns_no_tokens_when_no_phrases_match() throws IOException {
+        try (Tokenizer tok = new WhitespaceTokenizer();
+                TokenFilter f = new PhraseAnnotatorTokenFilter(tok, annotator)) {
+            tok.setReader(new StringReader("dark sea blue dog"));
+            assertTokenInfos(f);
+        }
+    }
+
+    @Test
+    public void returns_tokens_of_single_word_phrase() throws IOException {
+        try (Tokenizer tok = new WhitespaceTokenizer();
+                TokenFilter f = new PhraseAnnotatorTokenFilter(tok, annotator)) {
+            tok.setReader(new StringReader("a red dog"));
+            assertTokenInfos(f, new TokenInfo(ANY_ANNOTATION_TERM, 1, 1), new TokenInfo(RED, 1));
+        }
+    }
+
+    @Test
+    public void returns_tokens_of_longest_phrase() throws IOException {
+        try (Tokenizer tok = new WhitespaceTokenizer();
+                TokenFilter f = new PhraseAnnotatorTokenFilter(tok, annotator)) {
+            tok.setReader(new StringReader("dark sea green dog"));
+            assertTokenInfos(f,
+                    new TokenInfo(ANY_ANNOTATION_TERM, 0, 3),
+                    new TokenInfo(DARK, 0),
+                    new TokenInfo(SEA, 1),
+                    new TokenInfo(GREEN, 2));
+        }
+    }
+
+    @Test
+    public void returns_tokens_of_shorter_phrase_when_longer_phrase_does_not_complete() throws IOException {
+        try (Tokenizer tok = new WhitespaceTokenizer();
+                TokenFilter f = new PhraseAnnotatorTokenFilter(tok, annotator)) {
+            tok.setReader(new StringReader("dark sea sea green red"));
+            assertTokenInfos(f,
+                    new TokenInfo(ANY_ANNOTATION_TERM, 2, 2),
+                    new TokenInfo(SEA, 2),
+                    new TokenInfo(GREEN, 3),
+                    new TokenInfo(ANY_ANNOTATION_TERM, 4, 1),
+                    new TokenInfo(RED, 4));
+        }
+    }
+
+    @Test
+    public void returns_tokens_of_adjacent_phrases() throws IOException {
+        try (Tokenizer tok = new WhitespaceTokenizer();
+                TokenFilter f = new PhraseAnnotatorTokenFilter(tok, annotator)) {
+            tok.setReader(new StringReader("dark sea green sea green red dog"));
+            assertTokenInfos(f,
+                    new TokenInfo(ANY_ANNOTATION_TERM, 0, 3),
+                    new TokenInfo(DARK, 0),
+                    new TokenInfo(SEA, 1),
+                    new TokenInfo(GREEN, 2),
+                    new TokenInfo(ANY_ANNOTATION_TERM, 3, 2),
+                    new TokenInfo(SEA, 3),
+                    new TokenInfo(GREEN, 4),
+                    new TokenInfo(ANY_ANNOTATION_TERM, 5, 1),
+                    new TokenInfo(RED, 5));
+        }
+    }
+
+    @Test
+    public void matches_phrases_ignoring_case() throws IOException {
+        try (Tokenizer tok = new WhitespaceTokenizer();
+                TokenFilter f = new PhraseAnnotatorTokenFilter(tok, annotator)) {
+            tok.setReader(new StringReader("Sea GREEN"));
+            assertTokenInfos(f,
+                    new TokenInfo(ANY_ANNOTATION_TERM, 0, 2),
+                    new TokenInfo("Sea", 0),
+                    new TokenInfo("GREEN", 1));
+        }
+    }
+
+    @Test
+    public void returns_tokens_when_underlying_stream_skips_over_tokens() throws IOException {
+        try (Tokenizer tok = new WhitespaceTokenizer();
+                TokenFilter stop = new StopFilter(tok, new CharArraySet(ImmutableList.of(DOG), false));
+                TokenFilter f = new PhraseAnnotatorTokenFilter(stop, annotator)) {
+            tok.setReader(new StringReader("dog dog red"));
+            assertTokenInfos(f, new TokenInfo(ANY_ANNOTATION_TERM, 2, 1), new TokenInfo(RED, 2));
+        }
+    }
+
+    @Test
+    public void returns_tokens_of_new_text_when_reused() throws IOException {
+        try (Tokenizer tok = new WhitespaceTokenizer()) {
+            final TokenFilter f = new PhraseAnnotatorTokenFilter(tok, annotator);
+            tok.setReader(new StringReader("dark sea green"));
+            assertTokenInfos(f,
+                    new TokenInfo(ANY_ANNOTATION_TERM, 0, 3),
+                    new TokenInfo(DARK, 0),
+                    new TokenInfo(SEA, 1),
+                    new TokenInfo(GREEN, 2));
+            f.end();
+            f.close();
+
+            tok.setReader(new StringReader("red"));
+            assertTokenInfos(f, new TokenInfo(ANY_ANNOTATION_TERM, 0, 1), new TokenInfo(RED, 0));
+        }
+    }
+
+    @Test
+    public void sets_final_position_increment() throws IOException {
+        try (Tokenizer tok = new WhitespaceTokenizer();
+                TokenFilter f = new PhraseAnnotatorTokenFilter(tok, annotator)) {
+            tok.setReader(new StringReader("red dog dog"));
+            assertTokenInfos(f, new TokenInfo(ANY_ANNOTATION_TERM, 0, 1), new TokenInfo(RED, 0));
+            f.end();
+            assertThat(f.getAttribute(PositionIncrementAttribute.class).getPositionIncrement()).isEqualTo(2);
+        }
+    }
+
+    private static void assertTokenInfos(TokenStream ts, TokenInfo... infos) throws IOException {
+        ts.reset();
+        final CharTermAttribute term = ts.addAttribute(CharTermAttribute.class);
+        final PositionIncrementAttribute posIncrAtt = ts.addAttribute(PositionIncrementAttribute.class);
+        final PayloadAttribute payloadAtt = ts.addAttribute(PayloadAttribute.class);
+        final ByteArrayDataInput in = new ByteArrayDataInput();
+        int pos = -1;
+        for (final TokenInfo info : infos) {
+            assertThat(ts.incrementToken()).isTrue();
+            pos += posIncrAtt.getPositionIncrement();
+            int len = -1;
+            final BytesRef payload = payloadAtt.getPayload();
+            if (info.len != -1) {
+                assertThat(payload).isNotNull();
+                in.reset(payload.bytes);
+                len = in.readVInt();
+            } else {
+                assertThat(payload).isNull();
+            }
+            assertThat(new TokenInfo(term.toString(), pos, len)).isEqualTo(info);
+        }
+        assertThat(ts.incrementToken()).isFalse();
+    }
+
+    private static class TokenInfo {
+        public final String term;
+        public final int pos;
+        public final int len;
+
+        public TokenInfo(String term, int pos) {
+            this(term, pos, -1);
+        }
+
+        public TokenInfo(String term, int pos, int len) {
+            this.term = term;
+            this.pos = pos;
+            this.len = len;
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder()
+                    .append(term)
+                    .append(pos)
+                    .append(len)
+                    .toHashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null) {
+                return false;
+            }
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+
+            final TokenInfo other = (TokenInfo) obj;
+            return new EqualsBuilder()
+                    .append(term, other.term)
+                    .append(pos, other.pos)
+                    .append(len, other.len)
+                    .isEquals();
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .append("term", term)
+                    .append("pos", pos)
+                    .append("len", len)
+                    .toString();
+        }
+    }
+
+}
\ No newline at end of file
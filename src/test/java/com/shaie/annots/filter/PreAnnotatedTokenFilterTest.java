@@ -66,6 +66,20 @@ public class PreAnnotatedTokenFilterTest {
         new PreAnnotatedTokenFilter(new EmptyTokenStream());
     }
 
+    @SuppressWarnings({ "unused", "resource" })
+    @Test
+    public void fails_if_annotation_marker_has_negative_position() {
+        expected.expect(IllegalArgumentException.class);
+        new PreAnnotatedTokenFilter(new EmptyTokenStream(), -1, 1);
+    }
+
+    @SuppressWarnings({ "unused", "resource" })
+    @Test
+    public void fails_if_annotation_marker_has_no_length() {
+        expected.expect(IllegalArgumentException.class);
+        new PreAnnotatedTokenFilter(new EmptyTokenStream(), 0, 0);
+    }
+
     @Test
     public void returns_false_when_no_more_tokens() throws IOException {
         try (TokenFilter f = new PreAnnotatedTokenFilter(new EmptyTokenStream(), 1, 2)) {
@@ -164,6 +178,79 @@ public class PreAnnotatedTokenFilterTest {
         }
     }
 
+    @Test
+    public void returns_tokens_when_annotation_markers_are_not_sorted() throws IOException {
+        try (Tokenizer tok = new WhitespaceTokenizer();
+                TokenFilter f = new PreAnnotatedTokenFilter(tok, 2, 1, 0, 1)) {
+            tok.setReader(new StringReader(ONE_TWO_THREE));
+            assertTokenInfos(f, new TokenInfo(ANY_ANNOTATION_TERM, 0, 1), new TokenInfo(ONE, 0),
+                    new TokenInfo(ANY_ANNOTATION_TERM, 2, 1), new TokenInfo(THREE, 2));
+        }
+    }
+
+    @Test
+    public void returns_tokens_of_new_annotation_markers_when_reused() throws IOException {
+        try (Tokenizer tok = new WhitespaceTokenizer()) {
+            final PreAnnotatedTokenFilter f = new PreAnnotatedTokenFilter(tok, 0, 1);
+            tok.setReader(new StringReader(ONE_TWO_THREE));
+            assertTokenInfos(f, new TokenInfo(ANY_ANNOTATION_TERM, 0, 1), new TokenInfo(ONE, 0));
+            f.end();
+            f.close();
+
+            f.setMarkers(1, 2);
+            tok.setReader(new StringReader(ONE_TWO_THREE));
+            assertTokenInfos(f, new TokenInfo(ANY_ANNOTATION_TERM, 1, 2), new TokenInfo(TWO, 1),
+                    new TokenInfo(THREE, 2));
+        }
+    }
+
+    @Test
+    public void returns_no_tokens_when_reused_with_empty_annotation_markers() throws IOException {
+        try (Tokenizer tok = new WhitespaceTokenizer();
+                PreAnnotatedTokenFilter f = new PreAnnotatedTokenFilter(tok, 0, 1)) {
+            f.setMarkers();
+            tok.setReader(new StringReader(ONE_TWO));
+            assertTokenInfos(f);
+        }
+    }
+
+    @Test
+    public void returns_tokens_when_underlying_stream_skips_over_many_annotations() throws IOException {
+        try (Tokenizer tok = new WhitespaceTokenizer();
+                TokenFilter stop = new StopFilter(tok, new CharArraySet(ImmutableList.of(TWO, THREE), false));
+                TokenFilter f = new PreAnnotatedTokenFilter(stop, 1, 1, 2, 1, 3, 1)) {
+            tok.setReader(new StringReader(ONE_TWO_THREE_FOUR));
+            assertTokenInfos(f, new TokenInfo(ANY_ANNOTATION_TERM, 3, 1), new TokenInfo(FOUR, 3));
+        }
+    }
+
+    @Test
+    public void sets_next_annotated_position() throws IOException {
+        try (Tokenizer tok = new WhitespaceTokenizer();
+                TokenFilter f = new PreAnnotatedTokenFilter(tok, 1, 1, 3, 1)) {
+            final NextAnnotatedPositionAttribute nextPosAtt = f.addAttribute(NextAnnotatedPositionAttribute.class);
+            tok.setReader(new StringReader(ONE_TWO_THREE_FOUR));
+            f.reset();
+            assertThat(nextPosAtt.getNextPosition()).isEqualTo(1);
+            assertThat(f.incrementToken()).isTrue(); // ANY_ANNOTATION_TERM
+            assertThat(f.incrementToken()).isTrue(); // TWO
+            assertThat(f.incrementToken()).isTrue(); // ANY_ANNOTATION_TERM
+            assertThat(nextPosAtt.getNextPosition()).isEqualTo(3);
+            assertThat(f.incrementToken()).isTrue(); // FOUR
+            assertThat(f.incrementToken()).isFalse();
+        }
+    }
+
+    @Test
+    public void does_not_set_payloads_when_lengths_are_in_span_table() throws IOException {
+        try (Tokenizer tok = new WhitespaceTokenizer();
+                TokenFilter f = new PreAnnotatedTokenFilter(tok, 1, 2).setLengthEncoding(LengthEncoding.SPAN_TABLE)) {
+            tok.setReader(new StringReader(ONE_TWO_THREE_FOUR));
+            assertTokenInfos(f, new TokenInfo(ANY_ANNOTATION_TERM, 1), new TokenInfo(TWO, 1),
+                    new TokenInfo(THREE, 2));
+        }
+    }
+
     private static void assertTokenInfos(TokenStream ts, TokenInfo... infos) throws IOException {
         ts.reset();
         final CharTermAttribute term = ts.addAttribute(CharTermAttribute.class);
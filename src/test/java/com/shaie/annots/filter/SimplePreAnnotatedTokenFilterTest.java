@@ -154,6 +154,21 @@ public class SimplePreAnnotatedTokenFilterTest {
         }
     }
 
+    @Test
+    public void returns_tokens_of_new_annotation_markers_when_reused() throws IOException {
+        try (Tokenizer tok = new WhitespaceTokenizer()) {
+            final SimplePreAnnotatedTokenFilter f = new SimplePreAnnotatedTokenFilter(tok, 0, 1);
+            tok.setReader(new StringReader(ONE_TWO_THREE));
+            assertTokenInfos(f, new TokenInfo(ONE, 0));
+            f.end();
+            f.close();
+
+            f.setMarkers(2, 1, 1, 1);
+            tok.setReader(new StringReader(ONE_TWO_THREE));
+            assertTokenInfos(f, new TokenInfo(TWO, 1), new TokenInfo(THREE, 2));
+        }
+    }
+
     private static void assertTokenInfos(TokenStream ts, TokenInfo... infos) throws IOException {
         ts.reset();
         final CharTermAttribute term = ts.addAttribute(CharTermAttribute.class);
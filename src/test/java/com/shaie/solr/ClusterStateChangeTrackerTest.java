@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.solr;
+
+import static com.shaie.solr.TestClusterStates.*;
+import static org.fest.assertions.Assertions.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.Set;
+
+import org.apache.solr.common.cloud.CollectionStateWatcher;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.Slice;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.shaie.solr.ClusterStateChangeTracker.Event;
+import com.shaie.solr.ClusterStateChangeTracker.EventType;
+
+/** Unit tests for {@link ClusterStateChangeTracker}. */
+public class ClusterStateChangeTrackerTest {
+
+    private static final String NODE1 = "127.0.0.1:8983_solr";
+    private static final String NODE2 = "127.0.0.1:8984_solr";
+    private static final Set<String> ALL_NODES = ImmutableSet.of(NODE1, NODE2);
+
+    private final ZkStateReader zkStateReader = mock(ZkStateReader.class);
+    private final List<Event> events = Lists.newArrayList();
+    private final ClusterStateChangeTracker tracker = new ClusterStateChangeTracker(zkStateReader,
+            new ClusterStateChangeTracker.Listener() {
+                @Override
+                public void onEvents(List<Event> newEvents) {
+                    events.addAll(newEvents);
+                }
+            });
+
+    @Test
+    public void first_state_of_collection_does_not_emit_events() {
+        tracker.update("c1", ALL_NODES, collection(Replica.State.DOWN, Replica.State.ACTIVE));
+        assertThat(events).isEmpty();
+    }
+
+    @Test
+    public void emits_replica_state_changes() {
+        tracker.update("c1", ALL_NODES, collection(Replica.State.ACTIVE, Replica.State.RECOVERING));
+        tracker.update("c1", ALL_NODES, collection(Replica.State.DOWN, Replica.State.ACTIVE));
+        assertThat(events).hasSize(2);
+        assertEvent(events.get(0), EventType.REPLICA_DOWN, "core_node1", NODE1);
+        assertEvent(events.get(1), EventType.REPLICA_ACTIVE, "core_node2", NODE2);
+    }
+
+    @Test
+    public void unchanged_state_does_not_emit_events() {
+        final DocCollection collection = collection(Replica.State.ACTIVE, Replica.State.ACTIVE);
+        tracker.update("c1", ALL_NODES, collection);
+        tracker.update("c1", ALL_NODES, collection);
+        tracker.update("c1", ALL_NODES, collection(Replica.State.ACTIVE, Replica.State.ACTIVE));
+        assertThat(events).isEmpty();
+    }
+
+    @Test
+    public void node_leaving_emits_node_and_replica_events() {
+        tracker.update("c1", ALL_NODES, collection(Replica.State.ACTIVE, Replica.State.ACTIVE));
+        final List<Event> result = tracker.update("c1", ImmutableSet.of(NODE1),
+                collection(Replica.State.ACTIVE, Replica.State.ACTIVE));
+        assertThat(result).isEqualTo(events);
+        assertThat(events).hasSize(2);
+        assertThat(events.get(0).getType()).isEqualTo(EventType.NODE_LEFT);
+        assertThat(events.get(0).getNodeName()).isEqualTo(NODE2);
+        assertEvent(events.get(1), EventType.REPLICA_DOWN, "core_node2", NODE2);
+
+        events.clear();
+        tracker.update("c1", ALL_NODES, collection(Replica.State.ACTIVE, Replica.State.ACTIVE));
+        assertThat(events).hasSize(2);
+        assertThat(events.get(0).getType()).isEqualTo(EventType.NODE_JOINED);
+        assertEvent(events.get(1), EventType.REPLICA_ACTIVE, "core_node2", NODE2);
+    }
+
+    @Test
+    public void emits_shard_state_changes() {
+        tracker.update("c1", ALL_NODES, newCollection("c1",
+                newSlice("shard1", newReplica("core_node1", NODE1, Replica.State.ACTIVE))));
+        tracker.update("c1", ALL_NODES, newCollection("c1",
+                newSlice("shard1", Slice.State.INACTIVE, newReplica("core_node1", NODE1, Replica.State.ACTIVE)),
+                newSlice("shard1_0", Slice.State.CONSTRUCTION)));
+        assertThat(events).hasSize(2);
+        assertThat(events.get(0).getType()).isEqualTo(EventType.SHARD_STATE_CHANGED);
+        assertThat(events.get(0).getShard()).isEqualTo("shard1");
+        assertThat(events.get(0).getPreviousShardState()).isEqualTo(Slice.State.ACTIVE);
+        assertThat(events.get(0).getShardState()).isEqualTo(Slice.State.INACTIVE);
+        assertThat(events.get(1).getShard()).isEqualTo("shard1_0");
+        assertThat(events.get(1).getPreviousShardState()).isNull();
+        assertThat(events.get(1).getShardState()).isEqualTo(Slice.State.CONSTRUCTION);
+    }
+
+    @Test
+    public void registers_and_removes_collection_watchers() {
+        tracker.watch("c1");
+        tracker.watch("c1");
+        verify(zkStateReader, times(1)).registerCollectionStateWatcher(eq("c1"), any(CollectionStateWatcher.class));
+        tracker.close();
+        verify(zkStateReader).removeCollectionStateWatcher(eq("c1"), any(CollectionStateWatcher.class));
+    }
+
+    private static DocCollection collection(Replica.State replica1State, Replica.State replica2State) {
+        return newCollection("c1", newSlice("shard1",
+                newReplica("core_node1", NODE1, replica1State),
+                newReplica("core_node2", NODE2, replica2State)));
+    }
+
+    private static void assertEvent(Event event, EventType type, String replicaName, String nodeName) {
+        assertThat(event.getType()).isEqualTo(type);
+        assertThat(event.getCollection()).isEqualTo("c1");
+        assertThat(event.getShard()).isEqualTo("shard1");
+        assertThat(event.getReplica().getName()).isEqualTo(replicaName);
+        assertThat(event.getNodeName()).isEqualTo(nodeName);
+    }
+
+}
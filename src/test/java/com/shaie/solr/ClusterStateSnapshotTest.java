@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.solr;
+
+import static com.shaie.solr.TestClusterStates.*;
+import static org.fest.assertions.Assertions.*;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.ClusterState.CollectionRef;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.Replica;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.shaie.solr.ClusterStateSnapshot.CollectionViews;
+
+/** Unit tests for {@link ClusterStateSnapshot}. */
+public class ClusterStateSnapshotTest {
+
+    private static final String NODE1 = "127.0.0.1:8983_solr";
+    private static final String NODE2 = "127.0.0.1:8984_solr";
+    private static final String NODE3 = "127.0.0.1:8985_solr";
+
+    private final Replica c1s1r1 = newReplica("core_node1", NODE1, Replica.State.ACTIVE);
+    private final Replica c1s1r2 = newReplica("core_node2", NODE2, Replica.State.ACTIVE);
+    private final Replica c1s2r1 = newReplica("core_node3", NODE1, Replica.State.ACTIVE);
+    private final Replica c1s2r2 = newReplica("core_node4", NODE3, Replica.State.ACTIVE);
+    private final Replica c2s1r1 = newReplica("core_node1", NODE1, Replica.State.ACTIVE);
+    private final Replica c2s1r2 = newReplica("core_node2", NODE2, Replica.State.DOWN);
+
+    private final ClusterStateSnapshot snapshot = new ClusterStateSnapshot(new ClusterState(1,
+            ImmutableSet.of(NODE1, NODE2),
+            ImmutableMap.of(
+                    "c1", newCollection("c1",
+                            newSlice("shard1", c1s1r1, c1s1r2),
+                            newSlice("shard2", c1s2r1, c1s2r2)),
+                    "c2", newCollection("c2",
+                            newSlice("shard1", c2s1r1, c2s1r2)))));
+
+    @Test
+    public void indexes_replicas_by_collection() {
+        assertThat(snapshot.getCollectionNames()).containsOnly("c1", "c2");
+        assertThat(snapshot.getAllCollectionReplicas("c1")).containsOnly(c1s1r1, c1s1r2, c1s2r1, c1s2r2);
+        assertThat(snapshot.getActiveReplicas("c1")).containsOnly(c1s1r1, c1s1r2, c1s2r1);
+        assertThat(snapshot.getInactiveReplicas("c1")).containsOnly(c1s2r2); // on a dead node
+        assertThat(snapshot.getActiveReplicas("c2")).containsOnly(c2s1r1);
+        assertThat(snapshot.getInactiveReplicas("c2")).containsOnly(c2s1r2);
+        assertThat(snapshot.isCollectionFullyActive("c1")).isFalse();
+        assertThat(snapshot.isCollectionFullyActive("c2")).isFalse();
+    }
+
+    @Test
+    public void indexes_replicas_by_node() {
+        assertThat(snapshot.getNodeReplicas(NODE1)).hasSize(3);
+        assertThat(snapshot.getNodeReplicas(NODE2)).hasSize(2);
+        assertThat(snapshot.getNodeReplicas(NODE3)).hasSize(1);
+        assertThat(snapshot.getNodeReplicas("unknown")).isEmpty();
+        final ReplicaInfo replicaInfo = snapshot.getNodeReplicas(NODE3).get(0);
+        assertThat(replicaInfo.getReplica()).isSameAs(c1s2r2);
+        assertThat(replicaInfo.getCollectionName()).isEqualTo("c1");
+        assertThat(replicaInfo.getShardName()).isEqualTo("shard2");
+    }
+
+    @Test
+    public void indexes_nodes_by_shard() {
+        assertThat(snapshot.getShardNodes("c1", "shard1")).containsOnly(NODE1, NODE2);
+        assertThat(snapshot.getShardNodes("c1", "shard2")).containsOnly(NODE1, NODE3);
+        assertThat(snapshot.getShardNodes("c1", "shard3")).isEmpty();
+        assertThat(snapshot.isNodeReplicaOfShard("c2", "shard1", NODE2)).isTrue();
+        assertThat(snapshot.isNodeReplicaOfShard("c2", "shard1", NODE3)).isFalse();
+    }
+
+    @Test
+    public void returns_nodes_with_down_replicas() {
+        final Map<String, ?> downReplicas = snapshot.getDownReplicas();
+        assertThat(downReplicas.keySet()).containsOnly(NODE2, NODE3);
+        assertThat(snapshot.getDownReplicas().get(NODE2)).hasSize(2);
+        assertThat(snapshot.isReplicaDown(c2s1r2)).isTrue();
+        assertThat(snapshot.isReplicaDown(c1s2r2)).isTrue();
+        assertThat(snapshot.isReplicaDown(c1s1r2)).isFalse();
+    }
+
+    @Test
+    public void reuses_views_of_unchanged_collections() {
+        final CollectionViews collectionViews = new CollectionViews();
+        final DocCollection c1 = newCollection("c1", newSlice("shard1", c1s1r1, c1s1r2));
+        final ClusterStateSnapshot first = new ClusterStateSnapshot(new ClusterState(1, ImmutableSet.of(NODE1, NODE2),
+                ImmutableMap.of("c1", c1, "c2", newCollection("c2", newSlice("shard1", c2s1r1)))),
+                collectionViews);
+        final ClusterStateSnapshot second = new ClusterStateSnapshot(new ClusterState(2, ImmutableSet.of(NODE1, NODE2),
+                ImmutableMap.of("c1", c1, "c2", newCollection("c2", newSlice("shard1", c2s1r1, c2s1r2)))),
+                collectionViews);
+
+        assertThat(second.getAllCollectionReplicas("c1")).isSameAs(first.getAllCollectionReplicas("c1"));
+        assertThat(first.getAllCollectionReplicas("c2")).containsOnly(c2s1r1);
+        assertThat(second.getAllCollectionReplicas("c2")).containsOnly(c2s1r1, c2s1r2);
+    }
+
+    @Test
+    public void reads_lazily_loaded_collections_again() {
+        final AtomicReference<DocCollection> c1 = new AtomicReference<>(
+                newCollection("c1", 1, newSlice("shard1", c1s1r1)));
+        final ClusterState clusterState = new ClusterState(ImmutableSet.of(NODE1, NODE2),
+                ImmutableMap.<String, CollectionRef> of("c1", new CollectionRef(null) {
+                    @Override
+                    public DocCollection get() {
+                        return c1.get();
+                    }
+
+                    @Override
+                    public boolean isLazilyLoaded() {
+                        return true;
+                    }
+                }), 1);
+        final CollectionViews collectionViews = new CollectionViews();
+        final ClusterStateSnapshot first = new ClusterStateSnapshot(clusterState, collectionViews);
+        assertThat(first.isSnapshotOf(clusterState)).isFalse();
+        assertThat(first.getAllCollectionReplicas("c1")).containsOnly(c1s1r1);
+
+        // A new version of the collection's state is seen by a new snapshot of the same cluster state
+        c1.set(newCollection("c1", 2, newSlice("shard1", c1s1r1, c1s1r2)));
+        final ClusterStateSnapshot second = new ClusterStateSnapshot(clusterState, collectionViews);
+        assertThat(second.getAllCollectionReplicas("c1")).containsOnly(c1s1r1, c1s1r2);
+        assertThat(second.getNodeReplicas(NODE2)).hasSize(1);
+        assertThat(first.getAllCollectionReplicas("c1")).containsOnly(c1s1r1);
+
+        // Reading the same version again reuses its view
+        c1.set(newCollection("c1", 2, newSlice("shard1", c1s1r1, c1s1r2)));
+        final ClusterStateSnapshot third = new ClusterStateSnapshot(clusterState, collectionViews);
+        assertThat(third.getAllCollectionReplicas("c1")).isSameAs(second.getAllCollectionReplicas("c1"));
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.solr;
+
+import static org.fest.assertions.Assertions.*;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.common.cloud.CollectionStatePredicate;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.shaie.solr.ClusterStateWaiter.LiveNodesCondition;
+import com.shaie.solr.utils.MiniSolrCloudClusterResource;
+import com.shaie.utils.Utils;
+
+/** Tests for {@link ClusterStateWaiter}, against a running cluster. */
+public class ClusterStateWaiterTest {
+
+    private static final String COLLECTION_NAME = "mycollection";
+    private static final long WAIT_TIMEOUT_SECONDS = 30;
+
+    @Rule
+    public final MiniSolrCloudClusterResource solrClusterResource = new MiniSolrCloudClusterResource(
+            Utils.getFileResource("solr/solr.xml"));
+
+    private final MiniSolrCloudCluster solrCluster = solrClusterResource.getSolrCluster();
+    private final CloudSolrClient solrClient = new CloudSolrClient.Builder()
+            .withZkHost(solrClusterResource.getConnectString())
+            .build();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private ZkStateReader zkStateReader;
+
+    @Before
+    public void setUp() {
+        solrClient.connect();
+        zkStateReader = solrClient.getZkStateReader();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        solrClient.close();
+    }
+
+    @Test
+    public void returns_true_when_node_disappears_from_live_nodes() throws Exception {
+        solrCluster.startSolrNodes("node1", "node2");
+        final String node2Name = SolrCloudUtils.baseUrlToNodeName(solrCluster.getBaseUrl("node2"));
+        final Future<Boolean> result = executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return ClusterStateWaiter.waitForNodeToDisappearFromLiveNodes(zkStateReader, node2Name,
+                        WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+        });
+
+        solrCluster.stopSolr("node2");
+        assertThat(result.get()).isTrue();
+        assertThat(zkStateReader.getZkClient().getChildren(ZkStateReader.LIVE_NODES_ZKNODE, null, true))
+                .excludes(node2Name);
+    }
+
+    @Test
+    public void returns_false_when_node_does_not_disappear_before_timeout() {
+        solrCluster.startSolrNodes("node1");
+        final String node1Name = SolrCloudUtils.baseUrlToNodeName(solrCluster.getBaseUrl("node1"));
+        assertThat(ClusterStateWaiter.waitForNodeToDisappearFromLiveNodes(zkStateReader, node1Name, 1,
+                TimeUnit.SECONDS)).isFalse();
+    }
+
+    @Test
+    public void fails_when_live_nodes_condition_fails_on_change() throws Exception {
+        solrCluster.startSolrNodes("node1", "node2");
+        final AtomicBoolean checked = new AtomicBoolean();
+        final Future<Boolean> result = executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return ClusterStateWaiter.waitForLiveNodes(zkStateReader, new LiveNodesCondition() {
+                    @Override
+                    public boolean isSatisfied(Set<String> liveNodes) {
+                        if (checked.compareAndSet(false, true)) {
+                            return false;
+                        }
+                        throw new IllegalStateException("condition failed");
+                    }
+                }, WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+        });
+
+        while (!checked.get()) {
+            Thread.sleep(10);
+        }
+        solrCluster.stopSolr("node2");
+        try {
+            result.get(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            fail("should have failed since the condition failed");
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause().getCause()).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    public void passes_null_state_of_nonexistent_collection() {
+        solrCluster.startSolrNodes("node1");
+        assertThat(ClusterStateWaiter.waitForCollectionState(zkStateReader, COLLECTION_NAME,
+                new CollectionStatePredicate() {
+                    @Override
+                    public boolean matches(Set<String> liveNodes, DocCollection collectionState) {
+                        return collectionState == null;
+                    }
+                }, WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void returns_false_when_collection_state_does_not_match_before_timeout() {
+        solrCluster.startSolrNodes("node1");
+        assertThat(ClusterStateWaiter.waitForCollectionState(zkStateReader, COLLECTION_NAME,
+                new CollectionStatePredicate() {
+                    @Override
+                    public boolean matches(Set<String> liveNodes, DocCollection collectionState) {
+                        return collectionState != null;
+                    }
+                }, 1, TimeUnit.SECONDS)).isFalse();
+    }
+
+}
@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.solr;
+
+import static com.shaie.solr.TestClusterStates.*;
+import static org.fest.assertions.Assertions.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.CollectionStatePredicate;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.Slice;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Table;
+import com.shaie.solr.solrj.CollectionAdminHelper;
+import com.shaie.solr.utils.MiniSolrCloudClusterResource;
+import com.shaie.utils.Utils;
+
+/** Tests for {@link LeaderRebalancer}. */
+public class LeaderRebalancerTest {
+
+    private static final String CONFIG_NAME = LeaderRebalancerTest.class.getSimpleName();
+    private static final String COLLECTION_NAME = "mycollection";
+    private static final int WAIT_TIMEOUT_SECONDS = 30;
+    private static final String NODE1 = "127.0.0.1:8983_solr";
+    private static final String NODE2 = "127.0.0.1:8984_solr";
+    private static final String NODE3 = "127.0.0.1:8985_solr";
+
+    @Rule
+    public final MiniSolrCloudClusterResource solrClusterResource = new MiniSolrCloudClusterResource(
+            Utils.getFileResource("solr/solr.xml"));
+
+    private final MiniSolrCloudCluster solrCluster = solrClusterResource.getSolrCluster();
+    private final CloudSolrClient solrClient = new CloudSolrClient.Builder()
+            .withZkHost(solrClusterResource.getConnectString())
+            .build();
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        solrClient.close();
+    }
+
+    @Test
+    public void spreads_leaders_of_a_running_cluster() throws Exception {
+        // All the shards are created on node1, so it leads all of them
+        solrCluster.startSolrNodes("node1");
+        SolrCloudUtils.uploadConfigToZk(solrClient, CONFIG_NAME, Utils.getPathResource("solr/conf"));
+        CollectionAdminRequest.createCollection(COLLECTION_NAME, CONFIG_NAME, 4, 1).setMaxShardsPerNode(4)
+                .process(solrClient);
+        solrCluster.startSolrNodes("node2");
+        final String node1Name = SolrCloudUtils.baseUrlToNodeName(solrCluster.getBaseUrl("node1"));
+        final String node2Name = SolrCloudUtils.baseUrlToNodeName(solrCluster.getBaseUrl("node2"));
+        final CollectionAdminHelper collectionAdminHelper = new CollectionAdminHelper(solrClient);
+        for (int i = 1; i <= 4; i++) {
+            collectionAdminHelper.addReplica(COLLECTION_NAME, "shard" + i, node2Name);
+        }
+        final ZkStateReader zkStateReader = solrClient.getZkStateReader();
+        assertThat(SolrCloudUtils.waitForAllActive(COLLECTION_NAME, zkStateReader, WAIT_TIMEOUT_SECONDS)).isTrue();
+        assertThat(leaderCounts(zkStateReader).count(node1Name)).isEqualTo(4);
+
+        final LeaderRebalancer rebalancer = new LeaderRebalancer(new CollectionsStateHelper(zkStateReader),
+                collectionAdminHelper, zkStateReader, executor, 1, 2, WAIT_TIMEOUT_SECONDS);
+        final LeaderRebalancer.Result result = rebalancer.rebalance();
+        assertThat(result.getNumRebalanced()).isEqualTo(1);
+        assertThat(result.getNumNotConverged()).isEqualTo(0);
+
+        final Multiset<String> leaderCounts = leaderCounts(zkStateReader);
+        assertThat(leaderCounts.count(node1Name)).isEqualTo(2);
+        assertThat(leaderCounts.count(node2Name)).isEqualTo(2);
+    }
+
+    @Test
+    public void limits_concurrently_rebalanced_collections() throws Exception {
+        final Map<String, DocCollection> collections = Maps.newLinkedHashMap();
+        final ImmutableTable.Builder<String, String, Replica> plan = ImmutableTable.builder();
+        for (int i = 1; i <= 6; i++) {
+            final Replica target = newReplica("core_node2", NODE2, Replica.State.ACTIVE);
+            collections.put("c" + i, newCollection("c" + i,
+                    newSlice("shard1", newLeader("core_node1", NODE1), target)));
+            plan.put("c" + i, "shard1", target);
+        }
+        final ZkStateReader zkStateReader = mock(ZkStateReader.class);
+        when(zkStateReader.getClusterState()).thenReturn(
+                new ClusterState(1, ImmutableSet.of(NODE1, NODE2), collections));
+        final CollectionAdminHelper collectionAdminHelper = mock(CollectionAdminHelper.class);
+        final ConcurrencyRecorder recorder = new ConcurrencyRecorder();
+        doAnswer(recorder).when(collectionAdminHelper).rebalanceLeaders(anyString(), anyInt(), anyInt());
+        doAnswer(recorder).when(zkStateReader).waitForState(anyString(), anyLong(), any(TimeUnit.class),
+                any(CollectionStatePredicate.class));
+
+        final LeaderRebalancer rebalancer = new LeaderRebalancer(mock(CollectionsStateHelper.class),
+                collectionAdminHelper, zkStateReader, executor, 2, 1, 1);
+        final LeaderRebalancer.Result result = rebalancer.rebalance(plan.build());
+        assertThat(result.getNumRebalanced()).isEqualTo(6);
+        assertThat(result.getNumNotConverged()).isEqualTo(0);
+        assertThat(recorder.maxRunning).isEqualTo(2);
+        verify(collectionAdminHelper, times(6)).addReplicaProperty(anyString(), eq("shard1"), eq("core_node2"),
+                eq(LeaderRebalancer.PREFERRED_LEADER), eq("true"));
+    }
+
+    @Test
+    public void spreads_leaders_over_nodes() {
+        final ClusterStateSnapshot snapshot = new ClusterStateSnapshot(new ClusterState(1,
+                ImmutableSet.of(NODE1, NODE2, NODE3),
+                ImmutableMap.of("c1", newCollection("c1",
+                        newSlice("shard1",
+                                newLeader("core_node1", NODE1),
+                                newReplica("core_node2", NODE2, Replica.State.ACTIVE)),
+                        newSlice("shard2",
+                                newLeader("core_node3", NODE1),
+                                newReplica("core_node4", NODE3, Replica.State.ACTIVE)),
+                        newSlice("shard3",
+                                newLeader("core_node5", NODE1),
+                                newReplica("core_node6", NODE2, Replica.State.ACTIVE),
+                                newReplica("core_node7", NODE3, Replica.State.ACTIVE))))));
+
+        final Table<String, String, Replica> plan = LeaderRebalancer.planLeaders(snapshot);
+        assertThat(plan.size()).isEqualTo(3);
+        // shard1 and shard2 have the fewest candidates, and shard1 is planned first by name, so it keeps its leader
+        assertThat(plan.get("c1", "shard1").getName()).isEqualTo("core_node1");
+        assertThat(plan.get("c1", "shard2").getName()).isEqualTo("core_node4");
+        assertThat(plan.get("c1", "shard3").getName()).isEqualTo("core_node6");
+    }
+
+    @Test
+    public void does_not_plan_inactive_replicas_as_leaders() {
+        final ClusterStateSnapshot snapshot = new ClusterStateSnapshot(new ClusterState(1,
+                ImmutableSet.of(NODE1, NODE2),
+                ImmutableMap.of("c1", newCollection("c1",
+                        newSlice("shard1",
+                                newLeader("core_node1", NODE1),
+                                newReplica("core_node2", NODE2, Replica.State.ACTIVE)),
+                        newSlice("shard2",
+                                newLeader("core_node3", NODE1),
+                                newReplica("core_node4", NODE2, Replica.State.RECOVERING),
+                                newReplica("core_node5", NODE3, Replica.State.ACTIVE))))));
+
+        final Table<String, String, Replica> plan = LeaderRebalancer.planLeaders(snapshot);
+        assertThat(plan.get("c1", "shard1").getName()).isEqualTo("core_node2");
+        assertThat(plan.get("c1", "shard2").getName()).isEqualTo("core_node3");
+    }
+
+    @Test
+    public void breaks_ties_by_collection_and_shard_name() {
+        final ClusterStateSnapshot snapshot = new ClusterStateSnapshot(new ClusterState(1,
+                ImmutableSet.of(NODE1, NODE2),
+                ImmutableMap.of(
+                        "c2", newCollection("c2",
+                                newSlice("shard1",
+                                        newLeader("core_node1", NODE1),
+                                        newReplica("core_node2", NODE2, Replica.State.ACTIVE))),
+                        "c1", newCollection("c1",
+                                newSlice("shard2",
+                                        newLeader("core_node1", NODE1),
+                                        newReplica("core_node2", NODE2, Replica.State.ACTIVE)),
+                                newSlice("shard1",
+                                        newLeader("core_node3", NODE1),
+                                        newReplica("core_node4", NODE2, Replica.State.ACTIVE))))));
+
+        final Table<String, String, Replica> plan = LeaderRebalancer.planLeaders(snapshot);
+        assertThat(plan.get("c1", "shard1").getName()).isEqualTo("core_node3");
+        assertThat(plan.get("c1", "shard2").getName()).isEqualTo("core_node2");
+        assertThat(plan.get("c2", "shard1").getName()).isEqualTo("core_node1");
+    }
+
+    private static Multiset<String> leaderCounts(ZkStateReader zkStateReader) {
+        final Multiset<String> leaderCounts = HashMultiset.create();
+        for (final Slice slice : zkStateReader.getClusterState().getCollection(COLLECTION_NAME).getSlices()) {
+            leaderCounts.add(slice.getLeader().getNodeName());
+        }
+        return leaderCounts;
+    }
+
+    /**
+     * Records the maximum number of collections which are rebalanced concurrently, from issuing REBALANCELEADERS until
+     * their leaders converge.
+     */
+    private static final class ConcurrencyRecorder implements Answer<Void> {
+
+        private int running;
+        int maxRunning;
+
+        @Override
+        public Void answer(InvocationOnMock invocation) throws Throwable {
+            if (invocation.getMethod().getName().equals("rebalanceLeaders")) {
+                synchronized (this) {
+                    ++running;
+                    maxRunning = Math.max(maxRunning, running);
+                }
+                // Give other collections a chance to be rebalanced concurrently
+                Thread.sleep(20);
+                return null;
+            }
+            synchronized (this) {
+                --running;
+            }
+            return null;
+        }
+
+    }
+
+}
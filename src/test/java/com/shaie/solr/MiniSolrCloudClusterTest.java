@@ -80,6 +80,21 @@ public class MiniSolrCloudClusterTest {
         }
     }
 
+    @Test
+    public void collection_exists_from_local_cluster_state() {
+        solrCluster.startSolrNodes("node1");
+        final CollectionAdminHelper zkCollectionAdminHelper =
+                new CollectionAdminHelper(solrClient, solrClient.getZkStateReader());
+        assertThat(zkCollectionAdminHelper.collectionExists(COLLECTION_NAME)).isFalse();
+
+        zkCollectionAdminHelper.createCollection(COLLECTION_NAME, 1, 1, CONFIG_NAME);
+        assertThat(zkCollectionAdminHelper.collectionExists(COLLECTION_NAME)).isTrue();
+        assertThat(collectionAdminHelper.collectionExists(COLLECTION_NAME)).isTrue();
+
+        zkCollectionAdminHelper.deleteCollection(COLLECTION_NAME);
+        assertThat(collectionAdminHelper.collectionExists(COLLECTION_NAME)).isFalse();
+    }
+
     private void createCollectionAndWaitForRecoveries() {
         collectionAdminHelper.createCollection(COLLECTION_NAME, 1, 2, CONFIG_NAME);
         SolrCloudUtils.waitForAllActive(COLLECTION_NAME, solrClient.getZkStateReader(), WAIT_TIMEOUT_SECONDS);
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.solr;
+
+import static com.shaie.solr.TestClusterStates.*;
+import static org.fest.assertions.Assertions.*;
+
+import java.util.List;
+
+import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.Replica;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.shaie.solr.ReplicaPlacementAdvisor.Advice;
+import com.shaie.solr.ReplicaPlacementAdvisor.Move;
+
+/** Unit tests for {@link ReplicaPlacementAdvisor}. */
+public class ReplicaPlacementAdvisorTest {
+
+    private static final String NODE1 = "127.0.0.1:8983_solr";
+    private static final String NODE2 = "127.0.0.1:8984_solr";
+    private static final String NODE3 = "127.0.0.1:8985_solr";
+    private static final String NODE4 = "127.0.0.1:8986_solr";
+
+    private final ClusterStateSnapshot snapshot = new ClusterStateSnapshot(new ClusterState(1,
+            ImmutableSet.of(NODE1, NODE2, NODE3),
+            ImmutableMap.of("c1", newCollection("c1",
+                    newSlice("shard1",
+                            newLeader("core_node1", NODE1),
+                            newReplica("core_node2", NODE1, Replica.State.ACTIVE)),
+                    newSlice("shard2",
+                            newLeader("core_node3", NODE1),
+                            newReplica("core_node4", NODE2, Replica.State.ACTIVE)),
+                    newSlice("shard3",
+                            newLeader("core_node5", NODE1),
+                            newReplica("core_node6", NODE2, Replica.State.ACTIVE))))));
+
+    @Test
+    public void moves_co_located_replicas_and_balances_nodes() {
+        final Advice advice = new ReplicaPlacementAdvisor(10).advise(snapshot);
+        assertThat(advice.getBefore().getCoLocatedReplicas()).isEqualTo(1);
+        assertThat(advice.getBefore().getReplicaStdDev()).isGreaterThan(0);
+
+        final List<Move> moves = advice.getMoves();
+        assertThat(moves).hasSize(2);
+        assertMove(moves.get(0), "core_node2", NODE1, NODE3);
+        assertMove(moves.get(1), "core_node3", NODE1, NODE3);
+
+        assertThat(advice.getAfter().getCoLocatedReplicas()).isEqualTo(0);
+        assertThat(advice.getAfter().getReplicaStdDev()).isEqualTo(0.0);
+        assertThat(advice.getAfter().getTotal()).isLessThan(advice.getBefore().getTotal());
+        assertThat(advice.toTakeoverPlan()).hasSize(2);
+    }
+
+    @Test
+    public void moved_leader_hands_leadership_to_remaining_replica() {
+        final ClusterStateSnapshot leadersOnOneNode = new ClusterStateSnapshot(new ClusterState(1,
+                ImmutableSet.of(NODE1, NODE2, NODE3),
+                ImmutableMap.of("c1", newCollection("c1",
+                        newSlice("shard1",
+                                newLeader("core_node1", NODE1),
+                                newReplica("core_node2", NODE2, Replica.State.ACTIVE)),
+                        newSlice("shard2",
+                                newLeader("core_node3", NODE1)),
+                        newSlice("shard3",
+                                newLeader("core_node4", NODE1)),
+                        newSlice("shard4",
+                                newLeader("core_node5", NODE2))))));
+        final Advice advice = new ReplicaPlacementAdvisor(10).advise(leadersOnOneNode);
+
+        // core_node1 is added to NODE3 as a non-leader, and core_node2 on NODE2 becomes shard1's leader, which leaves
+        // 2, 2 and 0 leaders on the nodes
+        assertThat(advice.getMoves()).hasSize(1);
+        assertMove(advice.getMoves().get(0), "core_node1", NODE1, NODE3);
+        assertThat(advice.getAfter().getReplicaStdDev()).isEqualTo(Math.sqrt(2.0 / 9));
+        assertThat(advice.getAfter().getLeaderStdDev()).isEqualTo(Math.sqrt(8.0 / 9));
+    }
+
+    @Test
+    public void balances_less_loaded_nodes_when_most_loaded_node_cannot_move() {
+        final ClusterStateSnapshot unbalanced = new ClusterStateSnapshot(new ClusterState(1,
+                ImmutableSet.of(NODE1, NODE2, NODE3, NODE4),
+                ImmutableMap.of("c1", newCollection("c1",
+                        newSlice("shard1",
+                                newLeader("core_node1", NODE1),
+                                newReplica("core_node2", NODE1, Replica.State.ACTIVE),
+                                newReplica("core_node3", NODE2, Replica.State.ACTIVE)),
+                        newSlice("shard2",
+                                newLeader("core_node4", NODE1),
+                                newReplica("core_node5", NODE1, Replica.State.ACTIVE),
+                                newReplica("core_node6", NODE2, Replica.State.ACTIVE)),
+                        newSlice("shard3",
+                                newLeader("core_node7", NODE1),
+                                newReplica("core_node8", NODE1, Replica.State.ACTIVE),
+                                newReplica("core_node9", NODE2, Replica.State.ACTIVE),
+                                newReplica("core_node10", NODE4, Replica.State.ACTIVE)),
+                        newSlice("shard4",
+                                newLeader("core_node11", NODE3),
+                                newReplica("core_node12", NODE4, Replica.State.ACTIVE)),
+                        newSlice("shard5",
+                                newLeader("core_node13", NODE2))))));
+        final Advice advice = new ReplicaPlacementAdvisor(10).advise(unbalanced);
+
+        // The co-located replicas can only move to NODE3, which makes it the most loaded node. Its only replica which
+        // was not moved yet belongs to shard4, which is also on NODE4, so NODE2 is balanced with NODE4 instead
+        final List<Move> moves = advice.getMoves();
+        assertThat(moves).hasSize(4);
+        assertMove(moves.get(0), "core_node2", NODE1, NODE3);
+        assertMove(moves.get(1), "core_node5", NODE1, NODE3);
+        assertMove(moves.get(2), "core_node8", NODE1, NODE3);
+        assertMove(moves.get(3), "core_node3", NODE2, NODE4);
+        assertThat(advice.getAfter().getCoLocatedReplicas()).isEqualTo(0);
+    }
+
+    @Test
+    public void prefers_moving_non_leaders() {
+        final Advice advice = new ReplicaPlacementAdvisor(1).advise(snapshot);
+        assertThat(advice.getMoves()).hasSize(1);
+        assertThat(CollectionsStateHelper.isLeader(advice.getMoves().get(0).getReplicaInfo().getReplica())).isFalse();
+    }
+
+    @Test
+    public void balanced_cluster_needs_no_moves() {
+        final ClusterStateSnapshot balanced = new ClusterStateSnapshot(new ClusterState(1,
+                ImmutableSet.of(NODE1, NODE2),
+                ImmutableMap.of("c1", newCollection("c1",
+                        newSlice("shard1",
+                                newLeader("core_node1", NODE1),
+                                newReplica("core_node2", NODE2, Replica.State.ACTIVE)),
+                        newSlice("shard2",
+                                newLeader("core_node3", NODE2),
+                                newReplica("core_node4", NODE1, Replica.State.ACTIVE))))));
+        final Advice advice = new ReplicaPlacementAdvisor(10).advise(balanced);
+        assertThat(advice.getMoves()).isEmpty();
+        assertThat(advice.getBefore().getTotal()).isEqualTo(0.0);
+    }
+
+    private static void assertMove(Move move, String replicaName, String fromNode, String toNode) {
+        assertThat(move.getReplicaInfo().getReplica().getName()).isEqualTo(replicaName);
+        assertThat(move.getFromNode()).isEqualTo(fromNode);
+        assertThat(move.getToNode()).isEqualTo(toNode);
+    }
+
+}
@@ -0,0 +1,293 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.solr;
+
+import static com.shaie.solr.TestClusterStates.*;
+import static org.fest.assertions.Assertions.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.CollectionStatePredicate;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.shaie.solr.ReplicaTakeover.Progress;
+import com.shaie.solr.solrj.AddReplicaResponse;
+import com.shaie.solr.solrj.CollectionAdminHelper;
+
+/** Unit tests for {@link ReplicaTakeover}. */
+public class ReplicaTakeoverTest {
+
+    private static final String NODE1 = "127.0.0.1:8983_solr";
+    private static final String NODE2 = "127.0.0.1:8984_solr";
+    private static final String NODE3 = "127.0.0.1:8985_solr";
+    private static final String NODE4 = "127.0.0.1:8986_solr";
+    private static final Set<String> LIVE_NODES = ImmutableSet.of(NODE2, NODE3, NODE4);
+    private static final String NEW_CORE = "c1_shard1_replica3";
+
+    private final ClusterStateSnapshot snapshot = new ClusterStateSnapshot(new ClusterState(1, LIVE_NODES,
+            ImmutableMap.of("c1", newCollection("c1",
+                    newSlice("shard1",
+                            newLeader("core_node1", NODE1),
+                            newReplica("core_node2", NODE2, Replica.State.ACTIVE)),
+                    newSlice("shard2",
+                            newLeader("core_node3", NODE1),
+                            newReplica("core_node4", NODE3, Replica.State.ACTIVE)),
+                    newSlice("shard3",
+                            newLeader("core_node5", NODE1),
+                            newReplica("core_node6", NODE2, Replica.State.ACTIVE))))));
+
+    private final CollectionsStateHelper collectionsStateHelper = mock(CollectionsStateHelper.class);
+    private final CollectionAdminHelper collectionAdminHelper = mock(CollectionAdminHelper.class);
+    private final ZkStateReader zkStateReader = mock(ZkStateReader.class);
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @Before
+    public void setUp() {
+        when(collectionsStateHelper.getSnapshot()).thenReturn(snapshot);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void plans_replicas_over_target_nodes_round_robin() {
+        final Map<ReplicaInfo, String> plan = newReplicaTakeover(1, 1).plan(
+                ImmutableList.of(replicaInfo("shard1", 0), replicaInfo("shard2", 0), replicaInfo("shard3", 0)),
+                ImmutableList.of(NODE3, NODE4));
+        assertThat(ImmutableList.copyOf(plan.values())).containsExactly(NODE3, NODE4, NODE3);
+    }
+
+    @Test
+    public void plan_skips_nodes_which_hold_a_replica_of_the_same_shard() {
+        final Map<ReplicaInfo, String> plan = newReplicaTakeover(1, 1).plan(
+                ImmutableList.of(replicaInfo("shard1", 0), replicaInfo("shard2", 0), replicaInfo("shard3", 0)),
+                ImmutableList.of(NODE2, NODE3, NODE4));
+        assertThat(ImmutableList.copyOf(plan.values())).containsExactly(NODE3, NODE4, NODE3);
+    }
+
+    @Test
+    public void plan_does_not_assign_two_replicas_of_the_same_shard_to_a_node() {
+        final ReplicaInfo replica1 = replicaInfo("shard1", 0);
+        final ReplicaInfo replica2 = replicaInfo("shard1", 1);
+        final Map<ReplicaInfo, String> plan = newReplicaTakeover(1, 1).plan(ImmutableList.of(replica1, replica2),
+                ImmutableList.of(NODE3));
+        assertThat(plan).isEqualTo(ImmutableMap.of(replica1, NODE3));
+    }
+
+    @Test
+    public void plan_does_not_assign_replicas_which_no_node_can_take() {
+        final ReplicaInfo replica1 = replicaInfo("shard1", 0);
+        final ReplicaInfo replica2 = replicaInfo("shard2", 0);
+        final Map<ReplicaInfo, String> plan = newReplicaTakeover(1, 1).plan(ImmutableList.of(replica1, replica2),
+                ImmutableList.of(NODE3));
+        assertThat(plan).isEqualTo(ImmutableMap.of(replica1, NODE3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void plan_fails_without_target_nodes() {
+        newReplicaTakeover(1, 1).plan(ImmutableList.of(replicaInfo("shard1", 0)), ImmutableList.<String> of());
+    }
+
+    @Test
+    public void deletes_replica_after_new_replica_becomes_active() throws Exception {
+        final AddReplicaResponse response = addReplicaResponse(true, NEW_CORE);
+        when(collectionAdminHelper.addReplica("c1", "shard1", NODE3)).thenReturn(response);
+        answerWaitForState(newReplica(NEW_CORE, NODE3, Replica.State.ACTIVE));
+
+        final Progress progress = newReplicaTakeover(1, 1).takeOver(ImmutableList.of(replicaInfo("shard1", 0)),
+                ImmutableList.of(NODE3), null);
+        assertThat(progress.getCompleted()).isEqualTo(1);
+        assertThat(progress.getFailed()).isEqualTo(0);
+
+        final InOrder inOrder = inOrder(collectionAdminHelper, zkStateReader);
+        inOrder.verify(collectionAdminHelper).addReplica("c1", "shard1", NODE3);
+        inOrder.verify(zkStateReader).waitForState(eq("c1"), anyLong(), any(TimeUnit.class),
+                any(CollectionStatePredicate.class));
+        inOrder.verify(collectionAdminHelper).deleteReplica("c1", "shard1", "core_node1");
+    }
+
+    @Test
+    public void does_not_delete_replica_if_new_replica_does_not_become_active() throws Exception {
+        final AddReplicaResponse response = addReplicaResponse(true, NEW_CORE);
+        when(collectionAdminHelper.addReplica("c1", "shard1", NODE3)).thenReturn(response);
+        answerWaitForState(newReplica(NEW_CORE, NODE3, Replica.State.RECOVERING));
+
+        final Progress progress = newReplicaTakeover(1, 1).takeOver(ImmutableList.of(replicaInfo("shard1", 0)),
+                ImmutableList.of(NODE3), null);
+        assertThat(progress.getCompleted()).isEqualTo(0);
+        assertThat(progress.getFailed()).isEqualTo(1);
+        verify(collectionAdminHelper, never()).deleteReplica(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void does_not_delete_replica_if_new_replica_cannot_be_added() {
+        final AddReplicaResponse response = addReplicaResponse(false, null);
+        when(collectionAdminHelper.addReplica("c1", "shard1", NODE3)).thenReturn(response);
+
+        final Progress progress = newReplicaTakeover(1, 1).takeOver(ImmutableList.of(replicaInfo("shard1", 0)),
+                ImmutableList.of(NODE3), null);
+        assertThat(progress.getFailed()).isEqualTo(1);
+        verify(collectionAdminHelper, never()).deleteReplica(anyString(), anyString(), anyString());
+        verifyZeroInteractions(zkStateReader);
+    }
+
+    @Test
+    public void counts_unassigned_replicas_as_failed() {
+        final AddReplicaResponse response = addReplicaResponse(true, NEW_CORE);
+        when(collectionAdminHelper.addReplica("c1", "shard1", NODE3)).thenReturn(response);
+
+        final AtomicInteger numProgressCalls = new AtomicInteger();
+        final Progress progress = newReplicaTakeover(1, 1).takeOver(
+                ImmutableList.of(replicaInfo("shard1", 0), replicaInfo("shard2", 0)), ImmutableList.of(NODE3),
+                new ReplicaTakeover.ProgressListener() {
+                    @Override
+                    public void onProgress(Progress progress) {
+                        numProgressCalls.incrementAndGet();
+                    }
+                });
+        assertThat(progress.getTotal()).isEqualTo(2);
+        assertThat(progress.getCompleted()).isEqualTo(1);
+        assertThat(progress.getFailed()).isEqualTo(1);
+        assertThat(numProgressCalls.get()).isEqualTo(1);
+        verify(collectionAdminHelper, never()).addReplica(eq("c1"), eq("shard2"), anyString());
+    }
+
+    @Test
+    public void limits_concurrent_takeovers_per_collection_and_node() {
+        final Map<ReplicaInfo, String> plan = Maps.newLinkedHashMap();
+        for (final String collection : ImmutableList.of("c1", "c2", "c3")) {
+            for (int i = 0; i < 4; i++) {
+                plan.put(new ReplicaInfo(newReplica("core_node" + i, NODE1, Replica.State.DOWN), collection,
+                        "shard" + i), i % 2 == 0 ? NODE2 : NODE3);
+            }
+        }
+        final ConcurrencyRecorder recorder = new ConcurrencyRecorder(addReplicaResponse(true, NEW_CORE));
+        when(collectionAdminHelper.addReplica(anyString(), anyString(), anyString())).thenAnswer(recorder);
+        doAnswer(recorder).when(collectionAdminHelper).deleteReplica(anyString(), anyString(), anyString());
+
+        final Progress progress = newReplicaTakeover(2, 2).takeOver(plan, null);
+        assertThat(progress.getCompleted()).isEqualTo(plan.size());
+        assertThat(recorder.maxPerCollection).isEqualTo(2);
+        assertThat(recorder.maxPerNode).isEqualTo(2);
+    }
+
+    private ReplicaTakeover newReplicaTakeover(int maxPerCollection, int maxPerNode) {
+        return new ReplicaTakeover(collectionsStateHelper, collectionAdminHelper, zkStateReader, executor,
+                maxPerCollection, maxPerNode, 1);
+    }
+
+    private ReplicaInfo replicaInfo(String shard, int index) {
+        final Replica replica = ImmutableList.copyOf(snapshot.getClusterState().getCollection("c1").getSlice(shard)
+                .getReplicas()).get(index);
+        return new ReplicaInfo(replica, "c1", shard);
+    }
+
+    private static AddReplicaResponse addReplicaResponse(boolean success, String coreName) {
+        final AddReplicaResponse response = mock(AddReplicaResponse.class);
+        when(response.isSuccess()).thenReturn(success);
+        when(response.getCoreName()).thenReturn(coreName);
+        return response;
+    }
+
+    /** Makes waiting for the state of "c1" succeed only if it is satisfied when "shard1" also has the given replica. */
+    private void answerWaitForState(final Replica newReplica) throws Exception {
+        final DocCollection collection = newCollection("c1", newSlice("shard1",
+                newLeader("core_node1", NODE1),
+                newReplica("core_node2", NODE2, Replica.State.ACTIVE),
+                newReplica));
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                final CollectionStatePredicate predicate = (CollectionStatePredicate) invocation.getArguments()[3];
+                if (!predicate.matches(LIVE_NODES, collection)) {
+                    throw new TimeoutException();
+                }
+                return null;
+            }
+        }).when(zkStateReader).waitForState(eq("c1"), anyLong(), any(TimeUnit.class),
+                any(CollectionStatePredicate.class));
+    }
+
+    /**
+     * Records the maximum number of takeovers that run concurrently per collection and per node, between adding the
+     * new replica and deleting the old one.
+     */
+    private static final class ConcurrencyRecorder implements Answer<AddReplicaResponse> {
+
+        private final Multiset<String> runningPerCollection = HashMultiset.create();
+        private final Multiset<String> runningPerNode = HashMultiset.create();
+        private final Map<String, String> collectionNodes = Maps.newHashMap();
+        private final AddReplicaResponse response;
+        int maxPerCollection;
+        int maxPerNode;
+
+        ConcurrencyRecorder(AddReplicaResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public AddReplicaResponse answer(InvocationOnMock invocation) throws Throwable {
+            final Object[] args = invocation.getArguments();
+            final String collection = (String) args[0];
+            final String key = collection + "/" + args[1];
+            if (invocation.getMethod().getName().equals("addReplica")) {
+                synchronized (this) {
+                    runningPerCollection.add(collection);
+                    runningPerNode.add((String) args[2]);
+                    collectionNodes.put(key, (String) args[2]);
+                    maxPerCollection = Math.max(maxPerCollection, runningPerCollection.count(collection));
+                    maxPerNode = Math.max(maxPerNode, runningPerNode.count(args[2]));
+                }
+                // Give other takeovers a chance to run concurrently
+                Thread.sleep(20);
+                return response;
+            }
+            synchronized (this) {
+                runningPerCollection.remove(collection);
+                runningPerNode.remove(collectionNodes.remove(key));
+            }
+            return null;
+        }
+
+    }
+
+}
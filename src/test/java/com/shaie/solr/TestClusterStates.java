@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.solr;
+
+import java.util.Map;
+
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.DocRouter;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.Slice;
+import org.apache.solr.common.cloud.ZkStateReader;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/** Creates cluster state objects for unit tests, without a running cluster. */
+public class TestClusterStates {
+
+    private TestClusterStates() {
+        // Should not be instantiated
+    }
+
+    public static Replica newReplica(String name, String nodeName, Replica.State state) {
+        return new Replica(name, newReplicaProps(name, nodeName, state));
+    }
+
+    public static Replica newLeader(String name, String nodeName) {
+        final Map<String, Object> props = newReplicaProps(name, nodeName, Replica.State.ACTIVE);
+        props.put(ZkStateReader.LEADER_PROP, "true");
+        return new Replica(name, props);
+    }
+
+    private static Map<String, Object> newReplicaProps(String name, String nodeName, Replica.State state) {
+        final Map<String, Object> props = Maps.newHashMap();
+        props.put(ZkStateReader.NODE_NAME_PROP, nodeName);
+        props.put(ZkStateReader.STATE_PROP, state.toString());
+        props.put(ZkStateReader.CORE_NAME_PROP, name);
+        return props;
+    }
+
+    public static Slice newSlice(String name, Replica... replicas) {
+        return newSlice(name, Slice.State.ACTIVE, replicas);
+    }
+
+    public static Slice newSlice(String name, Slice.State state, Replica... replicas) {
+        final ImmutableMap.Builder<String, Replica> replicasMap = ImmutableMap.builder();
+        for (final Replica replica : replicas) {
+            replicasMap.put(replica.getName(), replica);
+        }
+        final Map<String, Object> props = Maps.newHashMap();
+        props.put(ZkStateReader.STATE_PROP, state.toString());
+        return new Slice(name, replicasMap.build(), props);
+    }
+
+    public static DocCollection newCollection(String name, Slice... slices) {
+        final ImmutableMap.Builder<String, Slice> slicesMap = ImmutableMap.builder();
+        for (final Slice slice : slices) {
+            slicesMap.put(slice.getName(), slice);
+        }
+        return new DocCollection(name, slicesMap.build(), Maps.<String, Object> newHashMap(), DocRouter.DEFAULT);
+    }
+
+    /** Creates the state of a collection as read from its state.json with the given znode version. */
+    public static DocCollection newCollection(String name, int znodeVersion, Slice... slices) {
+        final DocCollection collection = newCollection(name, slices);
+        return new DocCollection(name, collection.getSlicesMap(), Maps.<String, Object> newHashMap(),
+                DocRouter.DEFAULT, znodeVersion, ZkStateReader.getCollectionPath(name));
+    }
+
+}
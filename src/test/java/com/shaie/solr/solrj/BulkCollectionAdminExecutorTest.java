@@ -0,0 +1,364 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.solr.solrj;
+
+import static org.fest.assertions.Assertions.*;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.apache.solr.client.solrj.response.RequestStatusState;
+import org.apache.solr.common.params.CommonAdminParams;
+import org.apache.solr.common.params.CoreAdminParams;
+import org.apache.solr.common.util.NamedList;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.shaie.solr.MiniSolrCloudCluster;
+import com.shaie.solr.SolrCloudUtils;
+import com.shaie.solr.utils.MiniSolrCloudClusterResource;
+import com.shaie.utils.Utils;
+import com.shaie.utils.Waiter;
+
+public class BulkCollectionAdminExecutorTest {
+
+    private static final String CONFIG_NAME = BulkCollectionAdminExecutorTest.class.getSimpleName();
+    private static final long WAIT_TIMEOUT_SECONDS = 30;
+    private static final int NUM_COLLECTIONS = 4;
+    private static final String NODE1 = "127.0.0.1:8983_solr";
+    private static final String NODE2 = "127.0.0.1:8984_solr";
+
+    @Rule
+    public final MiniSolrCloudClusterResource solrClusterResource = new MiniSolrCloudClusterResource(
+            Utils.getFileResource("solr/solr.xml"));
+
+    private final MiniSolrCloudCluster solrCluster = solrClusterResource.getSolrCluster();
+    private final CloudSolrClient solrClient = new CloudSolrClient.Builder()
+            .withZkHost(solrClusterResource.getConnectString())
+            .build();
+    private final CollectionAdminHelper collectionAdminHelper = new CollectionAdminHelper(solrClient);
+    private final BulkCollectionAdminExecutor executor =
+            new BulkCollectionAdminExecutor(solrClient, 2, 100, TimeUnit.MILLISECONDS);
+    private final FakeSolrClient fakeSolrClient = new FakeSolrClient();
+    private final List<BulkCollectionAdminExecutor> fakeExecutors = Lists.newArrayList();
+
+    @After
+    public void tearDown() {
+        executor.close();
+        for (final BulkCollectionAdminExecutor fakeExecutor : fakeExecutors) {
+            fakeExecutor.close();
+        }
+    }
+
+    @Test
+    public void creates_and_deletes_collections_concurrently() throws Exception {
+        solrCluster.startSolrNodes("node1", "node2");
+        SolrCloudUtils.uploadConfigToZk(solrClient, CONFIG_NAME, Utils.getPathResource("solr/conf"));
+
+        final List<CompletableFuture<CreateCollectionResponse>> creates = Lists.newArrayList();
+        for (int i = 0; i < NUM_COLLECTIONS; i++) {
+            creates.add(executor.createCollection("collection" + i, 1, 1, CONFIG_NAME));
+        }
+        for (int i = 0; i < NUM_COLLECTIONS; i++) {
+            final CreateCollectionResponse response = creates.get(i).get(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertThat(response.isSuccess()).isTrue();
+            assertThat(response.getCoreNames()).hasSize(1);
+            assertThat(collectionAdminHelper.collectionExists("collection" + i)).isTrue();
+        }
+        // The new replica recovers from its shard's leader, so the collections need to be active before it is added
+        for (int i = 0; i < NUM_COLLECTIONS; i++) {
+            assertThat(SolrCloudUtils.waitForAllActive("collection" + i, solrClient.getZkStateReader(),
+                    WAIT_TIMEOUT_SECONDS)).isTrue();
+        }
+
+        final String node2Name = SolrCloudUtils.baseUrlToNodeName(solrCluster.getBaseUrl("node2"));
+        final AddReplicaResponse addReplicaResponse = executor.addReplica("collection0", "shard1", node2Name)
+                .get(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertThat(addReplicaResponse.isSuccess()).isTrue();
+        assertThat(addReplicaResponse.getCoreName()).isNotNull();
+
+        final List<CompletableFuture<DeleteCollectionResponse>> deletes = Lists.newArrayList();
+        for (int i = 0; i < NUM_COLLECTIONS; i++) {
+            deletes.add(executor.deleteCollection("collection" + i));
+        }
+        for (int i = 0; i < NUM_COLLECTIONS; i++) {
+            assertThat(deletes.get(i).get(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS).isSuccess()).isTrue();
+            assertThat(collectionAdminHelper.collectionExists("collection" + i)).isFalse();
+        }
+        assertThat(executor.getInFlightCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void throttles_operations_per_node_and_starts_queued_ones_on_completion() throws Exception {
+        final BulkCollectionAdminExecutor fakeExecutor = newFakeExecutor(1, 2);
+        final CompletableFuture<AddReplicaResponse> node1First = fakeExecutor.addReplica("c1", "shard1", NODE1);
+        final CompletableFuture<AddReplicaResponse> node1Second = fakeExecutor.addReplica("c1", "shard2", NODE1);
+        final CompletableFuture<AddReplicaResponse> node2First = fakeExecutor.addReplica("c1", "shard1", NODE2);
+        waitForSubmissions(NODE1, 1);
+        waitForSubmissions(NODE2, 1);
+
+        // Give the queued operation a chance to be submitted, had it not been throttled
+        Thread.sleep(100);
+        assertThat(fakeSolrClient.getAsyncIds(NODE1)).hasSize(1);
+        assertThat(fakeExecutor.getInFlightCount()).isEqualTo(2);
+
+        fakeSolrClient.setState(fakeSolrClient.getAsyncIds(NODE1).get(0), RequestStatusState.COMPLETED);
+        assertThat(node1First.get(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS).isSuccess()).isTrue();
+        waitForSubmissions(NODE1, 2);
+        assertThat(node1Second.isDone()).isFalse();
+
+        fakeSolrClient.setState(fakeSolrClient.getAsyncIds(NODE1).get(1), RequestStatusState.COMPLETED);
+        fakeSolrClient.setState(fakeSolrClient.getAsyncIds(NODE2).get(0), RequestStatusState.COMPLETED);
+        assertThat(node1Second.get(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS).getCoreName()).isEqualTo("c1_shard2");
+        assertThat(node2First.get(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS).isSuccess()).isTrue();
+        assertThat(fakeExecutor.getInFlightCount()).isEqualTo(0);
+        assertThat(waitForDeletedAsyncIds(3)).isTrue();
+    }
+
+    @Test
+    public void completes_failed_operation_with_unsuccessful_response() throws Exception {
+        final BulkCollectionAdminExecutor fakeExecutor = newFakeExecutor(1, 2);
+        final CompletableFuture<AddReplicaResponse> future = fakeExecutor.addReplica("c1", "shard1", NODE1);
+        waitForSubmissions(NODE1, 1);
+
+        final String asyncId = fakeSolrClient.getAsyncIds(NODE1).get(0);
+        fakeSolrClient.setState(asyncId, RequestStatusState.FAILED);
+        final AddReplicaResponse response = future.get(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertThat(response.isSuccess()).isFalse();
+        assertThat(response.getCoreName()).isNull();
+        assertThat(waitForDeletedAsyncIds(1)).isTrue();
+        assertThat(fakeSolrClient.deletedAsyncIds).containsOnly(asyncId);
+    }
+
+    @Test
+    public void fails_operation_whose_request_is_not_found() throws Exception {
+        final BulkCollectionAdminExecutor fakeExecutor = newFakeExecutor(1, 2);
+        final CompletableFuture<AddReplicaResponse> future = fakeExecutor.addReplica("c1", "shard1", NODE1);
+        final CompletableFuture<AddReplicaResponse> queued = fakeExecutor.addReplica("c1", "shard2", NODE1);
+        waitForSubmissions(NODE1, 1);
+
+        fakeSolrClient.setState(fakeSolrClient.getAsyncIds(NODE1).get(0), RequestStatusState.NOT_FOUND);
+        assertThat(getFailure(future)).isInstanceOf(IllegalStateException.class);
+        assertThat(fakeSolrClient.deletedAsyncIds).isEmpty();
+
+        // The node's queued operation is started, even though the previous one failed
+        waitForSubmissions(NODE1, 2);
+        fakeSolrClient.setState(fakeSolrClient.getAsyncIds(NODE1).get(1), RequestStatusState.COMPLETED);
+        assertThat(queued.get(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS).isSuccess()).isTrue();
+    }
+
+    @Test
+    public void close_fails_incomplete_operations() throws Exception {
+        final BulkCollectionAdminExecutor fakeExecutor = newFakeExecutor(1, 2);
+        final CompletableFuture<AddReplicaResponse> inFlight = fakeExecutor.addReplica("c1", "shard1", NODE1);
+        final CompletableFuture<AddReplicaResponse> queued = fakeExecutor.addReplica("c1", "shard2", NODE1);
+        waitForSubmissions(NODE1, 1);
+
+        fakeExecutor.close();
+        assertThat(getFailure(inFlight)).isInstanceOf(IllegalStateException.class);
+        assertThat(getFailure(queued)).isInstanceOf(IllegalStateException.class);
+        assertThat(fakeExecutor.getInFlightCount()).isEqualTo(0);
+        try {
+            fakeExecutor.addReplica("c1", "shard3", NODE1);
+            fail("should not accept operations after close");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void fails_operation_which_does_not_complete_within_timeout() throws Exception {
+        final BulkCollectionAdminExecutor fakeExecutor = newFakeExecutor(1, 2, 100);
+        final CompletableFuture<AddReplicaResponse> timedOut = fakeExecutor.addReplica("c1", "shard1", NODE1);
+        final CompletableFuture<AddReplicaResponse> queued = fakeExecutor.addReplica("c1", "shard2", NODE1);
+        waitForSubmissions(NODE1, 1);
+
+        assertThat(getFailure(timedOut)).isInstanceOf(TimeoutException.class);
+
+        // The timed out operation releases its node's slot, so the queued operation is started
+        waitForSubmissions(NODE1, 2);
+        fakeSolrClient.setState(fakeSolrClient.getAsyncIds(NODE1).get(1), RequestStatusState.COMPLETED);
+        assertThat(queued.get(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS).isSuccess()).isTrue();
+        assertThat(fakeExecutor.getInFlightCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void checks_status_of_operations_concurrently() throws Exception {
+        final BulkCollectionAdminExecutor fakeExecutor = newFakeExecutor(1, 2);
+        fakeSolrClient.statusCheckMillis = 50;
+        for (int i = 0; i < 4; i++) {
+            fakeExecutor.addReplica("c1", "shard1", "127.0.0.1:" + (8983 + i) + "_solr");
+        }
+        assertThat(Waiter.waitFor(new Waiter.Condition() {
+            @Override
+            public boolean isSatisfied() {
+                return fakeSolrClient.maxRunningStatusChecks.get() == 2;
+            }
+        }, WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+
+        // Give more status checks a chance to run at once, had they not been bounded
+        Thread.sleep(200);
+        assertThat(fakeSolrClient.maxRunningStatusChecks.get()).isEqualTo(2);
+    }
+
+    private BulkCollectionAdminExecutor newFakeExecutor(int maxInFlightPerNode, int maxConcurrentRequests) {
+        return newFakeExecutor(maxInFlightPerNode, maxConcurrentRequests, TimeUnit.SECONDS.toMillis(
+                WAIT_TIMEOUT_SECONDS));
+    }
+
+    private BulkCollectionAdminExecutor newFakeExecutor(int maxInFlightPerNode, int maxConcurrentRequests,
+            long operationTimeoutMillis) {
+        final BulkCollectionAdminExecutor fakeExecutor = new BulkCollectionAdminExecutor(fakeSolrClient,
+                maxInFlightPerNode, maxConcurrentRequests, 10, operationTimeoutMillis, TimeUnit.MILLISECONDS);
+        fakeExecutors.add(fakeExecutor);
+        return fakeExecutor;
+    }
+
+    private void waitForSubmissions(final String nodeName, final int numSubmissions) {
+        final boolean success = Waiter.waitFor(new Waiter.Condition() {
+            @Override
+            public boolean isSatisfied() {
+                return fakeSolrClient.getAsyncIds(nodeName).size() == numSubmissions;
+            }
+        }, WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertThat(success).overridingErrorMessage("operations of node " + nodeName + " were not submitted")
+                .isTrue();
+    }
+
+    private boolean waitForDeletedAsyncIds(final int numDeleted) {
+        return Waiter.waitFor(new Waiter.Condition() {
+            @Override
+            public boolean isSatisfied() {
+                return fakeSolrClient.deletedAsyncIds.size() == numDeleted;
+            }
+        }, WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static Throwable getFailure(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            fail("should have failed");
+            return null;
+        } catch (final ExecutionException e) {
+            return e.getCause();
+        }
+    }
+
+    /**
+     * A client which records the submitted async requests, without sending them anywhere, and answers their status
+     * checks with states which are set by the tests. Requests which were not set a state are still running.
+     */
+    private static final class FakeSolrClient extends SolrClient {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Map<String, List<String>> nodeAsyncIds = Maps.newHashMap();
+        private final Map<String, String> asyncIdCoreNames = Maps.newConcurrentMap();
+        private final Map<String, RequestStatusState> states = Maps.newConcurrentMap();
+        final Set<String> deletedAsyncIds = Sets.newConcurrentHashSet();
+        final AtomicInteger maxRunningStatusChecks = new AtomicInteger();
+        private final AtomicInteger runningStatusChecks = new AtomicInteger();
+        volatile long statusCheckMillis = 0;
+
+        synchronized List<String> getAsyncIds(String nodeName) {
+            final List<String> asyncIds = nodeAsyncIds.get(nodeName);
+            return asyncIds == null ? Lists.<String> newArrayList() : Lists.newArrayList(asyncIds);
+        }
+
+        void setState(String asyncId, RequestStatusState state) {
+            states.put(asyncId, state);
+        }
+
+        @Override
+        public NamedList<Object> request(@SuppressWarnings("rawtypes") SolrRequest request, String collection)
+                throws SolrServerException, IOException {
+            if (request instanceof CollectionAdminRequest.RequestStatus) {
+                return checkStatus(((CollectionAdminRequest.RequestStatus) request).getRequestId());
+            }
+            if (request instanceof CollectionAdminRequest.DeleteStatus) {
+                deletedAsyncIds.add(request.getParams().get(CoreAdminParams.REQUESTID));
+                return new NamedList<>();
+            }
+            final String asyncId = request.getParams().get(CommonAdminParams.ASYNC);
+            asyncIdCoreNames.put(asyncId, request.getParams().get(CoreAdminParams.COLLECTION) + "_"
+                    + request.getParams().get(CoreAdminParams.SHARD));
+            synchronized (this) {
+                List<String> asyncIds = nodeAsyncIds.get(request.getParams().get(CoreAdminParams.NODE));
+                if (asyncIds == null) {
+                    asyncIds = Lists.newArrayList();
+                    nodeAsyncIds.put(request.getParams().get(CoreAdminParams.NODE), asyncIds);
+                }
+                asyncIds.add(asyncId);
+            }
+            return new NamedList<>();
+        }
+
+        private NamedList<Object> checkStatus(String asyncId) {
+            final int running = runningStatusChecks.incrementAndGet();
+            try {
+                synchronized (maxRunningStatusChecks) {
+                    maxRunningStatusChecks.set(Math.max(maxRunningStatusChecks.get(), running));
+                }
+                Thread.sleep(statusCheckMillis);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } finally {
+                runningStatusChecks.decrementAndGet();
+            }
+
+            final RequestStatusState state =
+                    states.containsKey(asyncId) ? states.get(asyncId) : RequestStatusState.RUNNING;
+            final NamedList<Object> status = new NamedList<>();
+            status.add("state", state.getKey());
+            final NamedList<Object> response = new NamedList<>();
+            response.add("status", status);
+            if (state == RequestStatusState.COMPLETED) {
+                final NamedList<Object> core = new NamedList<>();
+                core.add("core", asyncIdCoreNames.get(asyncId));
+                final NamedList<Object> success = new NamedList<>();
+                success.add("node", core);
+                response.add("success", success);
+            }
+            return response;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to close
+        }
+
+    }
+
+}
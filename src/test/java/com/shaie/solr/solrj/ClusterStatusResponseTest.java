@@ -33,7 +33,8 @@ import org.junit.Rule;
 import org.junit.Test;
 
 import com.google.common.collect.ImmutableMap;
-import com.google.inject.internal.Lists;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.shaie.solr.MiniSolrCloudCluster;
 import com.shaie.solr.SolrCloudUtils;
 import com.shaie.solr.solrj.ClusterStatusResponse.Collection;
@@ -81,6 +82,33 @@ public class ClusterStatusResponseTest {
         assertResponseCollection2(collections.get("collection2"));
     }
 
+    @Test
+    public void lazy_cluster_status_parsed_successfully() throws SolrServerException, IOException {
+        final String[] nodeIds = new String[] { "node1", "node2", "node3", "node4" };
+        solrCluster.startSolrNodes(nodeIds);
+
+        initCluster();
+        createAlias();
+
+        final LazyClusterStatusResponse response = collectionAdminHelper.getClusterStatus();
+        assertThat(response.getLiveNodes()).hasSize(nodeIds.length);
+        assertThat(response.getAliases()).isEqualTo(ImmutableMap.of("both", "collection1,collection2"));
+        assertThat(response.getCollectionNames()).containsOnly("collection1", "collection2");
+        assertThat(response.getCollection("collection1")).isSameAs(response.getCollections().get("collection1"));
+        assertThat(response.getCollection("collection3")).isNull();
+        assertResponseCollection1(response.getCollection("collection1"));
+        assertResponseCollection2(response.getCollections().get("collection2"));
+
+        final LazyClusterStatusResponse collection2Response =
+                collectionAdminHelper.getClusterStatus(ImmutableSet.of("collection2"));
+        assertThat(collection2Response.getCollectionNames()).containsOnly("collection2");
+        assertResponseCollection2(collection2Response.getCollection("collection2"));
+
+        final LazyClusterStatusResponse filteredResponse =
+                collectionAdminHelper.getClusterStatus(ImmutableSet.of("collection1", "collection3"));
+        assertThat(filteredResponse.getCollectionNames()).containsOnly("collection1");
+    }
+
     private void initCluster() {
         uploadConfiguration();
         createCollectionAndWaitForRecoveries("collection1", 2, 2);
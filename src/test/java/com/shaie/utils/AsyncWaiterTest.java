@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.utils;
+
+import static org.fest.assertions.Assertions.*;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/** Unit tests for {@link AsyncWaiter}. */
+public class AsyncWaiterTest {
+
+    private static final AsyncWaiter.Backoff FAST_BACKOFF =
+            new AsyncWaiter.Backoff(1, 5, TimeUnit.MILLISECONDS, 2, 0.5);
+
+    @Test
+    public void completes_with_true_once_condition_is_satisfied() throws Exception {
+        final AtomicInteger polls = new AtomicInteger();
+        final CompletableFuture<Boolean> wait = AsyncWaiter.waitFor(new Waiter.Condition() {
+            @Override
+            public boolean isSatisfied() {
+                return polls.incrementAndGet() == 3;
+            }
+        }, 10, TimeUnit.SECONDS, FAST_BACKOFF);
+        assertThat(wait.get(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(polls.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void completes_with_false_when_timeout_expires() throws Exception {
+        final CompletableFuture<Boolean> wait = AsyncWaiter.waitFor(condition(new AtomicBoolean()), 50,
+                TimeUnit.MILLISECONDS, FAST_BACKOFF);
+        assertThat(wait.get(10, TimeUnit.SECONDS)).isFalse();
+    }
+
+    @Test
+    public void completes_exceptionally_when_condition_fails() throws Exception {
+        final CompletableFuture<Boolean> wait = AsyncWaiter.waitFor(new Waiter.Condition() {
+            @Override
+            public boolean isSatisfied() {
+                throw new IllegalStateException("boom");
+            }
+        }, 10, TimeUnit.SECONDS, FAST_BACKOFF);
+        try {
+            wait.get(10, TimeUnit.SECONDS);
+            fail("expected the wait to fail");
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    public void stops_polling_when_cancelled() throws Exception {
+        final AtomicInteger polls = new AtomicInteger();
+        final CompletableFuture<Boolean> wait = AsyncWaiter.waitFor(new Waiter.Condition() {
+            @Override
+            public boolean isSatisfied() {
+                polls.incrementAndGet();
+                return false;
+            }
+        }, 10, TimeUnit.SECONDS, AsyncWaiter.Backoff.fixed(1, TimeUnit.MILLISECONDS));
+        Thread.sleep(20);
+        wait.cancel(true);
+        final int pollsOnCancel = polls.get();
+        Thread.sleep(50);
+        assertThat(wait.isCancelled()).isTrue();
+        assertThat(polls.get()).isLessThanOrEqualTo(pollsOnCancel + 1);
+    }
+
+    @Test
+    public void allOf_completes_with_true_when_all_conditions_are_satisfied() throws Exception {
+        final AtomicBoolean first = new AtomicBoolean();
+        final AtomicBoolean second = new AtomicBoolean();
+        final CompletableFuture<Boolean> wait = AsyncWaiter.allOf(ImmutableList.of(
+                AsyncWaiter.waitFor(condition(first), 10, TimeUnit.SECONDS, FAST_BACKOFF),
+                AsyncWaiter.waitFor(condition(second), 10, TimeUnit.SECONDS, FAST_BACKOFF)));
+        first.set(true);
+        Thread.sleep(20);
+        assertThat(wait.isDone()).isFalse();
+        second.set(true);
+        assertThat(wait.get(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void allOf_completes_with_false_and_cancels_others_when_any_wait_times_out() throws Exception {
+        final CompletableFuture<Boolean> longWait = AsyncWaiter.waitFor(condition(new AtomicBoolean()), 10,
+                TimeUnit.SECONDS, FAST_BACKOFF);
+        final CompletableFuture<Boolean> wait = AsyncWaiter.allOf(ImmutableList.of(longWait,
+                AsyncWaiter.waitFor(condition(new AtomicBoolean()), 20, TimeUnit.MILLISECONDS, FAST_BACKOFF)));
+        assertThat(wait.get(5, TimeUnit.SECONDS)).isFalse();
+        assertThat(longWait.isCancelled()).isTrue();
+    }
+
+    @Test
+    public void anyOf_completes_with_true_and_cancels_others_when_any_condition_is_satisfied() throws Exception {
+        final AtomicBoolean satisfied = new AtomicBoolean();
+        final CompletableFuture<Boolean> otherWait = AsyncWaiter.waitFor(condition(new AtomicBoolean()), 10,
+                TimeUnit.SECONDS, FAST_BACKOFF);
+        final CompletableFuture<Boolean> wait = AsyncWaiter.anyOf(ImmutableList.of(otherWait,
+                AsyncWaiter.waitFor(condition(satisfied), 10, TimeUnit.SECONDS, FAST_BACKOFF)));
+        satisfied.set(true);
+        assertThat(wait.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(otherWait.isCancelled()).isTrue();
+    }
+
+    @Test
+    public void anyOf_completes_with_false_when_all_waits_time_out() throws Exception {
+        final CompletableFuture<Boolean> wait = AsyncWaiter.anyOf(ImmutableList.of(
+                AsyncWaiter.waitFor(condition(new AtomicBoolean()), 10, TimeUnit.MILLISECONDS, FAST_BACKOFF),
+                AsyncWaiter.waitFor(condition(new AtomicBoolean()), 30, TimeUnit.MILLISECONDS, FAST_BACKOFF)));
+        assertThat(wait.get(5, TimeUnit.SECONDS)).isFalse();
+    }
+
+    private static Waiter.Condition condition(final AtomicBoolean satisfied) {
+        return new Waiter.Condition() {
+            @Override
+            public boolean isSatisfied() {
+                return satisfied.get();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,364 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shaie.utils;
+
+import static org.fest.assertions.Assertions.*;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.payloads.DelimitedPayloadTokenFilter;
+import org.apache.lucene.analysis.payloads.IdentityEncoder;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.InputStreamDataInput;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.shaie.utils.PostingsDumpSink.DocPostings;
+
+/** Unit tests for {@link PostingsDumpSinks} and {@link IndexUtils#dumpPostings}. */
+public class PostingsDumpSinksTest {
+
+    private static final String TEXT_FIELD = "text";
+    private static final String PAYLOAD_FIELD = "payload";
+    private static final String ID_FIELD = "id";
+    private static final String[] FIELDS = { TEXT_FIELD, PAYLOAD_FIELD, ID_FIELD };
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final Directory dir = new RAMDirectory();
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private DirectoryReader reader;
+    private Path outDir;
+
+    @Before
+    public void setUp() throws IOException {
+        final Analyzer payloadAnalyzer = new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                final Tokenizer tokenizer = new WhitespaceTokenizer();
+                return new TokenStreamComponents(tokenizer,
+                        new DelimitedPayloadTokenFilter(tokenizer, '|', new IdentityEncoder()));
+            }
+        };
+        final Analyzer analyzer = new PerFieldAnalyzerWrapper(new WhitespaceAnalyzer(),
+                ImmutableMap.of(PAYLOAD_FIELD, payloadAnalyzer));
+        try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(analyzer))) {
+            addDocument(writer, "a", "red fox red", "red|ab fox red|c");
+            writer.commit();
+            addDocument(writer, "b", "blue fox", "blue");
+        }
+        reader = DirectoryReader.open(dir);
+        assertThat(reader.leaves()).hasSize(2);
+        outDir = tempFolder.getRoot().toPath();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        reader.close();
+        dir.close();
+    }
+
+    @Test
+    public void text_sink_writes_postings_of_every_segment() throws IOException {
+        IndexUtils.dumpPostings(reader, executor, PostingsDumpSinks.text(outDir), FIELDS);
+        assertThat(tempFolder.getRoot().list()).containsOnly("postings-0.txt", "postings-1.txt");
+        assertThat(readLines("postings-0.txt")).containsExactly(
+                "Terms for field [text], with positional info:",
+                "  fox",
+                "    doc=0, freq=1, pos=[1]",
+                "  red",
+                "    doc=0, freq=2, pos=[0, 2]",
+                "Terms for field [payload], with positional info:",
+                "  fox",
+                "    doc=0, freq=1, pos=[1]",
+                "  red",
+                "    doc=0, freq=2",
+                "      pos=0, payload=[61 62]",
+                "      pos=2, payload=[63]",
+                "Terms for field [id], with positional info:",
+                "  a",
+                "    doc=0, freq=1");
+        assertThat(readLines("postings-1.txt")).containsExactly(
+                "Terms for field [text], with positional info:",
+                "  blue",
+                "    doc=1, freq=1, pos=[0]",
+                "  fox",
+                "    doc=1, freq=1, pos=[1]",
+                "Terms for field [payload], with positional info:",
+                "  blue",
+                "    doc=1, freq=1, pos=[0]",
+                "Terms for field [id], with positional info:",
+                "  b",
+                "    doc=1, freq=1");
+    }
+
+    @Test
+    public void json_sink_writes_object_per_document_of_every_term() throws IOException {
+        IndexUtils.dumpPostings(reader, executor, PostingsDumpSinks.json(outDir), PAYLOAD_FIELD, ID_FIELD);
+        assertThat(readLines("postings-0.json")).containsExactly(
+                "{\"field\":\"payload\",\"term\":\"fox\",\"doc\":0,\"freq\":1,\"positions\":[1]}",
+                "{\"field\":\"payload\",\"term\":\"red\",\"doc\":0,\"freq\":2,\"positions\":[0,2],"
+                        + "\"payloads\":[\"6162\",\"63\"]}",
+                "{\"field\":\"id\",\"term\":\"a\",\"doc\":0,\"freq\":1}");
+        assertThat(readLines("postings-1.json")).containsExactly(
+                "{\"field\":\"payload\",\"term\":\"blue\",\"doc\":1,\"freq\":1,\"positions\":[0]}",
+                "{\"field\":\"id\",\"term\":\"b\",\"doc\":1,\"freq\":1}");
+    }
+
+    @Test
+    public void binary_sink_round_trips_postings() throws IOException {
+        IndexUtils.dumpPostings(reader, executor, PostingsDumpSinks.binary(outDir), FIELDS);
+        for (final LeafReaderContext context : reader.leaves()) {
+            final RecordingSink expected = new RecordingSink(context.docBase);
+            IndexUtils.dumpPostings(context.reader(), expected, FIELDS);
+            final List<String> actual = readBinary(outDir.resolve("postings-" + context.ord + ".bin"));
+            assertThat(actual).isEqualTo(expected.records);
+        }
+    }
+
+    @Test
+    public void skips_fields_which_do_not_exist() throws IOException {
+        final RecordingSink sink = new RecordingSink(0);
+        IndexUtils.dumpPostings(reader.leaves().get(0).reader(), sink, "unknown", ID_FIELD);
+        assertThat(sink.records).containsExactly("field=id", "term=a", "doc=0,freq=1", "endTerm", "endField");
+    }
+
+    @Test
+    public void reuses_doc_postings_across_documents() throws IOException {
+        final List<DocPostings> seen = Lists.newArrayList();
+        final RecordingSink sink = new RecordingSink(0) {
+            @Override
+            public void doc(DocPostings postings) {
+                seen.add(postings);
+                super.doc(postings);
+            }
+        };
+        IndexUtils.dumpPostings(reader.leaves().get(0).reader(), sink, FIELDS);
+        assertThat(seen).hasSize(5);
+        for (final DocPostings postings : seen) {
+            assertThat(postings).isSameAs(seen.get(0));
+        }
+        // The payloads of "red" are followed by "fox"'s positions without payloads
+        assertThat(sink.records).contains("doc=0,freq=2,pos=0,payload=[61 62],pos=2,payload=[63]",
+                "doc=0,freq=1,pos=1");
+    }
+
+    @Test
+    public void doc_postings_grow_and_reset_their_buffers() {
+        final DocPostings postings = new DocPostings();
+        final BytesRef payload = new BytesRef(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 });
+        postings.reset(3, 100, true);
+        for (int i = 0; i < 100; i++) {
+            postings.addPosition(i, i % 2 == 0 ? payload : null);
+        }
+        assertThat(postings.docID()).isEqualTo(3);
+        assertThat(postings.hasPayloads()).isTrue();
+        final BytesRef scratch = new BytesRef();
+        for (int i = 0; i < 100; i++) {
+            assertThat(postings.position(i)).isEqualTo(i);
+            assertThat(postings.payload(i, scratch)).isEqualTo(i % 2 == 0 ? payload : new BytesRef());
+        }
+
+        postings.reset(4, 1, true);
+        postings.addPosition(7, null);
+        assertThat(postings.docID()).isEqualTo(4);
+        assertThat(postings.hasPayloads()).isFalse();
+        assertThat(postings.position(0)).isEqualTo(7);
+        assertThat(postings.payload(0, scratch).length).isEqualTo(0);
+    }
+
+    @Test
+    public void rethrows_failure_of_segment_sink() throws IOException {
+        try {
+            IndexUtils.dumpPostings(reader, executor, new PostingsDumpSink.Factory() {
+                @Override
+                public PostingsDumpSink newSink(int segment, int docBase) throws IOException {
+                    if (segment == 1) {
+                        throw new IOException("cannot create sink");
+                    }
+                    return new RecordingSink(docBase);
+                }
+            }, FIELDS);
+            fail("expected the dump to fail");
+        } catch (final IOException e) {
+            assertThat(e.getMessage()).isEqualTo("cannot create sink");
+        }
+    }
+
+    private List<String> readLines(String fileName) throws IOException {
+        return Files.readAllLines(outDir.resolve(fileName), StandardCharsets.UTF_8);
+    }
+
+    /** Decodes a file written by {@link PostingsDumpSinks#binary(Path)} into {@link RecordingSink}'s records. */
+    private static List<String> readBinary(Path file) throws IOException {
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(file))) {
+            final DataInput in = new InputStreamDataInput(is);
+            assertThat(in.readInt()).isEqualTo(PostingsDumpSinks.BINARY_MAGIC);
+            assertThat(in.readInt()).isEqualTo(PostingsDumpSinks.BINARY_VERSION);
+            final int docBase = in.readVInt();
+            final List<String> records = Lists.newArrayList();
+            boolean inField = false;
+            boolean inTerm = false;
+            int docID = 0;
+            for (byte type = in.readByte(); type != PostingsDumpSinks.BINARY_END; type = in.readByte()) {
+                switch (type) {
+                    case PostingsDumpSinks.BINARY_FIELD:
+                        closeTermAndField(records, inTerm, inField);
+                        inTerm = false;
+                        inField = true;
+                        records.add("field=" + in.readString());
+                        break;
+                    case PostingsDumpSinks.BINARY_TERM:
+                        closeTermAndField(records, inTerm, false);
+                        inTerm = true;
+                        docID = 0;
+                        final byte[] term = new byte[in.readVInt()];
+                        in.readBytes(term, 0, term.length);
+                        records.add("term=" + new String(term, StandardCharsets.UTF_8));
+                        break;
+                    case PostingsDumpSinks.BINARY_DOC:
+                        docID += in.readVInt();
+                        final int freqAndPositions = in.readVInt();
+                        final int freq = freqAndPositions >>> 1;
+                        final StringBuilder sb = new StringBuilder();
+                        sb.append("doc=").append(docBase + docID).append(",freq=").append(freq);
+                        if ((freqAndPositions & 1) != 0) {
+                            int position = 0;
+                            for (int i = 0; i < freq; i++) {
+                                position += in.readVInt();
+                                sb.append(",pos=").append(position);
+                                final byte[] payload = new byte[in.readVInt()];
+                                in.readBytes(payload, 0, payload.length);
+                                if (payload.length > 0) {
+                                    sb.append(",payload=").append(new BytesRef(payload));
+                                }
+                            }
+                        }
+                        records.add(sb.toString());
+                        break;
+                    default:
+                        fail("unexpected record type " + type);
+                }
+            }
+            closeTermAndField(records, inTerm, inField);
+            return records;
+        }
+    }
+
+    private static void closeTermAndField(List<String> records, boolean inTerm, boolean inField) {
+        if (inTerm) {
+            records.add("endTerm");
+        }
+        if (inField) {
+            records.add("endField");
+        }
+    }
+
+    private static void addDocument(IndexWriter writer, String id, String text, String payloadText)
+            throws IOException {
+        final Document doc = new Document();
+        doc.add(new StringField(ID_FIELD, id, Store.NO));
+        doc.add(new TextField(TEXT_FIELD, text, Store.NO));
+        doc.add(new TextField(PAYLOAD_FIELD, payloadText, Store.NO));
+        writer.addDocument(doc);
+    }
+
+    /** Records the calls as strings, with top-level document IDs. */
+    private static class RecordingSink implements PostingsDumpSink {
+
+        final List<String> records = Lists.newArrayList();
+        private final BytesRef payload = new BytesRef();
+        private final int docBase;
+
+        RecordingSink(int docBase) {
+            this.docBase = docBase;
+        }
+
+        @Override
+        public void startField(String field) {
+            records.add("field=" + field);
+        }
+
+        @Override
+        public void startTerm(BytesRef term) {
+            records.add("term=" + term.utf8ToString());
+        }
+
+        @Override
+        public void doc(DocPostings postings) {
+            final StringBuilder sb = new StringBuilder();
+            sb.append("doc=").append(docBase + postings.docID()).append(",freq=").append(postings.freq());
+            if (postings.hasPositions()) {
+                for (int i = 0; i < postings.freq(); i++) {
+                    sb.append(",pos=").append(postings.position(i));
+                    if (postings.payload(i, payload).length > 0) {
+                        sb.append(",payload=").append(payload);
+                    }
+                }
+            }
+            records.add(sb.toString());
+        }
+
+        @Override
+        public void endTerm() {
+            records.add("endTerm");
+        }
+
+        @Override
+        public void endField() {
+            records.add("endField");
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+}